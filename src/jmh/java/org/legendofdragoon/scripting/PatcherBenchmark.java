@@ -0,0 +1,89 @@
+package org.legendofdragoon.scripting;
+
+import com.github.difflib.DiffUtils;
+import com.github.difflib.UnifiedDiffUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Compares {@link Patcher#generatePatch} against diffing the lines as strings, on a 100k line synthetic script with scattered edits */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatcherBenchmark {
+  private static final int LINES = 100_000;
+
+  @Param({"20", "200", "2000"})
+  public int edits;
+
+  private List<String> original;
+  private List<String> modified;
+
+  @Setup
+  public void setup() {
+    final Random random = new Random(0);
+    this.original = new ArrayList<>();
+
+    // Decompiled scripts are full of the same few lines
+    for(int i = 0; i < LINES; i++) {
+      this.original.add(switch(random.nextInt(10)) {
+        case 0, 1, 2, 3 -> "data 0x0";
+        case 4, 5 -> "rel :JMP_%x_%d".formatted(random.nextInt(0x40) * 0x4, random.nextInt(4));
+        case 6 -> "return";
+        case 7 -> "mov 0x%x, stor[%d]".formatted(random.nextInt(0x10), random.nextInt(64));
+        case 8 -> "LABEL_%d:".formatted(i);
+        default -> "call %d, stor[%d]".formatted(random.nextInt(1024), random.nextInt(64));
+      });
+    }
+
+    // Copy the strings too, lines read from two different files never share instances
+    this.modified = new ArrayList<>();
+    for(final String line : this.original) {
+      this.modified.add(new String(line));
+    }
+
+    for(int i = 0; i < this.edits; i++) {
+      final int line = random.nextInt(this.modified.size());
+
+      if(random.nextBoolean()) {
+        this.modified.add(line, "incr stor[%d]".formatted(random.nextInt(64)));
+      } else {
+        this.modified.set(line, "data 0x1");
+      }
+    }
+  }
+
+  @Benchmark
+  public String generatePatch() {
+    return Patcher.generatePatch(this.original, this.modified);
+  }
+
+  /** How {@link Patcher#generatePatch} used to diff */
+  @Benchmark
+  public String generatePatchStrings() {
+    final List<String> diff = UnifiedDiffUtils.generateUnifiedDiff("original", "modified", this.original, DiffUtils.diff(this.original, this.modified), 3);
+    final StringBuilder output = new StringBuilder();
+
+    for(final String line : diff) {
+      output.append(line).append('\n');
+    }
+
+    return output.toString();
+  }
+}
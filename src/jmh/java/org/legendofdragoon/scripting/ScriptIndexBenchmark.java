@@ -0,0 +1,96 @@
+package org.legendofdragoon.scripting;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Compares building a {@link ScriptIndex} against scanning the script one halfword/word at a time, on 1 MB of synthetic script */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptIndexBenchmark {
+  private static final int SIZE = 1024 * 1024;
+
+  private byte[] script;
+  private ScriptIndex index;
+
+  @Setup
+  public void setup() {
+    final Random random = new Random(0);
+    this.script = new byte[SIZE];
+
+    // Mostly ops with a sprinkling of strings
+    for(int offset = 0; offset < SIZE; offset += 4) {
+      final int word = switch(random.nextInt(8)) {
+        case 0 -> 0xa0ff_0000 | random.nextInt(0x100);
+        case 1, 2 -> 0x0200_0000 | random.nextInt(0x40);
+        case 3 -> random.nextInt();
+        default -> OpType.MOV.opcode | 2 << 8;
+      };
+
+      this.script[offset] = (byte)word;
+      this.script[offset + 1] = (byte)(word >>> 8);
+      this.script[offset + 2] = (byte)(word >>> 16);
+      this.script[offset + 3] = (byte)(word >>> 24);
+    }
+
+    this.index = ScriptIndex.scan(this.script);
+  }
+
+  @Benchmark
+  public ScriptIndex scan() {
+    return ScriptIndex.scan(this.script);
+  }
+
+  @Benchmark
+  public ScriptIndex scanScalar() {
+    return ScriptIndex.scanScalar(this.script);
+  }
+
+  /** The string terminator search the disassembler used to do for every string table candidate */
+  @Benchmark
+  public int findTerminatorsScalar() {
+    int found = 0;
+
+    for(int address = 0; address < SIZE; address += 0x40) {
+      for(int i = address / 4; i < address / 4 + 300 && i < SIZE / 4; i++) {
+        final int word = MathHelper.get(this.script, i * 0x4, 4);
+
+        if((word & 0xffff) == 0xa0ff || (word >> 16 & 0xffff) == 0xa0ff) {
+          found++;
+          break;
+        }
+      }
+    }
+
+    return found;
+  }
+
+  @Benchmark
+  public int findTerminatorsIndexed() {
+    int found = 0;
+
+    for(int address = 0; address < SIZE; address += 0x40) {
+      final int terminator = this.index.nextTerminator(address);
+
+      if(terminator != -1 && terminator / 4 < address / 4 + 300) {
+        found++;
+      }
+    }
+
+    return found;
+  }
+}
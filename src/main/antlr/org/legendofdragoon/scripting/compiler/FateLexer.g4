@@ -13,6 +13,11 @@ IF : 'if' ;
 ELSE : 'else' ;
 WHILE : 'while' ;
 DO : 'do' ;
+SWITCH : 'switch' ;
+CASE : 'case' ;
+DEFAULT : 'default' ;
+FOR : 'for' ;
+REPEAT : 'repeat' ;
 
 EQ : '==' ;
 NEQ : '!=' ;
@@ -71,6 +76,7 @@ TERM : ';' ;
 
 SCOPE : '::' ;
 COLON : ':' ;
+AT : '@' ;
 
 INCLUDE : 'include' ' '+ -> pushMode(INCLUDE_FILE_MODE) ;
 
@@ -7,13 +7,22 @@ options {
 body : (entrypoint | global | function | include)* ;
 
 entrypoint : ENTRYPOINT IDENTIFIER TERM ;
-function : DEF IDENTIFIER identifier_list block ;
+function : attribute* DEF IDENTIFIER identifier_list block ;
+attribute : AT name=(IDENTIFIER | STOR) (LPAREN NUMBER (COMMA NUMBER)* RPAREN)? ;
 include : INCLUDE INCLUDE_FILE TERM ;
 
 if_ : IF LPAREN expression RPAREN block (ELSE if_ | ELSE block)? ;
 while_ : WHILE LPAREN expression RPAREN block ;
 do_while : DO block WHILE LPAREN expression RPAREN TERM ;
-control : if_ | while_ | do_while ;
+// Cases don't fall through; break exits the switch and continue applies to the enclosing loop
+switch_ : SWITCH LPAREN expression RPAREN OPENER case_* default_? CLOSER ;
+case_ : CASE expression (COMMA expression)* block ;
+default_ : DEFAULT block ;
+for_ : FOR LPAREN for_init? TERM expression? TERM for_step? RPAREN block ;
+for_init : declaration | assignment ;
+for_step : assignment | augmented_assignment | postfix ;
+repeat : REPEAT LPAREN expression RPAREN block ;
+control : if_ | while_ | do_while | switch_ | for_ | repeat ;
 
 block : OPENER (statement | control)* CLOSER ;
 
@@ -0,0 +1,19 @@
+package org.legendofdragoon.scripting;
+
+public class BinaryPatchException extends RuntimeException {
+  public BinaryPatchException(final String message) {
+    super(message);
+  }
+
+  public BinaryPatchException(final String message, final Throwable cause) {
+    super(message, cause);
+  }
+
+  public BinaryPatchException(final Throwable cause) {
+    super(cause);
+  }
+
+  protected BinaryPatchException(final String message, final Throwable cause, final boolean enableSuppression, final boolean writableStackTrace) {
+    super(message, cause, enableSuppression, writableStackTrace);
+  }
+}
@@ -0,0 +1,240 @@
+package org.legendofdragoon.scripting;
+
+import com.github.difflib.DiffUtils;
+import com.github.difflib.patch.AbstractDelta;
+import com.github.difflib.patch.Patch;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Word-level patches between two assembled scripts, so mods can be applied straight to the original script file
+ * without decompiling, diffing text and reassembling it.
+ *
+ * <p>A patch is a little-endian header ({@link #MAGIC}, {@link #VERSION}, original word count and CRC32, patched word
+ * count and CRC32) followed by ops. Each op starts with a word holding its type in the low byte and a word count in the
+ * rest:</p>
+ * <ul>
+ *   <li>{@link #COPY} source index - copy words from the original</li>
+ *   <li>{@link #INSERT} words... - insert new words</li>
+ *   <li>{@link #RELOC} source index, delta - copy words from the original, adding delta to their low halfwords. This is
+ *   how inline pointers look when code moves.</li>
+ *   <li>{@link #RELTAB} source index, delta - copy words from the original, adding delta to them. This is how pointer
+ *   table entries look when the code they point to moves.</li>
+ * </ul>
+ */
+public final class BinaryPatcher {
+  private BinaryPatcher() { }
+
+  public static final int MAGIC = 0x50444f4c; // LODP
+  public static final int VERSION = 1;
+
+  public static final int COPY = 0;
+  public static final int INSERT = 1;
+  public static final int RELOC = 2;
+  public static final int RELTAB = 3;
+
+  private static final int HEADER_SIZE = 6 * 0x4;
+  private static final int MAX_COUNT = 0xff_ffff;
+
+  public static byte[] generatePatch(final int[] original, final int[] modified) {
+    final Patch<Integer> patch = DiffUtils.diff(Arrays.stream(original).boxed().toList(), Arrays.stream(modified).boxed().toList());
+    final PatchWriter writer = new PatchWriter(original, modified);
+
+    int originalIndex = 0;
+    for(final AbstractDelta<Integer> delta : patch.getDeltas()) {
+      writer.copy(originalIndex, delta.getSource().getPosition() - originalIndex);
+
+      final int sourceIndex = delta.getSource().getPosition();
+      final int targetIndex = delta.getTarget().getPosition();
+      final int sourceSize = delta.getSource().size();
+      final int targetSize = delta.getTarget().size();
+
+      // Words that were only moved can be patched in place, everything else is inserted as-is
+      if(sourceSize == targetSize) {
+        writer.change(sourceIndex, targetIndex, targetSize);
+      } else {
+        writer.insert(targetIndex, targetSize);
+      }
+
+      originalIndex = sourceIndex + sourceSize;
+    }
+
+    writer.copy(originalIndex, original.length - originalIndex);
+    return writer.finish();
+  }
+
+  public static byte[] applyPatch(final byte[] original, final byte[] patch) {
+    final ByteBuffer in = ByteBuffer.wrap(patch).order(ByteOrder.LITTLE_ENDIAN);
+
+    try {
+      if(in.getInt() != MAGIC) {
+        throw new BinaryPatchException("Not a binary patch");
+      }
+
+      final int version = in.getInt();
+      if(version != VERSION) {
+        throw new BinaryPatchException("Unsupported binary patch version " + version);
+      }
+
+      final int originalLength = in.getInt();
+      final int originalCrc = in.getInt();
+      final int patchedLength = in.getInt();
+      final int patchedCrc = in.getInt();
+
+      if(original.length != originalLength * 0x4 || crc(original) != originalCrc) {
+        throw new BinaryPatchException("Patch does not match the original script");
+      }
+
+      final byte[] patched = new byte[patchedLength * 0x4];
+      final ByteBuffer out = ByteBuffer.wrap(patched).order(ByteOrder.LITTLE_ENDIAN);
+      final ByteBuffer source = ByteBuffer.wrap(original).order(ByteOrder.LITTLE_ENDIAN);
+
+      while(in.hasRemaining()) {
+        final int header = in.getInt();
+        final int count = header >>> 8;
+
+        switch(header & 0xff) {
+          case COPY -> out.put(original, in.getInt() * 0x4, count * 0x4);
+          case INSERT -> {
+            for(int i = 0; i < count; i++) {
+              out.putInt(in.getInt());
+            }
+          }
+          case RELOC -> {
+            final int sourceIndex = in.getInt();
+            final int delta = in.getInt();
+
+            for(int i = 0; i < count; i++) {
+              final int word = source.getInt((sourceIndex + i) * 0x4);
+              out.putInt(word & 0xffff_0000 | word + delta & 0xffff);
+            }
+          }
+          case RELTAB -> {
+            final int sourceIndex = in.getInt();
+            final int delta = in.getInt();
+
+            for(int i = 0; i < count; i++) {
+              out.putInt(source.getInt((sourceIndex + i) * 0x4) + delta);
+            }
+          }
+          default -> throw new BinaryPatchException("Unknown binary patch op %#x".formatted(header & 0xff));
+        }
+      }
+
+      if(out.hasRemaining() || crc(patched) != patchedCrc) {
+        throw new BinaryPatchException("Patched script does not match the expected result");
+      }
+
+      return patched;
+    } catch(final BufferUnderflowException | BufferOverflowException | IndexOutOfBoundsException e) {
+      throw new BinaryPatchException("Binary patch is corrupt", e);
+    }
+  }
+
+  private static int crc(final byte[] data) {
+    final CRC32 crc = new CRC32();
+    crc.update(data);
+    return (int)crc.getValue();
+  }
+
+  private static class PatchWriter {
+    private final int[] original;
+    private final int[] modified;
+    private final List<Integer> words = new ArrayList<>();
+    /** Literal words waiting to be written as a single insert */
+    private final List<Integer> pending = new ArrayList<>();
+
+    private PatchWriter(final int[] original, final int[] modified) {
+      this.original = original;
+      this.modified = modified;
+    }
+
+    private void copy(final int sourceIndex, final int count) {
+      if(count > 0) {
+        this.flush();
+        this.op(COPY, count, sourceIndex);
+      }
+    }
+
+    private void insert(final int targetIndex, final int count) {
+      for(int i = 0; i < count; i++) {
+        this.pending.add(this.modified[targetIndex + i]);
+      }
+    }
+
+    /** Finds runs of words that all moved by the same amount */
+    private void change(final int sourceIndex, final int targetIndex, final int count) {
+      for(int i = 0; i < count; ) {
+        final int type = this.getRelocationType(sourceIndex + i, targetIndex + i);
+        final int delta = this.getDelta(type, sourceIndex + i, targetIndex + i);
+
+        int run = 1;
+        while(i + run < count && this.getRelocationType(sourceIndex + i + run, targetIndex + i + run) == type && this.getDelta(type, sourceIndex + i + run, targetIndex + i + run) == delta) {
+          run++;
+        }
+
+        // A relocation is 3 words, so shorter runs are smaller as plain inserts
+        if(run >= 3) {
+          this.flush();
+          this.op(type, run, sourceIndex + i, delta);
+        } else {
+          this.insert(targetIndex + i, run);
+        }
+
+        i += run;
+      }
+    }
+
+    private int getRelocationType(final int sourceIndex, final int targetIndex) {
+      return (this.original[sourceIndex] & 0xffff_0000) == (this.modified[targetIndex] & 0xffff_0000) ? RELOC : RELTAB;
+    }
+
+    private int getDelta(final int type, final int sourceIndex, final int targetIndex) {
+      final int delta = this.modified[targetIndex] - this.original[sourceIndex];
+      return type == RELOC ? delta & 0xffff : delta;
+    }
+
+    private void op(final int type, final int count, final int... args) {
+      for(int start = 0; start < count; start += MAX_COUNT) {
+        final int chunk = Math.min(MAX_COUNT, count - start);
+        this.words.add(type | chunk << 8);
+        this.words.add(args[0] + start);
+
+        for(int i = 1; i < args.length; i++) {
+          this.words.add(args[i]);
+        }
+      }
+    }
+
+    private void flush() {
+      for(int start = 0; start < this.pending.size(); start += MAX_COUNT) {
+        final int chunk = Math.min(MAX_COUNT, this.pending.size() - start);
+        this.words.add(INSERT | chunk << 8);
+        this.words.addAll(this.pending.subList(start, start + chunk));
+      }
+
+      this.pending.clear();
+    }
+
+    private byte[] finish() {
+      this.flush();
+
+      final ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + this.words.size() * 0x4).order(ByteOrder.LITTLE_ENDIAN);
+      out.putInt(MAGIC);
+      out.putInt(VERSION);
+      out.putInt(this.original.length);
+      out.putInt(crc(Shell.intsToBytes(this.original)));
+      out.putInt(this.modified.length);
+      out.putInt(crc(Shell.intsToBytes(this.modified)));
+      this.words.forEach(out::putInt);
+      return out.array();
+    }
+  }
+}
@@ -0,0 +1,414 @@
+package org.legendofdragoon.scripting;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.legendofdragoon.scripting.meta.Meta;
+import org.legendofdragoon.scripting.tokens.Entry;
+import org.legendofdragoon.scripting.tokens.LodString;
+import org.legendofdragoon.scripting.tokens.Op;
+import org.legendofdragoon.scripting.tokens.Param;
+import org.legendofdragoon.scripting.tokens.Script;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An inverted index over a whole corpus of scripts, so we can find every script that calls an engine method, reads or
+ * writes a gamevar, or contains a string without decompiling everything again.
+ *
+ * <p>Scripts are disassembled in parallel and their results are merged in name order, so the same corpus always gives
+ * the same index. Locations are stored as pairs of (script index, address). Gamevars are indexed by the part of their
+ * index that's known statically, e.g. {@code var[5 + stor[2]]} is indexed as var 5.</p>
+ *
+ * <p>The file is big-endian: {@link #MAGIC}, {@link #VERSION}, the script names, the engine method names, then the
+ * call, var read, var write and string tables. Method names are stored so queries don't need the meta.</p>
+ */
+public class CorpusIndex {
+  private static final Logger LOGGER = LogManager.getFormatterLogger(CorpusIndex.class);
+
+  public static final int MAGIC = 0x58444f4c; // LODX
+  public static final int VERSION = 1;
+
+  public final List<String> scripts;
+  public final List<String> methods;
+  private final Map<Integer, int[]> calls;
+  private final Map<Integer, int[]> varReads;
+  private final Map<Integer, int[]> varWrites;
+  private final Map<String, int[]> strings;
+
+  private CorpusIndex(final List<String> scripts, final List<String> methods, final Map<Integer, int[]> calls, final Map<Integer, int[]> varReads, final Map<Integer, int[]> varWrites, final Map<String, int[]> strings) {
+    this.scripts = scripts;
+    this.methods = methods;
+    this.calls = calls;
+    this.varReads = varReads;
+    this.varWrites = varWrites;
+    this.strings = strings;
+  }
+
+  public static CorpusIndex build(final Meta meta, final List<String> scripts, final ScriptLoader loader) {
+    final Disassembler disassembler = new Disassembler(meta);
+    final AtomicInteger failed = new AtomicInteger();
+
+    final List<ScriptUsage> usages = scripts.parallelStream()
+      .map(name -> {
+        try {
+          final Script script = disassembler.disassemble(name, loader.load(name), List.of(), Map.of());
+          return new ScriptUsage(meta, script);
+        } catch(final IOException | RuntimeException e) {
+          LOGGER.warn("Failed to index %s: %s", name, e.getMessage());
+          failed.incrementAndGet();
+          return null;
+        }
+      })
+      .toList();
+
+    final Postings<Integer> calls = new Postings<>();
+    final Postings<Integer> varReads = new Postings<>();
+    final Postings<Integer> varWrites = new Postings<>();
+    final Postings<String> strings = new Postings<>();
+
+    for(int scriptIndex = 0; scriptIndex < usages.size(); scriptIndex++) {
+      final ScriptUsage usage = usages.get(scriptIndex);
+
+      if(usage != null) {
+        calls.addAll(scriptIndex, usage.calls);
+        varReads.addAll(scriptIndex, usage.varReads);
+        varWrites.addAll(scriptIndex, usage.varWrites);
+        strings.addAll(scriptIndex, usage.strings);
+      }
+    }
+
+    LOGGER.info("Indexed %d scripts, %d failed", scripts.size() - failed.get(), failed.get());
+
+    return new CorpusIndex(List.copyOf(scripts), Arrays.stream(meta.methods).map(method -> method.name).toList(), calls.toArrays(), varReads.toArrays(), varWrites.toArrays(), strings.toArrays());
+  }
+
+  /** @return Every call to this engine method, or an empty list if there's no method with this name */
+  public List<Location> findCalls(final String methodName) {
+    for(int i = 0; i < this.methods.size(); i++) {
+      if(this.methods.get(i).equalsIgnoreCase(methodName)) {
+        return this.findCalls(i);
+      }
+    }
+
+    return List.of();
+  }
+
+  public List<Location> findCalls(final int methodIndex) {
+    return this.toLocations(this.calls.get(methodIndex));
+  }
+
+  public List<Location> findVarReads(final int var) {
+    return this.toLocations(this.varReads.get(var));
+  }
+
+  public List<Location> findVarWrites(final int var) {
+    return this.toLocations(this.varWrites.get(var));
+  }
+
+  /** @return Every string containing this text in any case, along with the full string */
+  public List<StringMatch> findStrings(final String text) {
+    final String needle = text.toLowerCase(Locale.ROOT);
+    final List<StringMatch> matches = new ArrayList<>();
+
+    for(final var entry : this.strings.entrySet()) {
+      if(entry.getKey().toLowerCase(Locale.ROOT).contains(needle)) {
+        for(final Location location : this.toLocations(entry.getValue())) {
+          matches.add(new StringMatch(location, entry.getKey()));
+        }
+      }
+    }
+
+    return matches;
+  }
+
+  private List<Location> toLocations(final int[] pairs) {
+    if(pairs == null) {
+      return List.of();
+    }
+
+    final List<Location> locations = new ArrayList<>();
+    for(int i = 0; i < pairs.length; i += 2) {
+      locations.add(new Location(this.scripts.get(pairs[i]), pairs[i + 1]));
+    }
+
+    return locations;
+  }
+
+  public void write(final DataOutputStream out) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    writeStrings(out, this.scripts);
+    writeStrings(out, this.methods);
+    writeTable(out, this.calls);
+    writeTable(out, this.varReads);
+    writeTable(out, this.varWrites);
+
+    out.writeInt(this.strings.size());
+    for(final var entry : this.strings.entrySet()) {
+      writeString(out, entry.getKey());
+      writeInts(out, entry.getValue());
+    }
+  }
+
+  public static CorpusIndex read(final DataInputStream in) throws IOException {
+    if(in.readInt() != MAGIC) {
+      throw new IOException("Not a corpus index");
+    }
+
+    final int version = in.readInt();
+    if(version != VERSION) {
+      throw new IOException("Unsupported corpus index version " + version + ", rebuild it with the index command");
+    }
+
+    final List<String> scripts = readStrings(in);
+    final List<String> methods = readStrings(in);
+    final Map<Integer, int[]> calls = readTable(in);
+    final Map<Integer, int[]> varReads = readTable(in);
+    final Map<Integer, int[]> varWrites = readTable(in);
+
+    final Map<String, int[]> strings = new TreeMap<>();
+    final int stringCount = in.readInt();
+    for(int i = 0; i < stringCount; i++) {
+      strings.put(readString(in), readInts(in));
+    }
+
+    return new CorpusIndex(scripts, methods, calls, varReads, varWrites, strings);
+  }
+
+  private static void writeTable(final DataOutputStream out, final Map<Integer, int[]> table) throws IOException {
+    out.writeInt(table.size());
+
+    for(final var entry : table.entrySet()) {
+      out.writeInt(entry.getKey());
+      writeInts(out, entry.getValue());
+    }
+  }
+
+  private static Map<Integer, int[]> readTable(final DataInputStream in) throws IOException {
+    final Map<Integer, int[]> table = new TreeMap<>();
+    final int count = in.readInt();
+
+    for(int i = 0; i < count; i++) {
+      table.put(in.readInt(), readInts(in));
+    }
+
+    return table;
+  }
+
+  private static void writeInts(final DataOutputStream out, final int[] values) throws IOException {
+    out.writeInt(values.length);
+
+    for(final int value : values) {
+      out.writeInt(value);
+    }
+  }
+
+  private static int[] readInts(final DataInputStream in) throws IOException {
+    final int[] values = new int[in.readInt()];
+
+    for(int i = 0; i < values.length; i++) {
+      values[i] = in.readInt();
+    }
+
+    return values;
+  }
+
+  private static void writeStrings(final DataOutputStream out, final List<String> values) throws IOException {
+    out.writeInt(values.size());
+
+    for(final String value : values) {
+      writeString(out, value);
+    }
+  }
+
+  private static List<String> readStrings(final DataInputStream in) throws IOException {
+    final String[] values = new String[in.readInt()];
+
+    for(int i = 0; i < values.length; i++) {
+      values[i] = readString(in);
+    }
+
+    return List.of(values);
+  }
+
+  // Not writeUTF since that's limited to 64k
+  private static void writeString(final DataOutputStream out, final String value) throws IOException {
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(final DataInputStream in) throws IOException {
+    final byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /** The statically-known gamevar a param refers to, or -1 if it isn't a gamevar or the index is only known at runtime */
+  private static int getVar(final Param param) {
+    return switch(param.type) {
+      case GAMEVAR_1, GAMEVAR_2, GAMEVAR_ARRAY_1, GAMEVAR_ARRAY_2, GAMEVAR_ARRAY_3, GAMEVAR_ARRAY_4 -> param.rawValues[0] & 0xff;
+      case GAMEVAR_3, GAMEVAR_ARRAY_5 -> (param.rawValues[0] & 0xff) + (param.rawValues[0] >> 8 & 0xff);
+      default -> -1;
+    };
+  }
+
+  @FunctionalInterface
+  public interface ScriptLoader {
+    byte[] load(final String name) throws IOException;
+  }
+
+  public static class Location {
+    public final String script;
+    public final int address;
+
+    private Location(final String script, final int address) {
+      this.script = script;
+      this.address = address;
+    }
+
+    @Override
+    public String toString() {
+      return "%s @ %#x".formatted(this.script, this.address);
+    }
+  }
+
+  public static class StringMatch {
+    public final Location location;
+    public final String text;
+
+    private StringMatch(final Location location, final String text) {
+      this.location = location;
+      this.text = text;
+    }
+
+    @Override
+    public String toString() {
+      return this.location + ": " + this.text;
+    }
+  }
+
+  /** Everything one script uses, by address */
+  private static class ScriptUsage {
+    private final Map<Integer, IntList> calls = new TreeMap<>();
+    private final Map<Integer, IntList> varReads = new TreeMap<>();
+    private final Map<Integer, IntList> varWrites = new TreeMap<>();
+    private final Map<String, IntList> strings = new TreeMap<>();
+
+    private ScriptUsage(final Meta meta, final Script script) {
+      Entry previous = null;
+
+      for(final Entry entry : script.entries) {
+        // Strings and data take up more than one slot
+        if(entry == previous) {
+          continue;
+        }
+
+        previous = entry;
+
+        if(entry instanceof final Op op) {
+          this.addOp(meta, op);
+        } else if(entry instanceof final LodString string) {
+          this.strings.computeIfAbsent(string.toString(), k -> new IntList()).add(string.address);
+        }
+      }
+    }
+
+    private void addOp(final Meta meta, final Op op) {
+      final Meta.ScriptMethod method = op.type == OpType.CALL && op.headerParam < meta.methods.length ? meta.methods[op.headerParam] : null;
+
+      if(op.type == OpType.CALL) {
+        this.calls.computeIfAbsent(op.headerParam, k -> new IntList()).add(op.address);
+      }
+
+      for(int i = 0; i < op.params.length; i++) {
+        final Param param = op.params[i];
+
+        if(param == null) {
+          continue;
+        }
+
+        final int var = getVar(param);
+
+        if(var == -1) {
+          continue;
+        }
+
+        final Direction direction = getDirection(op, method, i);
+
+        if(direction != Direction.OUT) {
+          this.varReads.computeIfAbsent(var, k -> new IntList()).add(op.address);
+        }
+
+        if(direction.modifiesParam()) {
+          this.varWrites.computeIfAbsent(var, k -> new IntList()).add(op.address);
+        }
+      }
+    }
+
+    private static Direction getDirection(final Op op, final Meta.ScriptMethod method, final int paramIndex) {
+      if(op.type == OpType.CALL) {
+        if(method == null || paramIndex >= method.params.length) {
+          return Direction.BOTH;
+        }
+
+        if(method.params[paramIndex].isInput) {
+          return Direction.IN;
+        }
+
+        return "out".equalsIgnoreCase(method.params[paramIndex].direction) ? Direction.OUT : Direction.BOTH;
+      }
+
+      return paramIndex < op.type.params.length ? op.type.params[paramIndex].direction : Direction.IN;
+    }
+  }
+
+  /** Locations by key across the whole corpus, as (script index, address) pairs */
+  private static class Postings<K> {
+    private final Map<K, IntList> postings = new TreeMap<>();
+
+    private void addAll(final int scriptIndex, final Map<K, IntList> usage) {
+      for(final var entry : usage.entrySet()) {
+        final IntList locations = this.postings.computeIfAbsent(entry.getKey(), k -> new IntList());
+
+        for(int i = 0; i < entry.getValue().size; i++) {
+          locations.add(scriptIndex);
+          locations.add(entry.getValue().values[i]);
+        }
+      }
+    }
+
+    private Map<K, int[]> toArrays() {
+      final Map<K, int[]> arrays = new TreeMap<>();
+      this.postings.forEach((key, locations) -> arrays.put(key, locations.toArray()));
+      return arrays;
+    }
+  }
+
+  private static class IntList {
+    private int[] values = new int[4];
+    private int size;
+
+    private void add(final int value) {
+      if(this.size == this.values.length) {
+        this.values = Arrays.copyOf(this.values, this.size * 2);
+      }
+
+      this.values[this.size++] = value;
+    }
+
+    private int[] toArray() {
+      return Arrays.copyOf(this.values, this.size);
+    }
+  }
+}
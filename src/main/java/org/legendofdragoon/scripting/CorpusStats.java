@@ -0,0 +1,185 @@
+package org.legendofdragoon.scripting;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.legendofdragoon.scripting.meta.Meta;
+import org.legendofdragoon.scripting.tokens.Entry;
+import org.legendofdragoon.scripting.tokens.Op;
+import org.legendofdragoon.scripting.tokens.Param;
+import org.legendofdragoon.scripting.tokens.Script;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How often each op, engine call and param type appears across a corpus of scripts, so we know what's worth optimising
+ * in the runtime. Scripts are disassembled in parallel straight into shared counters, nothing is translated.
+ */
+public class CorpusStats {
+  private static final Logger LOGGER = LogManager.getFormatterLogger(CorpusStats.class);
+
+  private final Meta meta;
+  private final LongAdder[] ops = newCounters(OpType.values().length);
+  private final LongAdder[] calls;
+  /** Calls to methods the meta doesn't know about */
+  private final LongAdder unknownCalls = new LongAdder();
+  private final LongAdder[] params = newCounters(ParameterType.values().length);
+  /** Op count by script */
+  private final Map<String, Long> scripts = new ConcurrentHashMap<>();
+  private final LongAdder failed = new LongAdder();
+
+  private CorpusStats(final Meta meta) {
+    this.meta = meta;
+    this.calls = newCounters(meta.methods.length);
+  }
+
+  public static CorpusStats collect(final Meta meta, final List<String> scripts, final CorpusIndex.ScriptLoader loader) {
+    final CorpusStats stats = new CorpusStats(meta);
+    final Disassembler disassembler = new Disassembler(meta);
+
+    scripts.parallelStream().forEach(name -> {
+      try {
+        stats.add(name, disassembler.disassemble(name, loader.load(name), List.of(), Map.of()));
+      } catch(final IOException | RuntimeException e) {
+        LOGGER.warn("Failed to disassemble %s: %s", name, e.getMessage());
+        stats.failed.increment();
+      }
+    });
+
+    LOGGER.info("Counted %d scripts, %d failed", stats.scripts.size(), stats.failed.sum());
+    return stats;
+  }
+
+  private void add(final String name, final Script script) {
+    long opCount = 0;
+
+    for(final Entry entry : script.entries) {
+      if(!(entry instanceof final Op op)) {
+        continue;
+      }
+
+      opCount++;
+      this.ops[op.type.ordinal()].increment();
+
+      if(op.type == OpType.CALL) {
+        if(op.headerParam >= 0 && op.headerParam < this.calls.length) {
+          this.calls[op.headerParam].increment();
+        } else {
+          this.unknownCalls.increment();
+        }
+      }
+
+      for(final Param param : op.params) {
+        if(param != null) {
+          this.params[param.type.ordinal()].increment();
+        }
+      }
+    }
+
+    this.scripts.put(name, opCount);
+  }
+
+  /** Every category's counts, most frequent first. Anything that never appears is left out. */
+  public Map<String, List<Count>> getCounts() {
+    final List<Count> ops = new ArrayList<>();
+    for(final OpType type : OpType.values()) {
+      ops.add(new Count(type.name(), this.ops[type.ordinal()].sum()));
+    }
+
+    final List<Count> calls = new ArrayList<>();
+    for(int i = 0; i < this.calls.length; i++) {
+      calls.add(new Count(this.meta.methods[i] != null ? this.meta.methods[i].name : Integer.toString(i), this.calls[i].sum()));
+    }
+
+    calls.add(new Count("unknown", this.unknownCalls.sum()));
+
+    final List<Count> params = new ArrayList<>();
+    for(final ParameterType type : ParameterType.values()) {
+      params.add(new Count(type.name(), this.params[type.ordinal()].sum()));
+    }
+
+    final List<Count> scripts = new ArrayList<>();
+    this.scripts.forEach((name, count) -> scripts.add(new Count(name, count)));
+
+    final Map<String, List<Count>> counts = new LinkedHashMap<>();
+    counts.put("ops", sort(ops));
+    counts.put("calls", sort(calls));
+    counts.put("params", sort(params));
+    counts.put("scripts", sort(scripts));
+    return counts;
+  }
+
+  public String toCsv() {
+    final StringBuilder builder = new StringBuilder("category,name,count\n");
+
+    for(final var category : this.getCounts().entrySet()) {
+      for(final Count count : category.getValue()) {
+        builder.append(category.getKey()).append(',').append(csvString(count.name)).append(',').append(count.count).append('\n');
+      }
+    }
+
+    return builder.toString();
+  }
+
+  public String toJson() {
+    final StringBuilder builder = new StringBuilder("{");
+    boolean firstCategory = true;
+
+    for(final var category : this.getCounts().entrySet()) {
+      builder.append(firstCategory ? "\n" : ",\n");
+      builder.append("  ").append(PatchSet.jsonString(category.getKey())).append(": [");
+      firstCategory = false;
+
+      final List<Count> counts = category.getValue();
+      for(int i = 0; i < counts.size(); i++) {
+        builder.append(i == 0 ? "\n" : ",\n");
+        builder.append("    {\"name\": ").append(PatchSet.jsonString(counts.get(i).name)).append(", \"count\": ").append(counts.get(i).count).append('}');
+      }
+
+      builder.append(counts.isEmpty() ? "]" : "\n  ]");
+    }
+
+    return builder.append("\n}\n").toString();
+  }
+
+  private static List<Count> sort(final List<Count> counts) {
+    return counts.stream()
+      .filter(count -> count.count != 0)
+      .sorted(Comparator.comparingLong((Count count) -> count.count).reversed().thenComparing(count -> count.name))
+      .toList();
+  }
+
+  private static String csvString(final String value) {
+    if(value.indexOf(',') == -1 && value.indexOf('"') == -1 && value.indexOf('\n') == -1) {
+      return value;
+    }
+
+    return '"' + value.replace("\"", "\"\"") + '"';
+  }
+
+  private static LongAdder[] newCounters(final int count) {
+    final LongAdder[] counters = new LongAdder[count];
+
+    for(int i = 0; i < count; i++) {
+      counters[i] = new LongAdder();
+    }
+
+    return counters;
+  }
+
+  public static class Count {
+    public final String name;
+    public final long count;
+
+    private Count(final String name, final long count) {
+      this.name = name;
+      this.count = count;
+    }
+  }
+}
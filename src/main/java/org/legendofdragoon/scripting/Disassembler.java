@@ -4,6 +4,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.Marker;
 import org.apache.logging.log4j.MarkerManager;
+import org.legendofdragoon.scripting.meta.BranchKind;
 import org.legendofdragoon.scripting.meta.Meta;
 import org.legendofdragoon.scripting.resolution.Register;
 import org.legendofdragoon.scripting.resolution.RegisterSet;
@@ -12,6 +13,7 @@ import org.legendofdragoon.scripting.resolution.ScriptRegisters;
 import org.legendofdragoon.scripting.tokens.Data;
 import org.legendofdragoon.scripting.tokens.Entry;
 import org.legendofdragoon.scripting.tokens.Entrypoint;
+import org.legendofdragoon.scripting.tokens.LabelKind;
 import org.legendofdragoon.scripting.tokens.LodString;
 import org.legendofdragoon.scripting.tokens.Op;
 import org.legendofdragoon.scripting.tokens.Param;
@@ -20,7 +22,9 @@ import org.legendofdragoon.scripting.tokens.Script;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -29,11 +33,22 @@ import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.function.ToIntBiFunction;
 import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
 
 public class Disassembler {
   private static final Logger LOGGER = LogManager.getFormatterLogger();
   private static final Marker DISASSEMBLY = MarkerManager.getMarker("DISASSEMBLY");
 
+  private static final int SPECULATIVE_CHUNK_SIZE = 0x400;
+  /** Fewer ops than this could easily be data that happens to decode */
+  private static final int SPECULATIVE_MIN_OPS = 3;
+  private static final int SPECULATIVE_MAX_OPS = 16;
+  private static final int SPECULATIVE_END_BONUS = 4;
+  private static final int SPECULATIVE_MIN_SCORE = 12;
+
+  /** How many ops the quick shared code check walks from each entrypoint */
+  private static final int SHARED_CODE_MAX_OPS = 512;
+
   private final Meta meta;
 
   public Disassembler(final Meta meta) {
@@ -45,16 +60,209 @@ public class Disassembler {
   }
 
   public Script disassemble(final String name, final byte[] bytes, final List<Integer> extraBranches, final Map<Integer, Integer> tableLengths, final int entrypointCount) {
+    return this.disassemble(name, bytes, extraBranches, tableLengths, entrypointCount, false);
+  }
+
+  public Script disassemble(final String name, final byte[] bytes, final List<Integer> extraBranches, final Map<Integer, Integer> tableLengths, final int entrypointCount, final boolean speculative) {
     final State state = new State(bytes);
 
     final Script script = new Script(name, state.length() / 4);
 
     this.getEntrypoints(script, state, entrypointCount);
+    this.probeEntrypoints(script, state, tableLengths);
+    this.truncateOverrunTables(script);
+
+    for(final int extraBranch : extraBranches) {
+      this.probeBranch(script, state, tableLengths, extraBranch);
+    }
+
+    script.buildStrings.forEach(Runnable::run);
+    script.buildStrings.clear();
+
+    if(speculative) {
+      this.probeSpeculativeBranches(script, state, tableLengths);
+      this.truncateOverrunTables(script);
+      script.buildStrings.forEach(Runnable::run);
+    }
+
+    this.fillStrings(script, state);
+    this.fillData(script, state);
+
+    LOGGER.info(DISASSEMBLY, "Probing complete");
+
+    return script;
+  }
+
+  /**
+   * Explores each entrypoint on its own copy of the script in parallel, then merges the copies in the same order the
+   * entrypoints would have been probed one at a time. A copy that touched anything found by an earlier entrypoint
+   * might have gone differently if it had seen it, so that entrypoint is probed again on the merged script instead.
+   * Either way the result is the same as probing them one after another.
+   *
+   * <p>Scripts where most entrypoints share subroutines would end up probing nearly everything twice, so those (and
+   * anything on a single core) are probed one at a time instead.</p>
+   */
+  private void probeEntrypoints(final Script script, final State state, final Map<Integer, Integer> tableLengths) {
+    final List<Integer> entrypoints = new ArrayList<>(script.entrypoints);
+
+    if(entrypoints.size() < 2 || Runtime.getRuntime().availableProcessors() < 2) {
+      entrypoints.forEach(entrypoint -> this.probeBranch(script, state, tableLengths, entrypoint));
+      return;
+    }
+
+    final int predicted = this.countSharedCodeEntrypoints(state, entrypoints);
 
-    for(final int entrypoint : script.entrypoints) {
-      this.probeBranch(script, state, tableLengths, entrypoint);
+    if(predicted * 2 >= entrypoints.size()) {
+      LOGGER.info("%d of %d entrypoints share code, probing them one at a time", predicted, entrypoints.size());
+      entrypoints.forEach(entrypoint -> this.probeBranch(script, state, tableLengths, entrypoint));
+      return;
     }
 
+    final Script base = script.copy();
+    state.index();
+
+    final List<Script> explored = entrypoints.parallelStream()
+      .map(entrypoint -> {
+        final Script copy = base.copy();
+        this.probeBranch(copy, state.copy(), tableLengths, entrypoint);
+        return copy;
+      })
+      .toList();
+
+    final BitSet found = new BitSet(script.entries.length);
+    int reprobed = 0;
+
+    for(int i = 0; i < entrypoints.size(); i++) {
+      final Script copy = explored.get(i);
+      final BitSet footprint = this.getFootprint(base, copy, state);
+
+      if(footprint.intersects(found)) {
+        this.probeBranch(script, state, tableLengths, entrypoints.get(i));
+        found.or(this.getFootprint(base, script, state));
+        reprobed++;
+      } else {
+        // The merge only adds what the copy found
+        script.merge(base, copy);
+        found.or(footprint);
+      }
+    }
+
+    LOGGER.info("Probed %d entrypoints in parallel (%d predicted to share code), %d had to be probed again", entrypoints.size(), predicted, reprobed);
+  }
+
+  /**
+   * Quickly walks each entrypoint's direct jumps and GOSUBs, without tracking registers or following tables, and counts
+   * the entrypoints that run into code an earlier one reached. Those are the ones that would have to be probed again.
+   */
+  private int countSharedCodeEntrypoints(final State state, final List<Integer> entrypoints) {
+    final BitSet reached = new BitSet(state.length() / 0x4);
+    int shared = 0;
+
+    for(final int entrypoint : entrypoints) {
+      final BitSet walked = this.walkDirectBranches(state, entrypoint);
+
+      if(walked.intersects(reached)) {
+        shared++;
+      }
+
+      reached.or(walked);
+    }
+
+    return shared;
+  }
+
+  private BitSet walkDirectBranches(final State state, final int entrypoint) {
+    final BitSet walked = new BitSet(state.length() / 0x4);
+    final List<Integer> branches = new ArrayList<>();
+    branches.add(entrypoint);
+    int opCount = 0;
+
+    while(!branches.isEmpty() && opCount < SHARED_CODE_MAX_OPS) {
+      int address = branches.removeLast();
+
+      while(opCount < SHARED_CODE_MAX_OPS && address >= 0 && !walked.get(address / 0x4)) {
+        final Op op = this.parseHeader(state, address);
+
+        if(op == null) {
+          break;
+        }
+
+        walked.set(address / 0x4);
+        opCount++;
+        address += 0x4;
+
+        for(int paramIndex = 0; paramIndex < op.params.length && address <= state.length() - 0x4; paramIndex++) {
+          final int word = state.wordAt(address);
+          final ParameterType paramType = ParameterType.byOpcode(word >>> 24);
+
+          if(paramType == ParameterType.INLINE_1 && switch(op.type) {
+            case JMP, GOSUB -> paramIndex == 0;
+            case JMP_CMP, JMP_CMP_0, WHILE -> paramIndex == op.params.length - 1;
+            default -> false;
+          }) {
+            branches.add(op.address + (short)word * 0x4);
+          }
+
+          address += paramType.getWidth(new Param(address, paramType, new int[] {word}, ResolvedValue.unresolved(), null)) * 0x4;
+        }
+
+        if(switch(op.type) {
+          case JMP, JMP_TABLE, RETURN, REWIND, DEALLOCATE, DEALLOCATE82, CONSUME -> true;
+          default -> false;
+        }) {
+          break;
+        }
+      }
+    }
+
+    return walked;
+  }
+
+  /** Every word a script has found or looked at since it was copied from {@code base} */
+  private BitSet getFootprint(final Script base, final Script script, final State state) {
+    final BitSet footprint = new BitSet(script.entries.length);
+    final Map<String, Integer> labelAddresses = new HashMap<>();
+    script.labels.forEach((address, labels) -> labels.forEach(label -> labelAddresses.put(label, address)));
+
+    for(int i = 0; i < script.entries.length; i++) {
+      if(script.entries[i] == base.entries[i]) {
+        continue;
+      }
+
+      footprint.set(i);
+
+      if(script.entries[i] instanceof final PointerTable table) {
+        // Probing tables also checks the word after the end to see where they stop
+        footprint.set(i, Math.min(script.entries.length, i + table.labels.length + 1));
+
+        // and looks ahead for string terminators from destinations that aren't code
+        for(final String label : table.labels) {
+          final int destination = labelAddresses.getOrDefault(label, -1);
+
+          if(destination >= 0 && destination < state.length() && !(script.entries[destination / 0x4] instanceof Op)) {
+            final int terminator = state.index().nextTerminator(destination);
+            footprint.set(destination / 0x4, Math.min(script.entries.length, terminator == -1 ? destination / 0x4 + 300 : Math.min(terminator / 0x4, destination / 0x4 + 300) + 1));
+          }
+        }
+      }
+    }
+
+    for(final int branch : script.branches) {
+      if(!base.branches.contains(branch) && branch >= 0 && branch / 0x4 < script.entries.length) {
+        footprint.set(branch / 0x4);
+      }
+    }
+
+    script.labels.forEach((address, labels) -> {
+      if(!labels.equals(base.labels.get(address)) && address >= 0 && address / 0x4 < script.entries.length) {
+        footprint.set(address / 0x4);
+      }
+    });
+
+    return footprint;
+  }
+
+  private void truncateOverrunTables(final Script script) {
     for(int entryIndex = 0; entryIndex < script.entries.length; entryIndex++) {
       final Entry entry = script.entries[entryIndex];
 
@@ -89,19 +297,143 @@ public class Disassembler {
         entryIndex--;
       }
     }
+  }
 
-    for(final int extraBranch : extraBranches) {
-      this.probeBranch(script, state, tableLengths, extraBranch);
+  /**
+   * Sweeps every word that hasn't been disassembled yet looking for runs of ops that decode cleanly and end the way
+   * real code does (a jump, return, etc. or running into code we already know about). The best candidates are handed
+   * to the normal recursive probe, and are marked as speculative in the output so they can be checked by hand.
+   */
+  private void probeSpeculativeBranches(final Script script, final State state, final Map<Integer, Integer> tableLengths) {
+    final BitSet claimed = this.getClaimedWords(script, state);
+    final int wordCount = script.entries.length;
+    final int[] scores = new int[wordCount];
+    final int[] ends = new int[wordCount];
+
+    // Each start address is scored independently, so the sweep can be split into chunks and run in parallel
+    final int chunkCount = (wordCount + SPECULATIVE_CHUNK_SIZE - 1) / SPECULATIVE_CHUNK_SIZE;
+    IntStream.range(0, chunkCount).parallel().forEach(chunk -> {
+      for(int wordIndex = chunk * SPECULATIVE_CHUNK_SIZE; wordIndex < Math.min(wordCount, (chunk + 1) * SPECULATIVE_CHUNK_SIZE); wordIndex++) {
+        if(!claimed.get(wordIndex)) {
+          this.scoreChain(script, state, claimed, wordIndex * 0x4, scores, ends);
+        }
+      }
+    });
+
+    // Take the earliest start of each chain, the rest of the chain will be found by probing it
+    final List<Integer> starts = new ArrayList<>();
+    for(int wordIndex = 0; wordIndex < wordCount; wordIndex++) {
+      if(scores[wordIndex] >= SPECULATIVE_MIN_SCORE) {
+        starts.add(wordIndex * 0x4);
+        wordIndex = ends[wordIndex] / 0x4 - 1;
+      }
     }
 
-    script.buildStrings.forEach(Runnable::run);
+    int probed = 0;
+    for(final int start : starts) {
+      // An earlier speculative branch might have already reached this one
+      if(script.entries[start / 0x4] == null) {
+        LOGGER.info(DISASSEMBLY, "Speculatively probing %#x (confidence %d)", start, scores[start / 0x4]);
+        script.speculativeBranches.put(start, scores[start / 0x4]);
+        script.addLabel(start, LabelKind.SPECULATIVE, start, 0);
+        this.probeBranch(script, state, tableLengths, start);
+        probed++;
+      }
+    }
 
-    this.fillStrings(script, state);
-    this.fillData(script, state);
+    LOGGER.info(DISASSEMBLY, "Speculatively disassembled %d branches", probed);
+  }
 
-    LOGGER.info(DISASSEMBLY, "Probing complete");
+  /** Words that are already known to be something, including the parts of tables and strings that don't have entries yet */
+  private BitSet getClaimedWords(final Script script, final State state) {
+    final BitSet claimed = new BitSet(script.entries.length);
 
-    return script;
+    for(int i = 0; i < script.entries.length; i++) {
+      if(script.entries[i] != null) {
+        claimed.set(i);
+      }
+
+      if(script.entries[i] instanceof final PointerTable table) {
+        claimed.set(i, Math.min(script.entries.length, i + table.labels.length));
+      }
+    }
+
+    for(final StringInfo string : script.strings) {
+      final int terminator = state.index().nextTerminator(string.start);
+      final int end = string.maxLength != -1 ? string.start + (string.maxLength + 1) / 2 * 0x4 : terminator != -1 ? terminator + 0x2 : state.length();
+      claimed.set(string.start / 0x4, Math.min(script.entries.length, (end + 0x3) / 0x4));
+    }
+
+    return claimed;
+  }
+
+  /** Decodes a run of ops from an address, scoring it the same way as {@link #isProbablyOp} plus a bonus for ending like real code does */
+  private void scoreChain(final Script script, final State state, final BitSet claimed, final int start, final int[] scores, final int[] ends) {
+    int address = start;
+    int certainty = 0;
+
+    for(int opCount = 0; opCount < SPECULATIVE_MAX_OPS; opCount++) {
+      if(address > state.length() - 0x4) {
+        return;
+      }
+
+      if(script.entries[address / 0x4] instanceof Op && opCount >= SPECULATIVE_MIN_OPS) {
+        // Ran into known code
+        scores[start / 0x4] = certainty + SPECULATIVE_END_BONUS;
+        ends[start / 0x4] = address;
+        return;
+      }
+
+      if(claimed.get(address / 0x4)) {
+        return;
+      }
+
+      final Op op = this.parseHeader(state, address);
+
+      if(op == null) {
+        return;
+      }
+
+      certainty++;
+      address += 0x4;
+
+      for(int paramIndex = 0; paramIndex < op.params.length; paramIndex++) {
+        if(address > state.length() - 0x4 || claimed.get(address / 0x4)) {
+          return;
+        }
+
+        final int word = state.wordAt(address);
+        final ParameterType paramType = ParameterType.byOpcode(word >>> 24);
+
+        if(paramType != ParameterType.IMMEDIATE) {
+          certainty++;
+        }
+
+        // Real code doesn't point outside of the script
+        if(paramType.isInline() && !paramType.isInlineTable()) {
+          final int target = op.address + (short)word * 0x4;
+
+          if(target < 0 || target >= state.length()) {
+            return;
+          }
+        }
+
+        address += paramType.getWidth(new Param(address, paramType, new int[] {word}, ResolvedValue.unresolved(), null)) * 0x4;
+      }
+
+      if(opCount + 1 >= SPECULATIVE_MIN_OPS && switch(op.type) {
+        case JMP, JMP_TABLE, RETURN, REWIND, DEALLOCATE, DEALLOCATE82, CONSUME -> true;
+        default -> false;
+      }) {
+        scores[start / 0x4] = certainty + SPECULATIVE_END_BONUS;
+        ends[start / 0x4] = address;
+        return;
+      }
+    }
+
+    // Long runs of valid ops are convincing even without an ending
+    scores[start / 0x4] = certainty;
+    ends[start / 0x4] = address;
   }
 
   private void probeBranch(final Script script, final State state, final Map<Integer, Integer> tableLengths, final int offset) {
@@ -149,7 +481,7 @@ public class Disassembler {
         // Try to resolve param values and build param
         final int paramOffset = state.currentOffset();
         final ResolvedValue resolved = this.parseParamValue(registers, state, paramType);
-        final Param param = new Param(paramOffset, paramType, rawValues, resolved, paramType.isInline() && resolved.isPresent() ? script.addLabel(resolved.get(), "LABEL_" + script.getLabelCount()) : null);
+        final Param param = new Param(paramOffset, paramType, rawValues, resolved, paramType.isInline() && resolved.isPresent() ? script.addLabel(resolved.get(), LabelKind.NUMBERED, 0, 0) : null);
 
         // Fill entries for param
         for(int n = 0; n < paramType.getWidth(param); n++) {
@@ -167,11 +499,11 @@ public class Disassembler {
 
         // Handle jump table params
         if(paramType.isInlineTable() && op.type != OpType.GOSUB_TABLE && op.type != OpType.JMP_TABLE) {
-          if(op.type == OpType.CALL && !"none".equalsIgnoreCase(this.meta.methods[op.headerParam].params[i].branch)) {
-            final Set<Integer> tableDestinations = switch(this.meta.methods[op.headerParam].params[i].branch.toLowerCase()) {
-              case "jump" -> script.jumpTableDests;
-              case "subroutine" -> script.subs;
-              case "fork_jump" -> script.forkJumps;
+          if(op.type == OpType.CALL && this.meta.methods[op.headerParam].params[i].branchKind != BranchKind.NONE) {
+            final Set<Integer> tableDestinations = switch(this.meta.methods[op.headerParam].params[i].branchKind) {
+              case JUMP -> script.jumpTableDests;
+              case SUBROUTINE -> script.subs;
+              case FORK_JUMP -> script.forkJumps;
               default -> {
                 LOGGER.warn("Unknown branch type %s", this.meta.methods[op.headerParam].params[i].branch);
                 yield new HashSet<>();
@@ -186,7 +518,7 @@ public class Disassembler {
         } else if(op.type == OpType.CALL) {
           if(i >= this.meta.methods[op.headerParam].params.length) {
             script.addWarning(op.address, "Call passed more params than expected");
-          } else if("string".equalsIgnoreCase(this.meta.methods[op.headerParam].params[i].type)) {
+          } else if(this.meta.methods[op.headerParam].params[i].isString) {
             // Resolve strings that are pointed to by a non-table inline
             param.resolvedValue.ifPresent(stringAddress ->
               script.buildStrings.add(() ->
@@ -247,20 +579,18 @@ public class Disassembler {
 //            throw new RuntimeException("CALL " + op.headerParam + " (" + this.meta.methods[op.headerParam] + ") has wrong number of args! " + method.params.length + '/' + op.params.length);
           }
 
-          for(int i = 0; i < this.meta.methods[op.headerParam].params.length; i++) {
+          for(final int i : method.branchParams) {
             final Meta.ScriptParam param = method.params[i];
 
-            if(!"none".equalsIgnoreCase(param.branch)) {
-              op.params[i].resolvedValue.ifPresentOrElse(offset1 -> {
-                if("gosub".equalsIgnoreCase(param.branch)) {
-                  script.subs.add(offset1);
-                } else if("fork_jump".equalsIgnoreCase(param.branch)) {
-                  script.forkJumps.add(offset1);
-                }
+            op.params[i].resolvedValue.ifPresentOrElse(offset1 -> {
+              if(param.branchKind == BranchKind.GOSUB) {
+                script.subs.add(offset1);
+              } else if(param.branchKind == BranchKind.FORK_JUMP) {
+                script.forkJumps.add(offset1);
+              }
 
-                this.probeBranch(script, state, tableLengths, offset1);
-              }, () -> LOGGER.warn("Skipping CALL at %x due to unknowable parameter", state.headerOffset()));
-            }
+              this.probeBranch(script, state, tableLengths, offset1);
+            }, () -> LOGGER.warn("Skipping CALL at %x due to unknowable parameter", state.headerOffset()));
           }
         }
 
@@ -305,8 +635,8 @@ public class Disassembler {
             this.probeBranch(script, state, tableLengths, offset1);
           }, () -> LOGGER.warn("Skipping GOSUB at %x due to unknowable parameter", state.headerOffset()));
 
-          //TODO for now, we can't track what was modified by the subroutine, so we have to revert everything to unknown
-          registers.getDecompState().clear();
+          // Only forget the registers the subroutine might have changed
+          new SubroutineSummarizer(script, state).summarizeCall(op).apply(registers.getDecompState());
         }
 
         case GOSUB_TABLE -> {
@@ -320,8 +650,8 @@ public class Disassembler {
             }
           }, () -> LOGGER.warn("Skipping GOSUB_TABLE at %x due to unknowable parameter", state.headerOffset()));
 
-          //TODO for now, we can't track what was modified by the subroutine, so we have to revert everything to unknown
-          registers.getDecompState().clear();
+          // Only forget the registers the subroutines might have changed
+          new SubroutineSummarizer(script, state).summarizeCall(op).apply(registers.getDecompState());
         }
 
         case REWIND, RETURN, DEALLOCATE, DEALLOCATE82, CONSUME -> {
@@ -402,7 +732,7 @@ public class Disassembler {
 
         tableDestinations.add(destAddress);
         destinations.add(destAddress);
-        labels.add(script.addLabel(destAddress, "JMP_%x_%d".formatted(tableAddress, labels.size())));
+        labels.add(script.addLabel(destAddress, LabelKind.JUMP_TABLE_ENTRY, tableAddress, labels.size()));
       }
 
       if(labels.isEmpty()) {
@@ -457,24 +787,24 @@ public class Disassembler {
       int destination = tableAddress + state.wordAt(entryAddress) * 0x4;
 
       if(!constantLength) {
-        if(op.type == OpType.CALL && "string".equalsIgnoreCase(this.meta.methods[op.headerParam].params[paramIndex].type)) {
+        if(op.type == OpType.CALL && this.meta.methods[op.headerParam].params[paramIndex].isString) {
           if(script.entries[entryAddress / 4] instanceof Op) {
             break;
           }
 
           if(this.isProbablyOp(script, state, entryAddress)) {
-            boolean foundTerminator = false;
-
             // Look for a string terminator at the destination
-            for(int i = destination / 4; i < destination / 4 + 300; i++) {
-              // We ran into another entry or the end of the script
-              if(i >= script.entries.length || script.entries[i] != null) {
-                break;
-              }
+            final int terminator = state.index().nextTerminator(destination);
 
-              final int word = state.wordAt(i * 0x4);
-              if((word & 0xffff) == 0xa0ff || (word >> 16 & 0xffff) == 0xa0ff) {
-                foundTerminator = true;
+            if(terminator == -1 || terminator / 4 >= destination / 4 + 300) {
+              break;
+            }
+
+            // We ran into another entry before the terminator
+            boolean foundTerminator = true;
+            for(int i = destination / 4; i <= terminator / 4; i++) {
+              if(script.entries[i] != null) {
+                foundTerminator = false;
                 break;
               }
             }
@@ -510,7 +840,7 @@ public class Disassembler {
 
     final String[] labels = new String[entryCount];
     for(int entryIndex = 0; entryIndex < entryCount; entryIndex++) {
-      labels[entryIndex] = script.addLabel(destinations.get(entryIndex), "PTR_%x_%d".formatted(tableAddress, entryIndex));
+      labels[entryIndex] = script.addLabel(destinations.get(entryIndex), LabelKind.POINTER_TABLE_ENTRY, tableAddress, entryIndex);
     }
 
     final PointerTable table = new PointerTable(tableAddress, state.wordAt(tableAddress), labels);
@@ -518,7 +848,7 @@ public class Disassembler {
 
     // Add string entries if appropriate
     if(op.type == OpType.CALL) {
-      if("string".equalsIgnoreCase(this.meta.methods[op.headerParam].params[paramIndex].type)) {
+      if(this.meta.methods[op.headerParam].params[paramIndex].isString) {
         buildStrings.add(() -> {
           //IMPORTANT: we need to remove any extra elements that were truncated by the table overrun detector
           while(destinations.size() > table.labels.length) {
@@ -549,22 +879,19 @@ public class Disassembler {
   }
 
   private void fillString(final Script script, final State state, final int address, final int maxLength) {
-    final List<Integer> chars = new ArrayList<>();
-
-    for(int i = 0; i < (maxLength != -1 ? maxLength : script.entries.length * 0x4 - address); i++) {
-      if(address + i / 2 * 0x4 >= state.length()) {
-        script.addWarning(address, "String ran out of bounds");
-        break;
-      }
-
-      final int chr = state.wordAt(address + i / 2 * 0x4) >>> i % 2 * 16 & 0xffff;
-
-      // String end
-      if(chr == 0xa0ff) {
-        break;
-      }
+    final int limit = maxLength != -1 ? maxLength : script.entries.length * 0x4 - address;
+    final int available = (state.length() - address + 3) / 4 * 2;
+    final int terminator = state.index().nextTerminator(address);
+    int length = terminator == -1 ? limit : Math.min(limit, (terminator - address) / 2);
+
+    if(length > available) {
+      script.addWarning(address, "String ran out of bounds");
+      length = available;
+    }
 
-      chars.add(chr);
+    final List<Integer> chars = new ArrayList<>();
+    for(int i = 0; i < length; i++) {
+      chars.add(state.wordAt(address + i / 2 * 0x4) >>> i % 2 * 16 & 0xffff);
     }
 
     final LodString string = new LodString(address, chars.stream().mapToInt(Integer::intValue).toArray());
@@ -609,30 +936,36 @@ public class Disassembler {
     }
 
     final int opcode = state.wordAt(offset);
+
+    if(!isValidHeader(opcode)) {
+      return null;
+    }
+
+    return new Op(offset, OpType.byOpcode(opcode & 0xff), opcode >> 16, opcode >> 8 & 0xff);
+  }
+
+  /** Checks whether a word could be an op header, which only depends on the word itself */
+  static boolean isValidHeader(final int opcode) {
     final OpType type = OpType.byOpcode(opcode & 0xff);
 
     if(type == null) {
-      return null;
+      return false;
     }
 
     // CALL with function index out of range
     if(type == OpType.CALL && ((opcode >>> 16) >= 1024)) {
-      return null;
+      return false;
     }
 
     //TODO once we implement all subfuncs, add their param counts too
     final int paramCount = opcode >> 8 & 0xff;
     if(type != OpType.CALL && type.params.length != paramCount) {
-      return null;
+      return false;
     }
 
     final int opParam = opcode >> 16;
 
-    if(type.headerParamName == null && opParam != 0) {
-      return null;
-    }
-
-    return new Op(offset, type, opParam, paramCount);
+    return type.headerParamName != null || opParam == 0;
   }
 
   private boolean isValidOp(final State state, final int offset) {
@@ -644,10 +977,10 @@ public class Disassembler {
       return false;
     }
 
-    return this.parseHeader(state, offset) != null;
+    return state.index().isHeader(offset);
   }
 
-  private boolean isProbablyOp(final Script script, final State state, int address) {
+  private boolean isProbablyOp(final Script script, final State state, final int address) {
     if((address & 0x3) != 0) {
       return false;
     }
@@ -660,6 +993,11 @@ public class Disassembler {
       return true;
     }
 
+    return state.isProbablyOp(address, probableAddress -> this.looksLikeOps(state, probableAddress));
+  }
+
+  /** Scores the next few ops starting at an address, this only depends on the script bytes */
+  private boolean looksLikeOps(final State state, int address) {
     final int testCount = 3;
     int certainty = 0;
     for(int opIndex = 0; opIndex < testCount; opIndex++) {
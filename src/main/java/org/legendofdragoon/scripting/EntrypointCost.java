@@ -0,0 +1,30 @@
+package org.legendofdragoon.scripting;
+
+/** Worst-case resource usage of a single entrypoint, see {@link ScriptCostAnalyzer} */
+public class EntrypointCost {
+  /** Used for costs that can grow without limit, like loops with no yield in them */
+  public static final long UNBOUNDED = Long.MAX_VALUE;
+
+  public final int index;
+  public final int address;
+  /** The most words this entrypoint can have on the script stack at once, including GOSUB return addresses */
+  public final long maxStackDepth;
+  /** The most ops this entrypoint can run in a single frame, i.e. between two yields */
+  public final long maxFrameOps;
+
+  public EntrypointCost(final int index, final int address, final long maxStackDepth, final long maxFrameOps) {
+    this.index = index;
+    this.address = address;
+    this.maxStackDepth = maxStackDepth;
+    this.maxFrameOps = maxFrameOps;
+  }
+
+  public static String format(final long cost) {
+    return cost == UNBOUNDED ? "unbounded" : Long.toString(cost);
+  }
+
+  @Override
+  public String toString() {
+    return "Entrypoint %d @ 0x%x: max stack depth %s, max ops per frame %s".formatted(this.index, this.address, format(this.maxStackDepth), format(this.maxFrameOps));
+  }
+}
@@ -82,14 +82,20 @@ public enum OpType {
     JMP_CMP_0.setCommentParamNames(new String[] {"left", "right", "addr"});
   }
 
-  public static OpType byOpcode(final int opcode) {
+  private static final OpType[] BY_OPCODE = new OpType[0x100];
+
+  static {
     for(final OpType op : OpType.values()) {
-      if(op.opcode == opcode) {
-        return op;
-      }
+      BY_OPCODE[op.opcode] = op;
     }
+  }
 
-    return null;
+  public static OpType byOpcode(final int opcode) {
+    if(opcode < 0 || opcode >= BY_OPCODE.length) {
+      return null;
+    }
+
+    return BY_OPCODE[opcode];
   }
 
   public static OpType byName(final String name) {
@@ -39,14 +39,20 @@ public enum ParameterType {
   INLINE_INL(0x27, 2),
   ;
 
-  public static ParameterType byOpcode(final int opcode) {
+  private static final ParameterType[] BY_OPCODE = new ParameterType[0x100];
+
+  static {
     for(final ParameterType op : ParameterType.values()) {
-      if(op.opcode == opcode) {
-        return op;
-      }
+      BY_OPCODE[op.opcode] = op;
+    }
+  }
+
+  public static ParameterType byOpcode(final int opcode) {
+    if(opcode < 0 || opcode >= BY_OPCODE.length || BY_OPCODE[opcode] == null) {
+      return ParameterType.IMMEDIATE;
     }
 
-    return ParameterType.IMMEDIATE;
+    return BY_OPCODE[opcode];
   }
 
   public final int opcode;
@@ -0,0 +1,159 @@
+package org.legendofdragoon.scripting;
+
+import com.github.difflib.patch.PatchFailedException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.legendofdragoon.scripting.compiler.FateCompiler;
+import org.legendofdragoon.scripting.compiler.FateOptions;
+import org.legendofdragoon.scripting.meta.Meta;
+import org.legendofdragoon.scripting.tokens.Script;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Applies a text patch from {@code genpatch} straight to a vanilla script binary: disassemble, translate, strip,
+ * patch, tokenize and assemble, all in memory. The stripped vanilla source is cached by script hash, and the patched
+ * binary by script hash and patch hash, both in memory and (if a cache directory is given) on disk. The disk cache is
+ * kept separately for each meta by a hash of its contents, since versions like snapshot change over time.
+ */
+public class PatchPipeline {
+  private static final Logger LOGGER = LogManager.getFormatterLogger(PatchPipeline.class);
+
+  private final Meta meta;
+  private final String metaVersion;
+  private final String metaHash;
+  private final Path cacheDir;
+
+  private final Map<String, List<String>> vanillaSources = new ConcurrentHashMap<>();
+  private final Map<String, byte[]> patchedScripts = new ConcurrentHashMap<>();
+
+  /**
+   * @param cacheDir Where to keep cached results between runs, or null to only cache in memory
+   */
+  public PatchPipeline(final Meta meta, final String metaVersion, final Path cacheDir) {
+    this.meta = meta;
+    this.metaVersion = metaVersion;
+    this.metaHash = hashMeta(meta);
+    this.cacheDir = cacheDir;
+  }
+
+  public byte[] patch(final String name, final byte[] vanilla, final String patch) throws IOException, PatchFailedException {
+    final String vanillaHash = hash(vanilla);
+    final String patchedKey = vanillaHash + '-' + hash(patch.getBytes(StandardCharsets.UTF_8));
+
+    final byte[] cached = this.patchedScripts.get(patchedKey);
+    if(cached != null) {
+      LOGGER.info("Using cached patched script for %s", name);
+      return cached;
+    }
+
+    final Path patchedFile = this.getCacheFile("patched", patchedKey + ".bin");
+    if(patchedFile != null && Files.exists(patchedFile)) {
+      LOGGER.info("Using cached patched script %s for %s", patchedFile, name);
+      final byte[] patched = Files.readAllBytes(patchedFile);
+      this.patchedScripts.put(patchedKey, patched);
+      return patched;
+    }
+
+    final List<String> vanillaSource = this.getVanillaSource(name, vanilla, vanillaHash);
+    final String patchedSource = Patcher.applyPatch(vanillaSource, patch.lines().toList());
+
+    final Tokenizer tokenizer = new Tokenizer(this.meta, new FateCompiler(this.meta, new FateOptions()));
+    final Script script = tokenizer.tokenize(name, List.of(), patchedSource);
+    final byte[] patched = Shell.intsToBytes(new Assembler().assemble(script));
+
+    this.patchedScripts.put(patchedKey, patched);
+    this.writeCacheFile(patchedFile, patched);
+    return patched;
+  }
+
+  /** The vanilla script decompiled and stripped the same way {@code genpatch} strips its inputs */
+  private List<String> getVanillaSource(final String name, final byte[] vanilla, final String vanillaHash) throws IOException {
+    final List<String> cached = this.vanillaSources.get(vanillaHash);
+    if(cached != null) {
+      return cached;
+    }
+
+    final Path sourceFile = this.getCacheFile("vanilla", vanillaHash + ".txt");
+    if(sourceFile != null && Files.exists(sourceFile)) {
+      LOGGER.info("Using cached vanilla source %s for %s", sourceFile, name);
+      final List<String> source = Files.readAllLines(sourceFile);
+      this.vanillaSources.put(vanillaHash, source);
+      return source;
+    }
+
+    LOGGER.info("Disassembling %s...", name);
+    final Script script = new Disassembler(this.meta).disassemble(name, vanilla, List.of(), Map.of());
+    final String decompiled = new Translator().translate(script, this.meta, false, true, false);
+    final List<String> source = Patcher.strip(this.meta, decompiled.lines().toList());
+
+    this.vanillaSources.put(vanillaHash, source);
+    this.writeCacheFile(sourceFile, String.join("\n", source).getBytes(StandardCharsets.UTF_8));
+    return source;
+  }
+
+  private Path getCacheFile(final String type, final String file) {
+    if(this.cacheDir == null) {
+      return null;
+    }
+
+    // Everything depends on the meta, so each version gets its own cache, and a new one whenever its contents change
+    return this.cacheDir.resolve("patchbin").resolve(this.metaVersion + '-' + this.metaHash.substring(0, 16)).resolve(type).resolve(file);
+  }
+
+  private void writeCacheFile(final Path file, final byte[] data) throws IOException {
+    if(file == null) {
+      return;
+    }
+
+    // Write to a temp file first so another loader never sees half of it
+    Files.createDirectories(file.getParent());
+    final Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+    Files.write(temp, data);
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /** Hashes everything in the meta that can change how scripts are decompiled or assembled */
+  private static String hashMeta(final Meta meta) {
+    final StringBuilder contents = new StringBuilder();
+
+    for(final Meta.ScriptMethod method : meta.methods) {
+      if(method == null) {
+        contents.append('\1');
+        continue;
+      }
+
+      contents.append(method.name).append('\0').append(method.description);
+
+      for(final Meta.ScriptParam param : method.params) {
+        contents.append('\0').append(param.direction).append('\0').append(param.type).append('\0').append(param.name).append('\0').append(param.description).append('\0').append(param.branch);
+      }
+
+      contents.append('\1');
+    }
+
+    meta.enums.entrySet().stream()
+      .sorted(Map.Entry.comparingByKey())
+      .forEach(entry -> contents.append('\2').append(entry.getKey()).append('\0').append(String.join("\0", entry.getValue())));
+
+    return hash(contents.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String hash(final byte[] data) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+    } catch(final NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,213 @@
+package org.legendofdragoon.scripting;
+
+import com.github.difflib.DiffUtils;
+import com.github.difflib.UnifiedDiffUtils;
+import com.github.difflib.patch.AbstractDelta;
+import com.github.difflib.patch.Patch;
+import com.github.difflib.patch.PatchFailedException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies a stack of {@code genpatch} patches from many mods at once. Every patch is a diff against the vanilla
+ * script, so overlapping hunks are found up front by their vanilla line ranges. Patches are accepted in the order they
+ * were added, and one that overlaps an already-accepted patch is rejected and reported rather than failing the whole
+ * script. The accepted hunks are merged into one patch and applied in a single pass, and scripts are patched in
+ * parallel.
+ */
+public class PatchSet {
+  private static final Logger LOGGER = LogManager.getFormatterLogger(PatchSet.class);
+
+  /** Patch names by target script, in the order they were added */
+  private final Map<String, Map<String, List<String>>> patches = new LinkedHashMap<>();
+
+  public void add(final String target, final String patchName, final List<String> patchLines) {
+    this.patches.computeIfAbsent(target, k -> new LinkedHashMap<>()).put(patchName, patchLines);
+  }
+
+  public List<ScriptResult> apply(final SourceLoader loader) {
+    return this.patches.entrySet().parallelStream()
+      .map(entry -> this.apply(entry.getKey(), entry.getValue(), loader))
+      .toList();
+  }
+
+  private ScriptResult apply(final String target, final Map<String, List<String>> patches, final SourceLoader loader) {
+    final ScriptResult result = new ScriptResult(target);
+    final List<Hunk> accepted = new ArrayList<>();
+
+    for(final var entry : patches.entrySet()) {
+      final List<Hunk> hunks = new ArrayList<>();
+
+      for(final AbstractDelta<String> delta : UnifiedDiffUtils.parseUnifiedDiff(entry.getValue()).getDeltas()) {
+        hunks.add(new Hunk(entry.getKey(), delta));
+      }
+
+      final List<Conflict> conflicts = new ArrayList<>();
+      for(final Hunk hunk : hunks) {
+        for(final Hunk other : accepted) {
+          if(hunk.overlaps(other) && !hunk.delta.equals(other.delta)) {
+            conflicts.add(new Conflict(other, hunk));
+          }
+        }
+      }
+
+      if(conflicts.isEmpty()) {
+        // Two mods making the exact same change don't conflict, but it only needs to be applied once
+        for(final Hunk hunk : hunks) {
+          if(accepted.stream().noneMatch(other -> other.delta.equals(hunk.delta))) {
+            accepted.add(hunk);
+          }
+        }
+
+        result.applied.add(entry.getKey());
+      } else {
+        LOGGER.warn("Patch %s conflicts with %s in %s", entry.getKey(), conflicts.stream().map(conflict -> conflict.accepted.patch).distinct().toList(), target);
+        result.rejected.add(entry.getKey());
+        result.conflicts.addAll(conflicts);
+      }
+    }
+
+    final Patch<String> combined = new Patch<>();
+    accepted.stream()
+      .sorted(Comparator.comparingInt(hunk -> hunk.start))
+      .forEach(hunk -> combined.addDelta(hunk.delta));
+
+    try {
+      result.output = DiffUtils.patch(loader.load(target), combined);
+    } catch(final IOException | PatchFailedException | RuntimeException e) {
+      LOGGER.error("Failed to patch %s: %s", target, e.getMessage());
+      result.error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    return result;
+  }
+
+  /** Builds a JSON report of what was applied, rejected and why */
+  public static String toJson(final List<ScriptResult> results) {
+    final StringBuilder builder = new StringBuilder("{\n  \"scripts\": [");
+
+    for(int i = 0; i < results.size(); i++) {
+      final ScriptResult result = results.get(i);
+
+      builder.append(i == 0 ? "\n" : ",\n");
+      builder.append("    {\n");
+      builder.append("      \"target\": ").append(jsonString(result.target)).append(",\n");
+      builder.append("      \"status\": ").append(jsonString(result.status())).append(",\n");
+      builder.append("      \"applied\": ").append(result.applied.stream().map(PatchSet::jsonString).toList()).append(",\n");
+      builder.append("      \"rejected\": ").append(result.rejected.stream().map(PatchSet::jsonString).toList()).append(",\n");
+
+      if(result.error != null) {
+        builder.append("      \"error\": ").append(jsonString(result.error)).append(",\n");
+      }
+
+      builder.append("      \"conflicts\": [");
+      for(int n = 0; n < result.conflicts.size(); n++) {
+        final Conflict conflict = result.conflicts.get(n);
+        builder.append(n == 0 ? "\n" : ",\n");
+        builder.append("        {\"accepted\": ").append(jsonString(conflict.accepted.patch))
+          .append(", \"acceptedLines\": [").append(conflict.accepted.start + 1).append(", ").append(conflict.accepted.end).append(']')
+          .append(", \"rejected\": ").append(jsonString(conflict.rejected.patch))
+          .append(", \"rejectedLines\": [").append(conflict.rejected.start + 1).append(", ").append(conflict.rejected.end).append("]}");
+      }
+
+      builder.append(result.conflicts.isEmpty() ? "]\n" : "\n      ]\n");
+      builder.append("    }");
+    }
+
+    builder.append(results.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+    return builder.toString();
+  }
+
+  static String jsonString(final String value) {
+    final StringBuilder builder = new StringBuilder("\"");
+
+    for(int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+
+      switch(c) {
+        case '"' -> builder.append("\\\"");
+        case '\\' -> builder.append("\\\\");
+        case '\n' -> builder.append("\\n");
+        case '\r' -> builder.append("\\r");
+        case '\t' -> builder.append("\\t");
+        default -> {
+          if(c < 0x20) {
+            builder.append("\\u%04x".formatted((int)c));
+          } else {
+            builder.append(c);
+          }
+        }
+      }
+    }
+
+    return builder.append('"').toString();
+  }
+
+  @FunctionalInterface
+  public interface SourceLoader {
+    List<String> load(final String target) throws IOException;
+  }
+
+  public static class ScriptResult {
+    public final String target;
+    public final List<String> applied = new ArrayList<>();
+    public final List<String> rejected = new ArrayList<>();
+    public final List<Conflict> conflicts = new ArrayList<>();
+    /** The patched script, or null if it couldn't be patched */
+    public List<String> output;
+    public String error;
+
+    private ScriptResult(final String target) {
+      this.target = target;
+    }
+
+    public String status() {
+      if(this.error != null) {
+        return "failed";
+      }
+
+      return this.rejected.isEmpty() ? "patched" : "conflicts";
+    }
+  }
+
+  public static class Conflict {
+    public final Hunk accepted;
+    public final Hunk rejected;
+
+    private Conflict(final Hunk accepted, final Hunk rejected) {
+      this.accepted = accepted;
+      this.rejected = rejected;
+    }
+  }
+
+  /** A single change from one patch, covering vanilla lines start (inclusive, 0-based) to end (exclusive) */
+  public static class Hunk {
+    public final String patch;
+    public final int start;
+    public final int end;
+    private final AbstractDelta<String> delta;
+
+    private Hunk(final String patch, final AbstractDelta<String> delta) {
+      this.patch = patch;
+      this.start = delta.getSource().getPosition();
+      this.end = this.start + delta.getSource().size();
+      this.delta = delta;
+    }
+
+    /** Insertions at the same line also overlap since the order they end up in is ambiguous */
+    public boolean overlaps(final Hunk other) {
+      if(this.start == this.end || other.start == other.end) {
+        return this.start == other.start || this.start > other.start && this.start < other.end || other.start > this.start && other.start < this.end;
+      }
+
+      return this.start < other.end && other.start < this.end;
+    }
+  }
+}
@@ -2,6 +2,13 @@ package org.legendofdragoon.scripting;
 
 import com.github.difflib.DiffUtils;
 import com.github.difflib.UnifiedDiffUtils;
+import com.github.difflib.algorithm.DiffAlgorithmListener;
+import com.github.difflib.patch.AbstractDelta;
+import com.github.difflib.patch.ChangeDelta;
+import com.github.difflib.patch.Chunk;
+import com.github.difflib.patch.DeleteDelta;
+import com.github.difflib.patch.EqualDelta;
+import com.github.difflib.patch.InsertDelta;
 import com.github.difflib.patch.Patch;
 import com.github.difflib.patch.PatchFailedException;
 import org.legendofdragoon.scripting.meta.Meta;
@@ -9,7 +16,10 @@ import org.legendofdragoon.scripting.meta.Meta;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
@@ -21,6 +31,11 @@ public final class Patcher {
   private Patcher() { }
 
   private static final Pattern CALL_MATCHER = Pattern.compile("^call\\s+(.+?)\\s*(?:,.*|$)", Pattern.CASE_INSENSITIVE);
+  /**
+   * How many lines Myers can insert or delete before switching to interned lines. Getting this far costs about as much
+   * as hashing every line does, so small diffs never pay for the hashing.
+   */
+  private static final int STRING_DIFF_MAX_EDITS = 512;
 
   public static String generatePatch(final Meta meta, final Path originalFile, final Path modifiedFile) throws IOException {
     final List<String> originalLines = strip(meta, Files.readAllLines(originalFile));
@@ -29,7 +44,7 @@ public final class Patcher {
   }
 
   public static String generatePatch(final List<String> originalLines, final List<String> modifiedLines) {
-    final Patch<String> patch = DiffUtils.diff(originalLines, modifiedLines);
+    final Patch<String> patch = diff(originalLines, modifiedLines);
     final List<String> diff = UnifiedDiffUtils.generateUnifiedDiff("original", "modified", originalLines, patch, 3);
     final StringBuilder output = new StringBuilder();
 
@@ -40,6 +55,85 @@ public final class Patcher {
     return output.toString();
   }
 
+  /**
+   * The same as {@link DiffUtils#diff(List, List)}. Myers works through one more edit per step, so once it's clear
+   * there are a lot of edits the lines are interned and diffed again as ints.
+   */
+  static Patch<String> diff(final List<String> originalLines, final List<String> modifiedLines) {
+    try {
+      return DiffUtils.diff(originalLines, modifiedLines, new DiffAlgorithmListener() {
+        @Override
+        public void diffStart() { }
+
+        @Override
+        public void diffStep(final int value, final int max) {
+          if(value > STRING_DIFF_MAX_EDITS) {
+            throw new TooManyEditsException();
+          }
+        }
+
+        @Override
+        public void diffEnd() { }
+      });
+    } catch(final TooManyEditsException e) {
+      return diffInterned(originalLines, modifiedLines);
+    }
+  }
+
+  /**
+   * The same as {@link DiffUtils#diff(List, List)}, but the unchanged lines at the start are skipped and the rest are
+   * swapped for ints, so the diff compares ints instead of strings. The unchanged lines at the end can't be skipped
+   * too, Myers can line up the last change differently without them.
+   */
+  private static Patch<String> diffInterned(final List<String> originalLines, final List<String> modifiedLines) {
+    int prefix = 0;
+    while(prefix < originalLines.size() && prefix < modifiedLines.size() && originalLines.get(prefix).equals(modifiedLines.get(prefix))) {
+      prefix++;
+    }
+
+    final Map<String, Integer> ids = new HashMap<>(originalLines.size() - prefix);
+    final List<Integer> originalIds = intern(originalLines.subList(prefix, originalLines.size()), ids);
+    final List<Integer> modifiedIds = intern(modifiedLines.subList(prefix, modifiedLines.size()), ids);
+
+    final Patch<String> patch = new Patch<>();
+    for(final AbstractDelta<Integer> delta : DiffUtils.diff(originalIds, modifiedIds).getDeltas()) {
+      final Chunk<String> source = toLines(delta.getSource(), originalLines, prefix);
+      final Chunk<String> target = toLines(delta.getTarget(), modifiedLines, prefix);
+
+      patch.addDelta(switch(delta.getType()) {
+        case CHANGE -> new ChangeDelta<>(source, target);
+        case DELETE -> new DeleteDelta<>(source, target);
+        case INSERT -> new InsertDelta<>(source, target);
+        case EQUAL -> new EqualDelta<>(source, target);
+      });
+    }
+
+    return patch;
+  }
+
+  /** Gives each distinct line an id, reusing the same Integer instances so they're only boxed once */
+  private static List<Integer> intern(final List<String> lines, final Map<String, Integer> ids) {
+    final List<Integer> interned = new ArrayList<>(lines.size());
+
+    for(final String line : lines) {
+      interned.add(ids.computeIfAbsent(line, key -> ids.size()));
+    }
+
+    return interned;
+  }
+
+  private static Chunk<String> toLines(final Chunk<Integer> chunk, final List<String> lines, final int offset) {
+    final int position = chunk.getPosition() + offset;
+    return new Chunk<>(position, lines.subList(position, position + chunk.size()));
+  }
+
+  /** Stops a string diff that's going to be faster on interned lines */
+  private static final class TooManyEditsException extends RuntimeException {
+    private TooManyEditsException() {
+      super(null, null, false, false);
+    }
+  }
+
   public static String applyPatch(final Path originalFile, final Path patchFile) throws IOException, PatchFailedException {
     final List<String> originalLines = Files.readAllLines(originalFile);
     final List<String> patchLines = Files.readAllLines(patchFile);
@@ -80,7 +174,7 @@ public final class Patcher {
     return String.join("\n", strip(meta, Files.readAllLines(file), stripCalls, stripEndOfLineComments, stripFullLineComments, stripBlankLines));
   }
 
-  private static List<String> strip(final Meta meta, final List<String> input) {
+  public static List<String> strip(final Meta meta, final List<String> input) {
     return strip(meta, input, true, true, true, true);
   }
 
@@ -114,11 +208,10 @@ public final class Patcher {
 
       if(matcher.matches()) {
         final String call = matcher.group(1).strip();
+        final int methodIndex = meta.getMethodIndex(call);
 
-        for(int i = 0; i < meta.methods.length; i++) {
-          if(meta.methods[i].name.equals(call)) {
-            return line.replace(call, Integer.toString(i));
-          }
+        if(methodIndex != -1) {
+          return line.replace(call, Integer.toString(methodIndex));
         }
       }
 
@@ -0,0 +1,853 @@
+package org.legendofdragoon.scripting;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.legendofdragoon.scripting.tokens.Entry;
+import org.legendofdragoon.scripting.tokens.Entrypoint;
+import org.legendofdragoon.scripting.tokens.Op;
+import org.legendofdragoon.scripting.tokens.Param;
+import org.legendofdragoon.scripting.tokens.PointerTable;
+import org.legendofdragoon.scripting.tokens.Script;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.legendofdragoon.scripting.EntrypointCost.UNBOUNDED;
+
+/**
+ * Static worst-case analysis of an assembled script. For each entrypoint this finds the deepest the script stack can
+ * get across GOSUB chains (PUSH/POP values and GOSUB return addresses share the stack), and the most ops that can run
+ * between two yields, which is how much work the entrypoint can do in a single frame.
+ *
+ * <p>Counted loops (a WHILE whose counter is set by an immediate MOV just before the loop and isn't written anywhere in
+ * it, which is what the compiler emits for {@code repeat(n)} and simple for loops) cost their trip count times the cost
+ * of one pass through the body. Each one is measured innermost-first with its WHILE as the end of the path. Other
+ * loops that never yield and recursive subroutines have no static bound, so they're reported as
+ * {@link EntrypointCost#UNBOUNDED}.</p>
+ *
+ * <p>A WAIT whose frame count isn't known (either directly or from an immediate MOV just before it) might be waiting
+ * for 0 frames, so both yielding and carrying on are taken into account.</p>
+ */
+public class ScriptCostAnalyzer {
+  private static final Logger LOGGER = LogManager.getFormatterLogger(ScriptCostAnalyzer.class);
+
+  /** Stack depths past this can only come from a loop that pushes more than it pops */
+  private static final int MAX_TRACKED_DEPTH = 256;
+  /** Marks paths that don't exist, e.g. the cost to return from a block that always yields */
+  private static final long NONE = Long.MIN_VALUE;
+  /** How far back from the start of a loop or a WAIT to look for the MOV that sets its counter or frame count */
+  private static final int MAX_PREHEADER_OPS = 64;
+
+  private static final long STOR_LOCATION = 1L << 32;
+  private static final long INLINE_LOCATION = 2L << 32;
+
+  private final Script script;
+
+  /** Counted loops by the address of their WHILE */
+  private final Map<Integer, CountedLoop> countedLoops = new HashMap<>();
+  /** Frame counts of WAITs that read a variable set by an immediate MOV just before them */
+  private final Map<Integer, Long> waitFrames = new HashMap<>();
+
+  /**
+   * [cost to the next yield or end of script, cost to the next RETURN, cost to get back round to the WHILE of each
+   * loop being measured] for paths starting at an op, keyed by the loops being measured (outermost first)
+   */
+  private final Map<List<CountedLoop>, Map<Integer, long[]>> segments = new HashMap<>();
+  private final Map<List<CountedLoop>, Set<Integer>> visiting = new HashMap<>();
+  /** [cost to the next yield, cost to RETURN] for paths starting after a yield anywhere inside a subroutine */
+  private final Map<Integer, long[]> resumedSegments = new HashMap<>();
+  private final Map<Integer, Long> stackDepths = new HashMap<>();
+  private final Set<Integer> visitingSubs = new HashSet<>();
+
+  public ScriptCostAnalyzer(final Script script) {
+    this.script = script;
+  }
+
+  public List<EntrypointCost> analyze() {
+    final List<EntrypointCost> costs = new ArrayList<>();
+    this.findConstants();
+
+    for(int i = 0; i < this.script.entries.length; i++) {
+      if(this.script.entries[i] instanceof final Entrypoint entrypoint) {
+        final int address = this.script.findLabelAddress(entrypoint.destination);
+        final long[] segment = this.getSegment(address);
+        final long[] resumed = this.getResumedSegment(address);
+
+        // Returning from an entrypoint ends the script's turn just like yielding does
+        final long frameOps = max(max(segment[0], segment[1]), max(resumed[0], resumed[1]));
+        costs.add(new EntrypointCost(costs.size(), address, this.getStackDepth(address), Math.max(frameOps, 0)));
+      }
+    }
+
+    return costs;
+  }
+
+  /** Worst-case cost of a yield-free path from this op until the next yield (or end of script) and until RETURN */
+  private long[] getSegment(final int start) {
+    return this.getSegment(new SegmentKey(start, List.of()));
+  }
+
+  private long[] getSegment(final SegmentKey start) {
+    // Scripts can have long runs of ops, so this is a depth-first walk with an explicit stack rather than recursion
+    final Deque<SegmentKey> stack = new ArrayDeque<>();
+    stack.push(start);
+
+    while(!stack.isEmpty()) {
+      final SegmentKey key = stack.peek();
+      final Map<Integer, long[]> segments = this.getSegments(key.loops);
+      final Set<Integer> visiting = this.visiting.computeIfAbsent(key.loops, k -> new HashSet<>());
+
+      if(segments.containsKey(key.address)) {
+        stack.pop();
+      } else if(visiting.add(key.address)) {
+        for(final SegmentKey dependency : this.getSegmentDependencies(key)) {
+          if(this.visiting.getOrDefault(dependency.loops, Set.of()).contains(dependency.address)) {
+            LOGGER.warn("Loop without a yield at 0x%x", dependency.address);
+          } else if(!this.getSegments(dependency.loops).containsKey(dependency.address)) {
+            stack.push(dependency);
+          }
+        }
+      } else {
+        stack.pop();
+        visiting.remove(key.address);
+        segments.put(key.address, this.computeSegment(key));
+      }
+    }
+
+    return this.getSegments(start.loops).get(start.address);
+  }
+
+  private Map<Integer, long[]> getSegments(final List<CountedLoop> loops) {
+    return this.segments.computeIfAbsent(loops, k -> new HashMap<>());
+  }
+
+  /** The ops whose segments are needed to work out this op's segment */
+  private List<SegmentKey> getSegmentDependencies(final SegmentKey key) {
+    final List<SegmentKey> dependencies = new ArrayList<>();
+
+    if(!key.loops.isEmpty() && !key.loops.getLast().contains(key.address)) {
+      dependencies.add(new SegmentKey(key.address, key.outerLoops()));
+      return dependencies;
+    }
+
+    final Op op = this.getOp(key.address);
+
+    if(op != null && !this.isYield(op) && !key.isLoopEnd()) {
+      final CountedLoop loop = this.getCountedLoop(op, key.loops);
+
+      if(op.type == OpType.GOSUB || op.type == OpType.GOSUB_TABLE) {
+        dependencies.add(new SegmentKey(this.getNextAddress(op), key.loops));
+
+        for(final int sub : this.getCallTargets(op)) {
+          dependencies.add(new SegmentKey(sub, List.of()));
+        }
+      } else if(loop != null) {
+        dependencies.add(new SegmentKey(this.getNextAddress(op), key.loops));
+        dependencies.add(new SegmentKey(loop.start, key.innerLoops(loop)));
+      } else {
+        for(final int successor : this.getSuccessors(op)) {
+          dependencies.add(new SegmentKey(successor, key.loops));
+        }
+      }
+    }
+
+    return dependencies;
+  }
+
+  private long[] computeSegment(final SegmentKey key) {
+    final int width = 2 + key.loops.size();
+
+    // Leaving the innermost loop being measured, the rest of the path is the same as it is for the loop around it
+    if(!key.loops.isEmpty() && !key.loops.getLast().contains(key.address)) {
+      final long[] outer = this.getComputedSegment(new SegmentKey(key.address, key.outerLoops()));
+      final long[] segment = Arrays.copyOf(outer, width);
+      segment[width - 1] = NONE;
+      return segment;
+    }
+
+    final long[] segment = new long[width];
+    Arrays.fill(segment, NONE);
+
+    // Getting back round to the WHILE ends one pass through the loop being measured
+    if(key.isLoopEnd()) {
+      segment[width - 1] = 1;
+      return segment;
+    }
+
+    final Op op = this.getOp(key.address);
+
+    if(op == null) {
+      LOGGER.warn("Execution runs into data at 0x%x", key.address);
+      segment[0] = 0;
+      return segment;
+    }
+
+    if(this.isYield(op)) {
+      segment[0] = 1;
+      return segment;
+    }
+
+    switch(op.type) {
+      case RETURN -> segment[1] = 1;
+      case DEALLOCATE, DEALLOCATE82, CONSUME -> segment[0] = 1;
+      case GOSUB, GOSUB_TABLE -> {
+        final long[] next = this.getComputedSegment(new SegmentKey(this.getNextAddress(op), key.loops));
+        final List<Integer> subs = this.getCallTargets(op);
+
+        if(subs.isEmpty()) {
+          System.arraycopy(next, 0, segment, 0, width);
+        }
+
+        for(final int sub : subs) {
+          final long[] call = this.getComputedSegment(new SegmentKey(sub, List.of()));
+          segment[0] = max(segment[0], max(call[0], add(call[1], next[0])));
+
+          for(int i = 1; i < width; i++) {
+            segment[i] = max(segment[i], add(call[1], next[i]));
+          }
+        }
+
+        addToAll(segment, 1);
+      }
+      default -> {
+        final CountedLoop loop = this.getCountedLoop(op, key.loops);
+
+        if(loop != null) {
+          return this.computeLoopSegment(op, loop, key);
+        }
+
+        // Might be waiting for 0 frames
+        if(this.mayYield(op)) {
+          segment[0] = 0;
+        }
+
+        for(final int successor : this.getSuccessors(op)) {
+          final long[] next = this.getComputedSegment(new SegmentKey(successor, key.loops));
+
+          for(int i = 0; i < width; i++) {
+            segment[i] = max(segment[i], next[i]);
+          }
+        }
+
+        addToAll(segment, 1);
+      }
+    }
+
+    return segment;
+  }
+
+  /** The segment of a counted loop's WHILE, which jumps back to the start of the body at most trip count - 1 times */
+  private long[] computeLoopSegment(final Op op, final CountedLoop loop, final SegmentKey key) {
+    final int width = 2 + key.loops.size();
+    final long[] next = this.getComputedSegment(new SegmentKey(this.getNextAddress(op), key.loops));
+    final long[] body = this.getComputedSegment(new SegmentKey(loop.start, key.innerLoops(loop)));
+    final long pass = body[width];
+    final long repeats = loop.tripCount - 1L;
+    final long[] segment = new long[width];
+
+    for(int i = 0; i < width; i++) {
+      if(repeats == 0) {
+        segment[i] = next[i];
+      } else if(pass == NONE) {
+        // Every path back round yields or leaves the loop first
+        segment[i] = max(next[i], body[i]);
+      } else {
+        // Either go round as many more times as possible and fall out the bottom, or leave part way through the last pass
+        segment[i] = max(add(multiply(repeats, pass), next[i]), add(multiply(repeats - 1, pass), body[i]));
+      }
+    }
+
+    addToAll(segment, 1);
+    return segment;
+  }
+
+  /** Segments that haven't been computed yet are still being walked, so getting back to them means we're in a loop */
+  private long[] getComputedSegment(final SegmentKey key) {
+    final long[] segment = this.getSegments(key.loops).get(key.address);
+
+    if(segment != null) {
+      return segment;
+    }
+
+    final long[] unbounded = new long[2 + key.loops.size()];
+    Arrays.fill(unbounded, UNBOUNDED);
+    return unbounded;
+  }
+
+  /** The counted loop this WHILE closes, unless it's one we're already measuring */
+  private CountedLoop getCountedLoop(final Op op, final List<CountedLoop> loops) {
+    if(op.type != OpType.WHILE) {
+      return null;
+    }
+
+    final CountedLoop loop = this.countedLoops.get(op.address);
+    return loop != null && !loops.contains(loop) ? loop : null;
+  }
+
+  /** Worst-case cost of a yield-free path that starts after a yield somewhere inside this subroutine */
+  private long[] getResumedSegment(final int sub) {
+    final long[] cached = this.resumedSegments.get(sub);
+    if(cached != null) {
+      return cached;
+    }
+
+    if(!this.visitingSubs.add(sub)) {
+      return new long[] {UNBOUNDED, UNBOUNDED};
+    }
+
+    long toYield = NONE;
+    long toReturn = NONE;
+
+    for(final Op op : this.getSubOps(sub)) {
+      if(op.type == OpType.YIELD || op.type == OpType.WAIT && this.mayYield(op)) {
+        final long[] next = this.getSegment(this.getNextAddress(op));
+        toYield = max(toYield, next[0]);
+        toReturn = max(toReturn, next[1]);
+      } else if(op.type == OpType.GOSUB || op.type == OpType.GOSUB_TABLE) {
+        final long[] next = this.getSegment(this.getNextAddress(op));
+
+        for(final int target : this.getCallTargets(op)) {
+          final long[] resumed = this.getResumedSegment(target);
+          toYield = max(toYield, max(resumed[0], add(resumed[1], next[0])));
+          toReturn = max(toReturn, add(resumed[1], next[1]));
+        }
+      }
+    }
+
+    this.visitingSubs.remove(sub);
+    final long[] segment = {toYield, toReturn};
+    this.resumedSegments.put(sub, segment);
+    return segment;
+  }
+
+  /** The deepest the stack gets while this subroutine runs, relative to the depth it was called at */
+  private long getStackDepth(final int sub) {
+    final Long cached = this.stackDepths.get(sub);
+    if(cached != null) {
+      return cached;
+    }
+
+    if(!this.visitingSubs.add(sub)) {
+      LOGGER.warn("Recursive GOSUB to 0x%x", sub);
+      return UNBOUNDED;
+    }
+
+    final Map<Integer, Integer> depths = new HashMap<>();
+    final Deque<int[]> queue = new ArrayDeque<>();
+    queue.add(new int[] {sub, 0});
+    long maxDepth = 0;
+
+    while(!queue.isEmpty()) {
+      final int[] next = queue.pop();
+      final int address = next[0];
+      final int depth = next[1];
+
+      if(depths.getOrDefault(address, Integer.MIN_VALUE) >= depth) {
+        continue;
+      }
+
+      if(depth > MAX_TRACKED_DEPTH) {
+        LOGGER.warn("Stack grows without limit in loop at 0x%x", address);
+        maxDepth = UNBOUNDED;
+        break;
+      }
+
+      depths.put(address, depth);
+
+      final Op op = this.getOp(address);
+      if(op == null) {
+        continue;
+      }
+
+      final int nextDepth = switch(op.type) {
+        case PUSH -> depth + 1;
+        case POP -> depth - 1;
+        default -> depth;
+      };
+
+      maxDepth = Math.max(maxDepth, nextDepth);
+
+      if(op.type == OpType.GOSUB || op.type == OpType.GOSUB_TABLE) {
+        for(final int target : this.getCallTargets(op)) {
+          // The return address takes up a slot for as long as the subroutine runs
+          maxDepth = max(maxDepth, add(this.getStackDepth(target), depth + 1));
+        }
+      }
+
+      for(final int successor : this.getSuccessors(op)) {
+        queue.push(new int[] {successor, nextDepth});
+      }
+    }
+
+    this.visitingSubs.remove(sub);
+    this.stackDepths.put(sub, maxDepth);
+    return maxDepth;
+  }
+
+  /** All ops reachable from the start of a subroutine without returning from it */
+  private List<Op> getSubOps(final int sub) {
+    final List<Op> ops = new ArrayList<>();
+    final Set<Integer> seen = new HashSet<>();
+    final Deque<Integer> queue = new ArrayDeque<>();
+    queue.add(sub);
+
+    while(!queue.isEmpty()) {
+      final int address = queue.pop();
+
+      if(seen.add(address)) {
+        final Op op = this.getOp(address);
+
+        if(op != null) {
+          ops.add(op);
+          queue.addAll(this.getSuccessors(op));
+        }
+      }
+    }
+
+    return ops;
+  }
+
+  /** Whether an op always ends the frame */
+  private boolean isYield(final Op op) {
+    return switch(op.type) {
+      case YIELD, REWIND, REWIND5, REWIND6, REWIND7, REWIND11, REWIND13, REWIND14, REWIND15 -> true;
+      // Waiting for 0 frames continues straight away
+      case WAIT -> {
+        final Long frames = this.getWaitFrames(op);
+        yield frames != null && frames != 0;
+      }
+      default -> false;
+    };
+  }
+
+  /** Whether an op might end the frame, i.e. a WAIT whose frame count is only known at runtime */
+  private boolean mayYield(final Op op) {
+    return this.isYield(op) || op.type == OpType.WAIT && this.getWaitFrames(op) == null;
+  }
+
+  private Long getWaitFrames(final Op op) {
+    if(op.params[0].resolvedValue.isPresent()) {
+      return (long)op.params[0].resolvedValue.get();
+    }
+
+    return this.waitFrames.get(op.address);
+  }
+
+  /** Finds WHILE loops that run a fixed number of times and WAITs for a fixed number of frames, see the class docs */
+  private void findConstants() {
+    final Map<Integer, Op> ops = new HashMap<>();
+    final Map<Integer, Op> previousOps = new HashMap<>();
+    final Map<Integer, List<Integer>> jumpSources = new HashMap<>();
+
+    for(final Entry entry : this.script.entries) {
+      if(entry instanceof final Op op && !ops.containsKey(op.address)) {
+        ops.put(op.address, op);
+        previousOps.put(this.getNextAddress(op), op);
+
+        final List<Integer> targets = this.getJumpTargets(op);
+
+        // Jumps that can land anywhere could skip the counter being set
+        if(targets == null) {
+          return;
+        }
+
+        for(final int target : targets) {
+          jumpSources.computeIfAbsent(target, k -> new ArrayList<>()).add(op.address);
+        }
+      }
+    }
+
+    for(final Op op : ops.values()) {
+      if(op.type == OpType.WAIT && !jumpSources.containsKey(op.address)) {
+        final long location = this.getLocation(op, op.params[0]);
+        final Long frames = location != -1 ? this.findImmediate(previousOps, jumpSources, op.address, location) : null;
+
+        if(frames != null) {
+          this.waitFrames.put(op.address, frames);
+        }
+      }
+
+      if(op.type != OpType.WHILE) {
+        continue;
+      }
+
+      final int start = this.getTarget(op, op.params[1]);
+      final long counter = this.getLocation(op, op.params[0]);
+
+      // The only way into the body has to be falling through from the MOV that sets the counter
+      if(start == -1 || start > op.address || counter == -1 || !List.of(op.address).equals(jumpSources.get(start)) || this.jumpsIntoRange(jumpSources, start, op.address)) {
+        continue;
+      }
+
+      final Long tripCount = this.findImmediate(previousOps, jumpSources, start, counter);
+
+      if(tripCount != null && tripCount > 0 && !this.bodyWritesCounter(ops, start, op.address, counter)) {
+        this.countedLoops.put(op.address, new CountedLoop(start, op.address, tripCount));
+      }
+    }
+  }
+
+  /** Addresses an op may jump or call to other than the next op, or null if they can't be known statically */
+  private List<Integer> getJumpTargets(final Op op) {
+    final List<Integer> targets = new ArrayList<>();
+
+    switch(op.type) {
+      case JMP, GOSUB -> targets.add(this.getTarget(op, op.params[0]));
+      case JMP_CMP, JMP_CMP_0, WHILE -> targets.add(this.getTarget(op, op.params[op.params.length - 1]));
+      case JMP_TABLE, GOSUB_TABLE -> {
+        final List<Integer> tableTargets = this.findTableTargets(op, op.params[1]);
+
+        if(tableTargets == null) {
+          return null;
+        }
+
+        targets.addAll(tableTargets);
+      }
+    }
+
+    return targets.contains(-1) ? null : targets;
+  }
+
+  /** Whether anything outside of start..end jumps to somewhere after start in that range */
+  private boolean jumpsIntoRange(final Map<Integer, List<Integer>> jumpSources, final int start, final int end) {
+    for(final var entry : jumpSources.entrySet()) {
+      if(entry.getKey() > start && entry.getKey() <= end) {
+        for(final int source : entry.getValue()) {
+          if(source < start || source > end) {
+            return true;
+          }
+        }
+      }
+    }
+
+    return false;
+  }
+
+  /** Walks back through straight-line code in front of an op to an immediate MOV to this location, or returns null */
+  private Long findImmediate(final Map<Integer, Op> previousOps, final Map<Integer, List<Integer>> jumpSources, final int start, final long location) {
+    int boundary = start;
+
+    for(int i = 0; i < MAX_PREHEADER_OPS; i++) {
+      final Op op = previousOps.get(boundary);
+
+      // Something jumping into the middle of the preheader might skip the MOV
+      if(op == null || boundary != start && jumpSources.containsKey(boundary)) {
+        return null;
+      }
+
+      if(op.type == OpType.MOV && this.getLocation(op, op.params[1]) == location) {
+        final Param source = op.params[0];
+
+        if((source.type == ParameterType.IMMEDIATE || source.type == ParameterType.NEXT_IMMEDIATE) && source.resolvedValue.isPresent()) {
+          return (long)source.resolvedValue.get();
+        }
+
+        return null;
+      }
+
+      switch(op.type) {
+        case JMP, JMP_CMP, JMP_CMP_0, WHILE, JMP_TABLE, GOSUB, GOSUB_TABLE, RETURN, DEALLOCATE, DEALLOCATE82, CONSUME -> {
+          return null;
+        }
+      }
+
+      if(this.isYield(op) && op.type != OpType.YIELD && op.type != OpType.WAIT || this.writes(op, location)) {
+        return null;
+      }
+
+      boundary = op.address;
+    }
+
+    return null;
+  }
+
+  /** Whether anything in start..end, or any subroutine it calls, might write to the counter */
+  private boolean bodyWritesCounter(final Map<Integer, Op> ops, final int start, final int end, final long counter) {
+    final Set<Integer> subs = new HashSet<>();
+    final Deque<Integer> queue = new ArrayDeque<>();
+
+    for(final Op op : ops.values()) {
+      if(op.address >= start && op.address < end) {
+        if(this.writes(op, counter)) {
+          return true;
+        }
+
+        if(op.type == OpType.GOSUB || op.type == OpType.GOSUB_TABLE) {
+          queue.addAll(this.getCallTargets(op));
+        }
+      }
+    }
+
+    while(!queue.isEmpty()) {
+      final int sub = queue.pop();
+
+      if(subs.add(sub)) {
+        for(final Op op : this.getSubOps(sub)) {
+          if(this.writes(op, counter)) {
+            return true;
+          }
+
+          if(op.type == OpType.GOSUB || op.type == OpType.GOSUB_TABLE) {
+            queue.addAll(this.getCallTargets(op));
+          }
+        }
+      }
+    }
+
+    return false;
+  }
+
+  /** Whether an op might write to this location */
+  private boolean writes(final Op op, final long location) {
+    if(op.type == OpType.MEMCPY) {
+      return true;
+    }
+
+    for(int i = 0; i < op.params.length; i++) {
+      // Engine calls may write to any of their params
+      if(op.type != OpType.CALL && (i >= op.type.params.length || !op.type.params[i].modifiesOutput())) {
+        continue;
+      }
+
+      final Param param = op.params[i];
+      final long written = this.getLocation(op, param);
+
+      if(written != -1) {
+        if(written == location) {
+          return true;
+        }
+
+        continue;
+      }
+
+      // Writes through an index we can't see could land anywhere of the same kind
+      final boolean mayAlias = switch(param.type) {
+        case OTHER_STORAGE, OTHER_STORAGE_OFFSET, OTHER_OTHER_STORAGE, STOR_INL -> (location & STOR_LOCATION) != 0;
+        case INLINE_INL -> (location & INLINE_LOCATION) != 0;
+        default -> param.type.isInline() && (location & INLINE_LOCATION) != 0;
+      };
+
+      if(mayAlias) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /** A key for a stor slot or inline word that a loop counter or frame count can live in, or -1 for anything else */
+  private long getLocation(final Op op, final Param param) {
+    if(param.type == ParameterType.STORAGE) {
+      return STOR_LOCATION | param.rawValues[0] & 0xff;
+    }
+
+    if(param.type == ParameterType.INLINE_1) {
+      final int target = this.getTarget(op, param);
+      return target != -1 ? INLINE_LOCATION | target : -1;
+    }
+
+    return -1;
+  }
+
+  /** Ops that run next in the same subroutine. Calls are treated as returning to the following op. */
+  private List<Integer> getSuccessors(final Op op) {
+    final List<Integer> successors = new ArrayList<>();
+
+    if(this.isYield(op) && op.type != OpType.YIELD && op.type != OpType.WAIT) {
+      return successors;
+    }
+
+    switch(op.type) {
+      case RETURN, DEALLOCATE, DEALLOCATE82, CONSUME -> { }
+      case JMP -> this.addTarget(successors, op, op.params[0]);
+      case JMP_CMP, JMP_CMP_0, WHILE -> {
+        this.addTarget(successors, op, op.params[op.params.length - 1]);
+        successors.add(this.getNextAddress(op));
+      }
+      case JMP_TABLE -> successors.addAll(this.getTableTargets(op, op.params[1]));
+      default -> successors.add(this.getNextAddress(op));
+    }
+
+    return successors;
+  }
+
+  private List<Integer> getCallTargets(final Op op) {
+    if(op.type == OpType.GOSUB_TABLE) {
+      return this.getTableTargets(op, op.params[1]);
+    }
+
+    final List<Integer> targets = new ArrayList<>();
+    this.addTarget(targets, op, op.params[0]);
+    return targets;
+  }
+
+  private void addTarget(final List<Integer> targets, final Op op, final Param param) {
+    final int target = this.getTarget(op, param);
+
+    if(target != -1) {
+      targets.add(target);
+    } else {
+      LOGGER.warn("Can't resolve %s target at 0x%x", op.type, op.address);
+    }
+  }
+
+  private List<Integer> getTableTargets(final Op op, final Param param) {
+    final List<Integer> targets = this.findTableTargets(op, param);
+
+    if(targets == null) {
+      LOGGER.warn("Can't resolve %s table at 0x%x", op.type, op.address);
+      return new ArrayList<>();
+    }
+
+    return targets;
+  }
+
+  /** The destinations of a jump or subroutine table, or null if the table can't be found */
+  private List<Integer> findTableTargets(final Op op, final Param param) {
+    final List<Integer> targets = new ArrayList<>();
+    final int table = this.getTarget(op, param);
+
+    if(table == -1 || !(this.getEntry(table) instanceof final PointerTable pointers)) {
+      return null;
+    }
+
+    for(final String label : pointers.labels) {
+      final int target = this.script.findLabelAddress(label);
+
+      // Tables of tables point to more pointer tables
+      if(param.type.isInlineTable() && this.getEntry(target) instanceof final PointerTable inner) {
+        for(final String innerLabel : inner.labels) {
+          targets.add(this.script.findLabelAddress(innerLabel));
+        }
+      } else {
+        targets.add(target);
+      }
+    }
+
+    return targets;
+  }
+
+  /** Gets the address an inline param points to, or -1 if it can't be known statically */
+  private int getTarget(final Op op, final Param param) {
+    if(param.label != null) {
+      return this.script.findLabelAddress(param.label);
+    }
+
+    if(param.type.isInline() && param.resolvedValue.isPresent()) {
+      return param.resolvedValue.get();
+    }
+
+    if(param.type == ParameterType.INLINE_1) {
+      return op.address + (short)param.rawValues[0] * 0x4;
+    }
+
+    return -1;
+  }
+
+  private int getNextAddress(final Op op) {
+    int words = 1;
+
+    for(final Param param : op.params) {
+      words += param.type.getWidth(param);
+    }
+
+    return op.address + words * 0x4;
+  }
+
+  private Entry getEntry(final int address) {
+    final int index = address / 0x4;
+
+    if(address < 0 || index >= this.script.entries.length) {
+      return null;
+    }
+
+    return this.script.entries[index];
+  }
+
+  private Op getOp(final int address) {
+    return this.getEntry(address) instanceof final Op op ? op : null;
+  }
+
+  private static long add(final long a, final long b) {
+    if(a == NONE || b == NONE) {
+      return NONE;
+    }
+
+    if(a == UNBOUNDED || b == UNBOUNDED) {
+      return UNBOUNDED;
+    }
+
+    return a + b;
+  }
+
+  private static long max(final long a, final long b) {
+    return Math.max(a, b);
+  }
+
+  private static long multiply(final long count, final long cost) {
+    if(count == 0 || cost == NONE) {
+      return count == 0 ? 0 : NONE;
+    }
+
+    if(cost == UNBOUNDED || cost > UNBOUNDED / count) {
+      return UNBOUNDED;
+    }
+
+    return count * cost;
+  }
+
+  private static void addToAll(final long[] segment, final long cost) {
+    for(int i = 0; i < segment.length; i++) {
+      segment[i] = add(segment[i], cost);
+    }
+  }
+
+  /** A WHILE loop that runs a known number of times, from start up to and including the WHILE at end */
+  private static class CountedLoop {
+    private final int start;
+    private final int end;
+    private final long tripCount;
+
+    private CountedLoop(final int start, final int end, final long tripCount) {
+      this.start = start;
+      this.end = end;
+      this.tripCount = tripCount;
+    }
+
+    private boolean contains(final int address) {
+      return address >= this.start && address <= this.end;
+    }
+  }
+
+  /** An op, and the counted loops whose passes we're measuring the cost of while walking from it */
+  private static class SegmentKey {
+    private final int address;
+    private final List<CountedLoop> loops;
+
+    private SegmentKey(final int address, final List<CountedLoop> loops) {
+      this.address = address;
+      this.loops = loops;
+    }
+
+    private boolean isLoopEnd() {
+      return !this.loops.isEmpty() && this.address == this.loops.getLast().end;
+    }
+
+    private List<CountedLoop> outerLoops() {
+      return List.copyOf(this.loops.subList(0, this.loops.size() - 1));
+    }
+
+    private List<CountedLoop> innerLoops(final CountedLoop loop) {
+      final List<CountedLoop> loops = new ArrayList<>(this.loops);
+      loops.add(loop);
+      return List.copyOf(loops);
+    }
+  }
+}
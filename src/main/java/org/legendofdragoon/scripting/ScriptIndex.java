@@ -0,0 +1,93 @@
+package org.legendofdragoon.scripting;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.BitSet;
+
+/**
+ * Things the disassembler looks for over and over, found in a single pass over the script bytes: every halfword that
+ * is a string terminator, and every word that could be an op header.
+ *
+ * <p>The terminator search checks four halfwords at a time by reading the script as longs and using bit tricks to find
+ * matching lanes, with a scalar loop for any bytes left over at the end.</p>
+ */
+public class ScriptIndex {
+  public static final int STRING_TERMINATOR = 0xa0ff;
+
+  private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+  private static final long TERMINATORS = 0xa0ff_a0ff_a0ff_a0ffL;
+  private static final long LOW_BITS = 0x7fff_7fff_7fff_7fffL;
+
+  /** Indexed by halfword */
+  private final BitSet terminators;
+  /** Indexed by word */
+  private final BitSet headers;
+
+  private ScriptIndex(final BitSet terminators, final BitSet headers) {
+    this.terminators = terminators;
+    this.headers = headers;
+  }
+
+  public static ScriptIndex scan(final byte[] script) {
+    final BitSet terminators = new BitSet(script.length / 2);
+    final BitSet headers = new BitSet(script.length / 4);
+    final int longs = script.length / 8;
+
+    for(int i = 0; i < longs; i++) {
+      final long value = (long)LONGS.get(script, i * 8);
+
+      // Each halfword that matches the terminator becomes 0, then the high bit of every zero lane gets set
+      final long matches = value ^ TERMINATORS;
+      long zeroLanes = ~((matches & LOW_BITS) + LOW_BITS | matches | LOW_BITS);
+
+      while(zeroLanes != 0) {
+        terminators.set(i * 4 + Long.numberOfTrailingZeros(zeroLanes) / 16);
+        zeroLanes &= zeroLanes - 1;
+      }
+
+      if(Disassembler.isValidHeader((int)value)) {
+        headers.set(i * 2);
+      }
+
+      if(Disassembler.isValidHeader((int)(value >>> 32))) {
+        headers.set(i * 2 + 1);
+      }
+    }
+
+    scanScalar(script, longs * 8, terminators, headers);
+    return new ScriptIndex(terminators, headers);
+  }
+
+  /** The same as {@link #scan} but one halfword at a time */
+  public static ScriptIndex scanScalar(final byte[] script) {
+    final BitSet terminators = new BitSet(script.length / 2);
+    final BitSet headers = new BitSet(script.length / 4);
+    scanScalar(script, 0, terminators, headers);
+    return new ScriptIndex(terminators, headers);
+  }
+
+  private static void scanScalar(final byte[] script, final int start, final BitSet terminators, final BitSet headers) {
+    for(int offset = start; offset <= script.length - 2; offset += 2) {
+      if(MathHelper.get(script, offset, 2) == STRING_TERMINATOR) {
+        terminators.set(offset / 2);
+      }
+    }
+
+    for(int offset = start; offset <= script.length - 4; offset += 4) {
+      if(Disassembler.isValidHeader(MathHelper.get(script, offset, 4))) {
+        headers.set(offset / 4);
+      }
+    }
+  }
+
+  /** @return the address of the first terminator at or after this address, or -1 if there isn't one */
+  public int nextTerminator(final int address) {
+    final int halfword = this.terminators.nextSetBit(address / 2);
+    return halfword == -1 ? -1 : halfword * 2;
+  }
+
+  public boolean isHeader(final int address) {
+    return this.headers.get(address / 4);
+  }
+}
@@ -12,11 +12,16 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.config.plugins.util.PluginManager;
 import org.legendofdragoon.scripting.compiler.FateCompiler;
+import org.legendofdragoon.scripting.compiler.FateOptions;
 import org.legendofdragoon.scripting.meta.Meta;
 import org.legendofdragoon.scripting.meta.MetaManager;
 import org.legendofdragoon.scripting.meta.NoSuchVersionException;
 import org.legendofdragoon.scripting.tokens.Script;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -31,6 +36,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 public final class Shell {
   private Shell() { }
@@ -47,7 +53,7 @@ public final class Shell {
     LOGGER.info("Params: %s", Arrays.toString(args));
 
     if(args.length == 0) {
-      LOGGER.info("Commands: [v]ersions, [d]ecompile, [c]ompile, [g]enpatch, [a]pplypatch, [u]ndopatch, [s]trip");
+      LOGGER.info("Commands: [v]ersions, [d]ecompile, [c]ompile, [g]enpatch, [a]pplypatch, [u]ndopatch, [s]trip, genbinpatch, binpatch, patchbin, patchset, index, query, stats");
       System.exit(1);
       return;
     }
@@ -86,6 +92,48 @@ public final class Shell {
       return;
     }
 
+    if("genbinpatch".equals(args[0])) {
+      generateBinaryPatch(metaManager, args);
+      System.exit(0);
+      return;
+    }
+
+    if("binpatch".equals(args[0])) {
+      applyBinaryPatch(args);
+      System.exit(0);
+      return;
+    }
+
+    if("patchbin".equals(args[0])) {
+      patchBinary(metaManager, cacheDir, args);
+      System.exit(0);
+      return;
+    }
+
+    if("patchset".equals(args[0])) {
+      applyPatchSet(args);
+      System.exit(0);
+      return;
+    }
+
+    if("index".equals(args[0])) {
+      buildIndex(metaManager, args);
+      System.exit(0);
+      return;
+    }
+
+    if("query".equals(args[0])) {
+      queryIndex(args);
+      System.exit(0);
+      return;
+    }
+
+    if("stats".equals(args[0])) {
+      collectStats(metaManager, args);
+      System.exit(0);
+      return;
+    }
+
     if("s".equals(args[0]) || "strip".equals(args[0])) {
       strip(metaManager, args);
       System.exit(0);
@@ -100,6 +148,15 @@ public final class Shell {
 
     if("a".equals(args[0]) || "assemble".equals(args[0]) || "c".equals(args[0]) || "compile".equals(args[0])) {
       options.addOption("L", "libs", true, "Add a library directory against which #includes will be resolved");
+      options.addOption("O", "optimize", false, "Enable optimizations such as automatically inlining small functions");
+      options.addOption(null, "inline-threshold", true, "The maximum number of statements a function can have to be inlined automatically");
+      options.addOption(null, "stor-convention", true, "Pass function params and return values through stor slots (base[,count], e.g. 16,4)");
+      options.addOption(null, "stor-registers", true, "Move heavily used function locals into free stor slots (base[,count], e.g. 24,8)");
+    }
+
+    if("a".equals(args[0]) || "assemble".equals(args[0])) {
+      options.addOption(null, "max-stack", true, "Fail if any entrypoint can use more than this many words of script stack");
+      options.addOption(null, "max-frame-ops", true, "Fail if any entrypoint can run more than this many ops between yields");
     }
 
     if("d".equals(args[0]) || "decompile".equals(args[0])) {
@@ -109,6 +166,7 @@ public final class Shell {
       options.addOption("N", "no-names", false, "Do not use friendly names for engine calls");
       options.addOption("l", "line-numbers", false, "Prepend lines of decompiler output with addresses");
       options.addOption("e", "entrypoint-count", true, "The number of entrypoints in this script");
+      options.addOption("s", "speculative", false, "Sweep the script for code that isn't reachable from any known pointer and decompile that too");
     }
 
     final CommandLine cmd;
@@ -173,6 +231,7 @@ public final class Shell {
         final boolean stripComments = cmd.hasOption("no-comments");
         final boolean stripNames = cmd.hasOption("no-names");
         final boolean lineNumbers = cmd.hasOption("line-numbers");
+        final boolean speculative = cmd.hasOption("speculative");
 
         int entrypointCount = -1;
         if(cmd.hasOption("entrypoint-count")) {
@@ -211,7 +270,7 @@ public final class Shell {
 
         final Translator translator = new Translator();
         final byte[] bytes = Files.readAllBytes(inputFile);
-        final Script script = disassembler.disassemble(inputFile.toString(), bytes, extraBranches, tableLengths, entrypointCount);
+        final Script script = disassembler.disassemble(inputFile.toString(), bytes, extraBranches, tableLengths, entrypointCount, speculative);
         final String decompiledOutput = translator.translate(script, meta, stripNames, stripComments, lineNumbers);
 
         Files.createDirectories(outputFile.getParent());
@@ -226,7 +285,7 @@ public final class Shell {
 
         final List<Path> includeDirs = readIncludeDirs(cmd.getOptionValues("libs"));
 
-        final FateCompiler compiler = new FateCompiler(meta);
+        final FateCompiler compiler = new FateCompiler(meta, readCompilerOptions(cmd));
         final String compiled;
 
         try {
@@ -251,12 +310,18 @@ public final class Shell {
 
         final List<Path> includeDirs = readIncludeDirs(cmd.getOptionValues("libs"));
 
-        final FateCompiler compiler = new FateCompiler(meta);
+        final FateCompiler compiler = new FateCompiler(meta, readCompilerOptions(cmd));
         final Assembler assembler = new Assembler();
         final Tokenizer tokenizer = new Tokenizer(meta, compiler);
 
         final String input = Files.readString(inputFile);
         final Script tokenizedDecompiledSource = tokenizer.tokenize(inputFile.toString(), includeDirs, input);
+
+        if(!checkBudgets(cmd, tokenizedDecompiledSource)) {
+          System.exit(1);
+          return;
+        }
+
         final int[] recompiledSource = assembler.assemble(tokenizedDecompiledSource);
 
         Files.createDirectories(outputFile.getParent());
@@ -264,12 +329,64 @@ public final class Shell {
       }
 
       default -> {
-        LOGGER.info("Commands: [v]ersions, [d]ecompile, [c]ompile, [a]ssemble, [g]enpatch, [p]atch, [u]ndopatch");
+        LOGGER.info("Commands: [v]ersions, [d]ecompile, [c]ompile, [a]ssemble, [g]enpatch, [p]atch, [u]ndopatch, genbinpatch, binpatch, patchbin, patchset, index, query, stats");
         System.exit(1);
       }
     }
   }
 
+  /** Logs the worst-case stack depth and per-frame cost of each entrypoint, returning false if any exceed their budgets */
+  private static boolean checkBudgets(final CommandLine cmd, final Script script) {
+    final long maxStack = cmd.hasOption("max-stack") ? Long.parseLong(cmd.getOptionValue("max-stack")) : -1;
+    final long maxFrameOps = cmd.hasOption("max-frame-ops") ? Long.parseLong(cmd.getOptionValue("max-frame-ops")) : -1;
+    boolean withinBudget = true;
+
+    for(final EntrypointCost cost : new ScriptCostAnalyzer(script).analyze()) {
+      LOGGER.info(cost);
+
+      if(maxStack != -1 && cost.maxStackDepth > maxStack) {
+        LOGGER.error("Entrypoint %d stack depth %s exceeds the budget of %d", cost.index, EntrypointCost.format(cost.maxStackDepth), maxStack);
+        withinBudget = false;
+      }
+
+      if(maxFrameOps != -1 && cost.maxFrameOps > maxFrameOps) {
+        LOGGER.error("Entrypoint %d runs %s ops in a frame, exceeding the budget of %d", cost.index, EntrypointCost.format(cost.maxFrameOps), maxFrameOps);
+        withinBudget = false;
+      }
+    }
+
+    return withinBudget;
+  }
+
+  private static FateOptions readCompilerOptions(final CommandLine cmd) {
+    final FateOptions options = new FateOptions();
+    options.optimize = cmd.hasOption("optimize");
+
+    if(cmd.hasOption("inline-threshold")) {
+      options.inlineThreshold = Integer.parseInt(cmd.getOptionValue("inline-threshold"));
+    }
+
+    if(cmd.hasOption("stor-convention")) {
+      final String[] parts = cmd.getOptionValue("stor-convention").split(",");
+      options.storBase = Integer.parseInt(parts[0].trim());
+
+      if(parts.length > 1) {
+        options.storCount = Integer.parseInt(parts[1].trim());
+      }
+    }
+
+    if(cmd.hasOption("stor-registers")) {
+      final String[] parts = cmd.getOptionValue("stor-registers").split(",");
+      options.registerBase = Integer.parseInt(parts[0].trim());
+
+      if(parts.length > 1) {
+        options.registerCount = Integer.parseInt(parts[1].trim());
+      }
+    }
+
+    return options;
+  }
+
   private static List<Path> readIncludeDirs(final String[] includeDirsIn) {
     final List<Path> includeDirs = new ArrayList<>();
 
@@ -396,6 +513,374 @@ public final class Shell {
     Files.writeString(outputFile, output, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
   }
 
+  private static void generateBinaryPatch(final MetaManager metaManager, final String[] args) throws IOException, NoSuchVersionException, CsvException {
+    final Options options = new Options();
+    options.addOption("v", "version", true, "The meta version to use");
+    options.addRequiredOption("a", "original", true, "The original source file");
+    options.addRequiredOption("b", "modified", true, "The modified source file");
+    options.addRequiredOption("o", "out", true, "The output file");
+    options.addOption("L", "libs", true, "Add a library directory against which #includes will be resolved");
+
+    final CommandLine cmd;
+    final CommandLineParser parser = new DefaultParser();
+    final HelpFormatter helper = new HelpFormatter();
+
+    try {
+      cmd = parser.parse(options, args);
+    } catch(final ParseException e) {
+      LOGGER.error(e.getMessage());
+      helper.printHelp("Usage:", options);
+      System.exit(1);
+      return;
+    }
+
+    final String version = cmd.getOptionValue("version", "snapshot");
+
+    LOGGER.info("Loading meta %s...", version);
+    final Meta meta = metaManager.loadMeta(version);
+
+    final Path originalFile = Paths.get(cmd.getOptionValue("original")).toAbsolutePath();
+    final Path modifiedFile = Paths.get(cmd.getOptionValue("modified")).toAbsolutePath();
+    final Path outputFile = Paths.get(cmd.getOptionValue("out")).toAbsolutePath();
+
+    if(!Files.exists(originalFile) || !Files.exists(modifiedFile)) {
+      LOGGER.error("Error: one or both input files do not exist");
+      System.exit(1);
+      return;
+    }
+
+    LOGGER.info("Generating binary patch...");
+    LOGGER.info("Original: %s", originalFile);
+    LOGGER.info("Modified: %s", modifiedFile);
+    LOGGER.info("Output: %s", outputFile);
+
+    final List<Path> includeDirs = readIncludeDirs(cmd.getOptionValues("libs"));
+    final Tokenizer tokenizer = new Tokenizer(meta, new FateCompiler(meta, new FateOptions()));
+    final Assembler assembler = new Assembler();
+
+    final int[] original = assembler.assemble(tokenizer.tokenize(originalFile.toString(), includeDirs, Files.readString(originalFile)));
+    final int[] modified = assembler.assemble(tokenizer.tokenize(modifiedFile.toString(), includeDirs, Files.readString(modifiedFile)));
+
+    final byte[] output = BinaryPatcher.generatePatch(original, modified);
+    Files.createDirectories(outputFile.getParent());
+    Files.write(outputFile, output, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  private static void applyBinaryPatch(final String[] args) throws IOException {
+    final Options options = new Options();
+    options.addRequiredOption("a", "original", true, "The original script");
+    options.addRequiredOption("b", "patch", true, "The binary patch file");
+    options.addRequiredOption("o", "out", true, "The output file");
+
+    final CommandLine cmd;
+    final CommandLineParser parser = new DefaultParser();
+    final HelpFormatter helper = new HelpFormatter();
+
+    try {
+      cmd = parser.parse(options, args);
+    } catch(final ParseException e) {
+      LOGGER.error(e.getMessage());
+      helper.printHelp("Usage:", options);
+      System.exit(1);
+      return;
+    }
+
+    final Path originalFile = Paths.get(cmd.getOptionValue("original")).toAbsolutePath();
+    final Path patchFile = Paths.get(cmd.getOptionValue("patch")).toAbsolutePath();
+    final Path outputFile = Paths.get(cmd.getOptionValue("out")).toAbsolutePath();
+
+    if(!Files.exists(originalFile) || !Files.exists(patchFile)) {
+      LOGGER.error("Error: one or both input files do not exist");
+      System.exit(1);
+      return;
+    }
+
+    LOGGER.info("Applying binary patch...");
+    LOGGER.info("Original: %s", originalFile);
+    LOGGER.info("Patch: %s", patchFile);
+    LOGGER.info("Output: %s", outputFile);
+
+    final byte[] output = BinaryPatcher.applyPatch(Files.readAllBytes(originalFile), Files.readAllBytes(patchFile));
+    Files.createDirectories(outputFile.getParent());
+    Files.write(outputFile, output, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  private static void patchBinary(final MetaManager metaManager, final Path cacheDir, final String[] args) throws IOException, NoSuchVersionException, CsvException, PatchFailedException {
+    final Options options = new Options();
+    options.addOption("v", "version", true, "The meta version to use");
+    options.addRequiredOption("a", "original", true, "The vanilla script");
+    options.addRequiredOption("b", "patch", true, "The patch file");
+    options.addRequiredOption("o", "out", true, "The output file");
+    options.addOption(null, "no-cache", false, "Do not read or write cached decompilations and patched scripts");
+
+    final CommandLine cmd;
+    final CommandLineParser parser = new DefaultParser();
+    final HelpFormatter helper = new HelpFormatter();
+
+    try {
+      cmd = parser.parse(options, args);
+    } catch(final ParseException e) {
+      LOGGER.error(e.getMessage());
+      helper.printHelp("Usage:", options);
+      System.exit(1);
+      return;
+    }
+
+    final String version = cmd.getOptionValue("version", "snapshot");
+
+    LOGGER.info("Loading meta %s...", version);
+    final Meta meta = metaManager.loadMeta(version);
+
+    final Path originalFile = Paths.get(cmd.getOptionValue("original")).toAbsolutePath();
+    final Path patchFile = Paths.get(cmd.getOptionValue("patch")).toAbsolutePath();
+    final Path outputFile = Paths.get(cmd.getOptionValue("out")).toAbsolutePath();
+
+    if(!Files.exists(originalFile) || !Files.exists(patchFile)) {
+      LOGGER.error("Error: one or both input files do not exist");
+      System.exit(1);
+      return;
+    }
+
+    LOGGER.info("Patching script...");
+    LOGGER.info("Original: %s", originalFile);
+    LOGGER.info("Patch: %s", patchFile);
+    LOGGER.info("Output: %s", outputFile);
+
+    final PatchPipeline pipeline = new PatchPipeline(meta, version, cmd.hasOption("no-cache") ? null : cacheDir);
+    final byte[] output = pipeline.patch(originalFile.toString(), Files.readAllBytes(originalFile), Files.readString(patchFile));
+    Files.createDirectories(outputFile.getParent());
+    Files.write(outputFile, output, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  private static void applyPatchSet(final String[] args) throws IOException {
+    final Options options = new Options();
+    options.addRequiredOption("s", "scripts", true, "The directory containing the scripts to patch");
+    options.addRequiredOption("m", "mod", true, "A directory of .patch files laid out like the scripts directory, may be given more than once in load order");
+    options.addRequiredOption("o", "out", true, "The directory to write patched scripts to");
+    options.addOption("r", "report", true, "The JSON report file (defaults to patchset-report.json in the output directory)");
+
+    final CommandLine cmd;
+    final CommandLineParser parser = new DefaultParser();
+    final HelpFormatter helper = new HelpFormatter();
+
+    try {
+      cmd = parser.parse(options, args);
+    } catch(final ParseException e) {
+      LOGGER.error(e.getMessage());
+      helper.printHelp("Usage:", options);
+      System.exit(1);
+      return;
+    }
+
+    final Path scriptsDir = Paths.get(cmd.getOptionValue("scripts")).toAbsolutePath().normalize();
+    final Path outputDir = Paths.get(cmd.getOptionValue("out")).toAbsolutePath().normalize();
+    final Path reportFile = cmd.hasOption("report") ? Paths.get(cmd.getOptionValue("report")).toAbsolutePath() : outputDir.resolve("patchset-report.json");
+
+    final PatchSet patchSet = new PatchSet();
+
+    for(final String modIn : cmd.getOptionValues("mod")) {
+      final Path modDir = Paths.get(modIn).toAbsolutePath().normalize();
+
+      if(!Files.isDirectory(modDir)) {
+        LOGGER.error("Error: mod directory %s does not exist", modDir);
+        System.exit(1);
+        return;
+      }
+
+      try(final Stream<Path> files = Files.walk(modDir)) {
+        for(final Path patchFile : files.filter(file -> file.toString().endsWith(".patch")).sorted().toList()) {
+          final String relative = modDir.relativize(patchFile).toString();
+          final String target = relative.substring(0, relative.length() - ".patch".length());
+          patchSet.add(target, modDir.getFileName() + "/" + relative, Files.readAllLines(patchFile));
+        }
+      }
+    }
+
+    LOGGER.info("Applying patch set...");
+    LOGGER.info("Scripts: %s", scriptsDir);
+    LOGGER.info("Output: %s", outputDir);
+
+    final List<PatchSet.ScriptResult> results = patchSet.apply(target -> Files.readAllLines(scriptsDir.resolve(target)));
+
+    for(final PatchSet.ScriptResult result : results) {
+      LOGGER.info("%s: %s", result.target, result.status());
+
+      if(result.output != null) {
+        final Path outputFile = outputDir.resolve(result.target);
+        Files.createDirectories(outputFile.getParent());
+        Files.writeString(outputFile, String.join("\n", result.output) + '\n', StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+      }
+    }
+
+    Files.createDirectories(reportFile.getParent());
+    Files.writeString(reportFile, PatchSet.toJson(results), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    LOGGER.info("Report: %s", reportFile);
+  }
+
+  private static void buildIndex(final MetaManager metaManager, final String[] args) throws IOException, NoSuchVersionException, CsvException {
+    final Options options = new Options();
+    options.addOption("v", "version", true, "The meta version to use");
+    options.addRequiredOption("i", "in", true, "The directory containing the scripts to index");
+    options.addRequiredOption("o", "out", true, "The index file");
+
+    final CommandLine cmd;
+    final CommandLineParser parser = new DefaultParser();
+    final HelpFormatter helper = new HelpFormatter();
+
+    try {
+      cmd = parser.parse(options, args);
+    } catch(final ParseException e) {
+      LOGGER.error(e.getMessage());
+      helper.printHelp("Usage:", options);
+      System.exit(1);
+      return;
+    }
+
+    final String version = cmd.getOptionValue("version", "snapshot");
+
+    LOGGER.info("Loading meta %s...", version);
+    final Meta meta = metaManager.loadMeta(version);
+
+    final Path scriptsDir = Paths.get(cmd.getOptionValue("in")).toAbsolutePath().normalize();
+    final Path outputFile = Paths.get(cmd.getOptionValue("out")).toAbsolutePath().normalize();
+
+    if(!Files.isDirectory(scriptsDir)) {
+      LOGGER.error("Error: scripts directory %s does not exist", scriptsDir);
+      System.exit(1);
+      return;
+    }
+
+    final List<String> scripts = listScripts(scriptsDir);
+
+    LOGGER.info("Indexing %d scripts...", scripts.size());
+    LOGGER.info("Scripts: %s", scriptsDir);
+    LOGGER.info("Output: %s", outputFile);
+
+    final CorpusIndex index = CorpusIndex.build(meta, scripts, name -> Files.readAllBytes(scriptsDir.resolve(name)));
+
+    Files.createDirectories(outputFile.getParent());
+    try(final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(outputFile)))) {
+      index.write(out);
+    }
+  }
+
+  private static void collectStats(final MetaManager metaManager, final String[] args) throws IOException, NoSuchVersionException, CsvException {
+    final Options options = new Options();
+    options.addOption("v", "version", true, "The meta version to use");
+    options.addRequiredOption("i", "in", true, "The directory containing the scripts to count");
+    options.addRequiredOption("o", "out", true, "The directory to write stats.csv and stats.json to");
+
+    final CommandLine cmd;
+    final CommandLineParser parser = new DefaultParser();
+    final HelpFormatter helper = new HelpFormatter();
+
+    try {
+      cmd = parser.parse(options, args);
+    } catch(final ParseException e) {
+      LOGGER.error(e.getMessage());
+      helper.printHelp("Usage:", options);
+      System.exit(1);
+      return;
+    }
+
+    final String version = cmd.getOptionValue("version", "snapshot");
+
+    LOGGER.info("Loading meta %s...", version);
+    final Meta meta = metaManager.loadMeta(version);
+
+    final Path scriptsDir = Paths.get(cmd.getOptionValue("in")).toAbsolutePath().normalize();
+    final Path outputDir = Paths.get(cmd.getOptionValue("out")).toAbsolutePath().normalize();
+
+    if(!Files.isDirectory(scriptsDir)) {
+      LOGGER.error("Error: scripts directory %s does not exist", scriptsDir);
+      System.exit(1);
+      return;
+    }
+
+    final List<String> scripts = listScripts(scriptsDir);
+
+    LOGGER.info("Counting %d scripts...", scripts.size());
+    LOGGER.info("Scripts: %s", scriptsDir);
+    LOGGER.info("Output: %s", outputDir);
+
+    final CorpusStats stats = CorpusStats.collect(meta, scripts, name -> Files.readAllBytes(scriptsDir.resolve(name)));
+
+    Files.createDirectories(outputDir);
+    Files.writeString(outputDir.resolve("stats.csv"), stats.toCsv(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    Files.writeString(outputDir.resolve("stats.json"), stats.toJson(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  /** Every file under a directory, relative to it with forward slashes, in name order */
+  private static List<String> listScripts(final Path dir) throws IOException {
+    try(final Stream<Path> files = Files.walk(dir)) {
+      return files.filter(Files::isRegularFile).map(file -> dir.relativize(file).toString().replace('\\', '/')).sorted().toList();
+    }
+  }
+
+  private static void queryIndex(final String[] args) throws IOException {
+    final Options options = new Options();
+    options.addRequiredOption("i", "index", true, "The index file built by the index command");
+    options.addOption("c", "call", true, "Find every call to this engine method");
+    options.addOption("g", "var", true, "Find every read and write of this gamevar");
+    options.addOption("t", "text", true, "Find every string containing this text");
+
+    final CommandLine cmd;
+    final CommandLineParser parser = new DefaultParser();
+    final HelpFormatter helper = new HelpFormatter();
+
+    try {
+      cmd = parser.parse(options, args);
+    } catch(final ParseException e) {
+      LOGGER.error(e.getMessage());
+      helper.printHelp("Usage:", options);
+      System.exit(1);
+      return;
+    }
+
+    if(!cmd.hasOption("call") && !cmd.hasOption("var") && !cmd.hasOption("text")) {
+      helper.printHelp("Usage:", options);
+      System.exit(1);
+      return;
+    }
+
+    final Path indexFile = Paths.get(cmd.getOptionValue("index")).toAbsolutePath();
+
+    if(!Files.exists(indexFile)) {
+      LOGGER.error("Error: index file %s does not exist", indexFile);
+      System.exit(1);
+      return;
+    }
+
+    final CorpusIndex index;
+    try(final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+      index = CorpusIndex.read(in);
+    }
+
+    if(cmd.hasOption("call")) {
+      final List<CorpusIndex.Location> calls = index.findCalls(cmd.getOptionValue("call"));
+      LOGGER.info("%d calls to %s:", calls.size(), cmd.getOptionValue("call"));
+      calls.forEach(location -> LOGGER.info("  %s", location));
+    }
+
+    if(cmd.hasOption("var")) {
+      final int var = Integer.decode(cmd.getOptionValue("var"));
+
+      final List<CorpusIndex.Location> reads = index.findVarReads(var);
+      LOGGER.info("%d reads of var[%d]:", reads.size(), var);
+      reads.forEach(location -> LOGGER.info("  %s", location));
+
+      final List<CorpusIndex.Location> writes = index.findVarWrites(var);
+      LOGGER.info("%d writes to var[%d]:", writes.size(), var);
+      writes.forEach(location -> LOGGER.info("  %s", location));
+    }
+
+    if(cmd.hasOption("text")) {
+      final List<CorpusIndex.StringMatch> matches = index.findStrings(cmd.getOptionValue("text"));
+      LOGGER.info("%d strings containing \"%s\":", matches.size(), cmd.getOptionValue("text"));
+      matches.forEach(match -> LOGGER.info("  %s", match));
+    }
+  }
+
   private static void undoDiff(final String[] args) throws IOException {
     final Options options = new Options();
     options.addRequiredOption("a", "patched", true, "The patched file");
@@ -1,8 +1,17 @@
 package org.legendofdragoon.scripting;
 
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
 public class State {
   private final byte[] script;
 
+  private ScriptIndex index;
+
+  /** Per-word results of op heuristics, which only depend on the script bytes so they never need to be recomputed */
+  private final BitSet checkedProbableOps = new BitSet();
+  private final BitSet probableOps = new BitSet();
+
   private int headerOffset;
   private int currentOffset;
 
@@ -10,6 +19,13 @@ public class State {
     this.script = script;
   }
 
+  /** A state with its own position over the same script, sharing the index so it's only built once */
+  public State copy() {
+    final State copy = new State(this.script);
+    copy.index = this.index();
+    return copy;
+  }
+
   public int length() {
     return this.script.length;
   }
@@ -75,4 +91,24 @@ public class State {
   public boolean hasMore() {
     return this.currentOffset / 4 < this.script.length / 4;
   }
+
+  /** Built the first time it's needed */
+  public ScriptIndex index() {
+    if(this.index == null) {
+      this.index = ScriptIndex.scan(this.script);
+    }
+
+    return this.index;
+  }
+
+  public boolean isProbablyOp(final int offset, final IntPredicate test) {
+    final int index = offset / 0x4;
+
+    if(!this.checkedProbableOps.get(index)) {
+      this.probableOps.set(index, test.test(offset));
+      this.checkedProbableOps.set(index);
+    }
+
+    return this.probableOps.get(index);
+  }
 }
@@ -0,0 +1,365 @@
+package org.legendofdragoon.scripting;
+
+import org.legendofdragoon.scripting.resolution.SubroutineSummary;
+import org.legendofdragoon.scripting.tokens.Entry;
+import org.legendofdragoon.scripting.tokens.Op;
+import org.legendofdragoon.scripting.tokens.Param;
+import org.legendofdragoon.scripting.tokens.PointerTable;
+import org.legendofdragoon.scripting.tokens.Script;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Works out {@link SubroutineSummary subroutine summaries} from the ops that have been disassembled so far. Subroutines
+ * that call each other are solved together by iterating until none of their summaries change. Finished summaries are
+ * kept in {@link Script#subSummaries}, but a subroutine whose code hasn't been fully disassembled yet (e.g. because
+ * we're still in the middle of probing it) is treated as unknown and isn't memoised.
+ */
+public class SubroutineSummarizer {
+  private final Script script;
+  private final State state;
+  private final Map<Integer, SubroutineSummary> working = new HashMap<>();
+
+  public SubroutineSummarizer(final Script script, final State state) {
+    this.script = script;
+    this.state = state;
+  }
+
+  /** The combined summary of every subroutine a GOSUB or GOSUB_TABLE might call */
+  public SubroutineSummary summarizeCall(final Op op) {
+    final List<Integer> targets = this.getCallTargets(op);
+
+    if(targets == null) {
+      return SubroutineSummary.unknown();
+    }
+
+    SubroutineSummary summary = SubroutineSummary.neverReturns();
+    for(final int target : targets) {
+      summary = summary.join(this.summarize(target));
+    }
+
+    return summary;
+  }
+
+  public SubroutineSummary summarize(final int sub) {
+    final SubroutineSummary memoised = this.script.subSummaries.get(sub);
+    if(memoised != null) {
+      return memoised;
+    }
+
+    // Find every subroutine that this one might end up in, they're solved together in case any of them recurse
+    final Set<Integer> group = new LinkedHashSet<>();
+    final Set<Integer> incomplete = new HashSet<>();
+    final Deque<Integer> queue = new ArrayDeque<>();
+    queue.add(sub);
+
+    while(!queue.isEmpty()) {
+      final int address = queue.pop();
+
+      if(this.script.subSummaries.containsKey(address) || !group.add(address)) {
+        continue;
+      }
+
+      final List<Op> ops = this.getSubOps(address);
+
+      if(ops == null) {
+        incomplete.add(address);
+        continue;
+      }
+
+      for(final Op op : ops) {
+        if(op.type == OpType.GOSUB || op.type == OpType.GOSUB_TABLE) {
+          final List<Integer> targets = this.getCallTargets(op);
+
+          if(targets != null) {
+            queue.addAll(targets);
+          }
+        }
+      }
+    }
+
+    for(final int address : group) {
+      this.working.put(address, incomplete.contains(address) ? SubroutineSummary.unknown() : SubroutineSummary.neverReturns());
+    }
+
+    boolean changed = true;
+    while(changed) {
+      changed = false;
+
+      for(final int address : group) {
+        if(!incomplete.contains(address)) {
+          final SubroutineSummary summary = this.analyze(address);
+
+          if(!summary.equals(this.working.get(address))) {
+            this.working.put(address, summary);
+            changed = true;
+          }
+        }
+      }
+    }
+
+    // Summaries that depend on code we haven't seen yet might get better later
+    if(incomplete.isEmpty()) {
+      for(final int address : group) {
+        this.script.subSummaries.put(address, this.working.get(address));
+      }
+    }
+
+    return this.working.get(sub);
+  }
+
+  /** Flows stor effects through a subroutine, using the current summaries of anything it calls */
+  private SubroutineSummary analyze(final int sub) {
+    final Map<Integer, SubroutineSummary> in = new HashMap<>();
+    final Deque<Integer> queue = new ArrayDeque<>();
+    in.put(sub, SubroutineSummary.entry());
+    queue.add(sub);
+
+    SubroutineSummary result = SubroutineSummary.neverReturns();
+
+    while(!queue.isEmpty()) {
+      final int address = queue.pop();
+      final Op op = this.getOp(address);
+      final SubroutineSummary out = in.get(address).copy();
+
+      if(op.type == OpType.RETURN) {
+        result = result.join(out);
+        continue;
+      }
+
+      if(op.type == OpType.GOSUB || op.type == OpType.GOSUB_TABLE) {
+        out.then(this.getCallSummary(op));
+
+        if(!out.returns()) {
+          continue;
+        }
+      } else {
+        this.applyWrites(op, out);
+      }
+
+      for(final int successor : this.getSuccessors(op)) {
+        final SubroutineSummary existing = in.get(successor);
+        final SubroutineSummary merged = existing == null ? out : existing.join(out);
+
+        if(!merged.equals(existing)) {
+          in.put(successor, merged);
+          queue.push(successor);
+        }
+      }
+    }
+
+    return result;
+  }
+
+  private SubroutineSummary getCallSummary(final Op op) {
+    final List<Integer> targets = this.getCallTargets(op);
+
+    if(targets == null) {
+      return SubroutineSummary.unknown();
+    }
+
+    SubroutineSummary summary = SubroutineSummary.neverReturns();
+    for(final int target : targets) {
+      final SubroutineSummary callee = this.script.subSummaries.containsKey(target) ? this.script.subSummaries.get(target) : this.working.getOrDefault(target, SubroutineSummary.unknown());
+      summary = summary.join(callee);
+    }
+
+    return summary;
+  }
+
+  private void applyWrites(final Op op, final SubroutineSummary summary) {
+    // We don't know where a memcpy's pointers go
+    if(op.type == OpType.MEMCPY) {
+      summary.clobberAll();
+      return;
+    }
+
+    for(int i = 0; i < op.params.length; i++) {
+      // Engine calls may write to any of their params
+      if(op.type != OpType.CALL && !op.type.params[i].modifiesOutput()) {
+        continue;
+      }
+
+      final Param param = op.params[i];
+
+      switch(param.type) {
+        case STORAGE -> {
+          final int slot = param.rawValues[0] & 0xff;
+
+          if(op.type == OpType.MOV_0) {
+            summary.writeConstant(slot, 0);
+          } else if(op.type == OpType.MOV && this.getConstantSource(op.params[0], summary) instanceof final Integer value) {
+            summary.writeConstant(slot, value);
+          } else {
+            summary.write(slot);
+          }
+        }
+
+        // The script index is only known at runtime, so these may point back at our own stor
+        case OTHER_STORAGE, OTHER_STORAGE_OFFSET, OTHER_OTHER_STORAGE, STOR_INL -> summary.clobberAll();
+      }
+    }
+  }
+
+  /** Only immediates and values this subroutine set itself are safe to use, other resolved values depend on the caller */
+  private Integer getConstantSource(final Param param, final SubroutineSummary summary) {
+    return switch(param.type) {
+      case IMMEDIATE, NEXT_IMMEDIATE -> param.resolvedValue.get();
+      case STORAGE -> {
+        final var constant = summary.getConstant(param.rawValues[0] & 0xff);
+        yield constant.isPresent() ? constant.getAsInt() : null;
+      }
+      default -> null;
+    };
+  }
+
+  /** All ops reachable from the start of a subroutine without returning from it, or null if any of them are missing */
+  private List<Op> getSubOps(final int sub) {
+    final List<Op> ops = new ArrayList<>();
+    final Set<Integer> seen = new HashSet<>();
+    final Deque<Integer> queue = new ArrayDeque<>();
+    queue.add(sub);
+
+    while(!queue.isEmpty()) {
+      final int address = queue.pop();
+
+      if(seen.add(address)) {
+        final Op op = this.getOp(address);
+
+        if(op == null) {
+          return null;
+        }
+
+        final List<Integer> successors = this.getSuccessors(op);
+        if(successors == null) {
+          return null;
+        }
+
+        ops.add(op);
+        queue.addAll(successors);
+      }
+    }
+
+    return ops;
+  }
+
+  /** Ops that run next in the same subroutine, or null if they can't be known */
+  private List<Integer> getSuccessors(final Op op) {
+    final List<Integer> successors = new ArrayList<>();
+
+    switch(op.type) {
+      case REWIND, RETURN, DEALLOCATE, DEALLOCATE82, CONSUME -> { }
+      case JMP -> {
+        if(!op.params[0].resolvedValue.isPresent()) {
+          return null;
+        }
+
+        successors.add(op.params[0].resolvedValue.get());
+      }
+      case JMP_CMP, JMP_CMP_0, WHILE -> {
+        final Param dest = op.params[op.params.length - 1];
+
+        if(!dest.resolvedValue.isPresent()) {
+          return null;
+        }
+
+        successors.add(dest.resolvedValue.get());
+        successors.add(this.getNextAddress(op));
+      }
+      case JMP_TABLE -> {
+        final List<Integer> targets = this.getTableTargets(op);
+
+        if(targets == null) {
+          return null;
+        }
+
+        successors.addAll(targets);
+      }
+      default -> successors.add(this.getNextAddress(op));
+    }
+
+    return successors;
+  }
+
+  private List<Integer> getCallTargets(final Op op) {
+    if(op.type == OpType.GOSUB_TABLE) {
+      return this.getTableTargets(op);
+    }
+
+    if(!op.params[0].resolvedValue.isPresent()) {
+      return null;
+    }
+
+    return List.of(op.params[0].resolvedValue.get());
+  }
+
+  /** Reads the destinations of a jump or subroutine table the same way the disassembler laid it out */
+  private List<Integer> getTableTargets(final Op op) {
+    final Param param = op.params[1];
+
+    if(!param.resolvedValue.isPresent() || !(this.getEntry(param.resolvedValue.get()) instanceof final PointerTable table)) {
+      return null;
+    }
+
+    final List<Integer> targets = new ArrayList<>();
+    for(int i = 0; i < table.labels.length; i++) {
+      final int destination = table.address + this.state.wordAt(table.address + i * 0x4) * 0x4;
+
+      if(!param.type.isInlineTable()) {
+        targets.add(destination);
+        continue;
+      }
+
+      if(!(this.getEntry(destination) instanceof final PointerTable subtable)) {
+        return null;
+      }
+
+      for(int n = 0; n < subtable.labels.length; n++) {
+        targets.add(subtable.address + this.state.wordAt(subtable.address + n * 0x4) * 0x4);
+      }
+    }
+
+    return targets;
+  }
+
+  private int getNextAddress(final Op op) {
+    int words = 1;
+
+    for(final Param param : op.params) {
+      words += param.type.getWidth(param);
+    }
+
+    return op.address + words * 0x4;
+  }
+
+  private Entry getEntry(final int address) {
+    if(address < 0 || address / 0x4 >= this.script.entries.length) {
+      return null;
+    }
+
+    return this.script.entries[address / 0x4];
+  }
+
+  /** Gets a fully-parsed op, or null if there isn't one at this address yet */
+  private Op getOp(final int address) {
+    if(!(this.getEntry(address) instanceof final Op op) || op.address != address) {
+      return null;
+    }
+
+    for(final Param param : op.params) {
+      if(param == null) {
+        return null;
+      }
+    }
+
+    return op;
+  }
+}
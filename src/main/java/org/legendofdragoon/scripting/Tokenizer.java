@@ -41,6 +41,7 @@ public class Tokenizer {
   public static final Pattern LINE_PATTERN = Pattern.compile("^\\s*?(?:[a-f0-9]+\\s+)?([a-z]\\w*?)(?:\\s+(.+))?$", Pattern.CASE_INSENSITIVE);
   public static final Pattern NUMBER_PATTERN = Pattern.compile("^-?(?:" + NUMBER_SUBPATTERN + ")$", Pattern.CASE_INSENSITIVE);
   public static final Pattern LABEL_PATTERN = Pattern.compile("^(\\w+):$", Pattern.CASE_INSENSITIVE);
+  public static final Pattern LABEL_REF_PATTERN = Pattern.compile(":(\\w+)", Pattern.CASE_INSENSITIVE);
   public static final Pattern LABEL_PARAM_PATTERN = Pattern.compile("^:(\\w+)$", Pattern.CASE_INSENSITIVE);
   public static final Pattern CALL_PATTERN = Pattern.compile("^[a-z_]\\w*::[a-z_]\\w*$", Pattern.CASE_INSENSITIVE);
   public static final Pattern STRING_PATTERN = Pattern.compile("^str\\[(.*?)]$", Pattern.CASE_INSENSITIVE);
@@ -122,7 +123,8 @@ public class Tokenizer {
           if(includeFile.toString().endsWith(".fate")) {
             final List<String> errors = new ArrayList<>();
             final String labelPrefix = includeFile.getFileName().toString();
-            newLines.addAll(this.splitSource(this.compiler.compile(includePaths, Files.readString(includeFile), labelPrefix.substring(0, labelPrefix.length() - 5), errors)));
+            final Set<String> externalReferences = this.getExternalReferences(includePaths, lines, lineIndex, includedScripts);
+            newLines.addAll(this.splitSource(this.compiler.compile(includePaths, Files.readString(includeFile), labelPrefix.substring(0, labelPrefix.length() - 5), externalReferences, errors)));
 
             if(!errors.isEmpty()) {
               throw new IncludeFailedException("Failed to compile " + includeFile + ":\n" + String.join("\n", errors));
@@ -252,6 +254,60 @@ public class Tokenizer {
     return script;
   }
 
+  /**
+   * Finds every label referenced outside of the include on the given line so that the compiler can strip anything
+   * unused from it. Returns null if there are other compiled includes that haven't been expanded yet, since we can't
+   * know what those will reference.
+   */
+  private Set<String> getExternalReferences(final List<Path> includePaths, final List<String> lines, final int includeLineIndex, final Set<Path> includedScripts) throws IOException {
+    final Set<String> references = new HashSet<>();
+
+    for(int lineIndex = 0; lineIndex < lines.size(); lineIndex++) {
+      if(lineIndex == includeLineIndex) {
+        continue;
+      }
+
+      final String line = lines.get(lineIndex);
+      final Matcher includeMatcher = INCLUDE_PATTERN.matcher(line);
+
+      if(includeMatcher.matches()) {
+        final Path originalIncludeFile = Path.of(includeMatcher.group(1));
+
+        if(includedScripts.contains(originalIncludeFile)) {
+          continue;
+        }
+
+        final Path includeFile = Include.resolve(includePaths, originalIncludeFile);
+
+        if(includeFile.toString().endsWith(".fate")) {
+          return null;
+        }
+
+        for(final String includeLine : this.splitSource(Files.readString(includeFile))) {
+          if(INCLUDE_PATTERN.matcher(includeLine).matches()) {
+            return null;
+          }
+
+          this.addLabelReferences(includeLine, references);
+        }
+
+        continue;
+      }
+
+      this.addLabelReferences(line, references);
+    }
+
+    return references;
+  }
+
+  private void addLabelReferences(final String line, final Set<String> references) {
+    final Matcher matcher = LABEL_REF_PATTERN.matcher(line);
+
+    while(matcher.find()) {
+      references.add(matcher.group(1));
+    }
+  }
+
   private List<String> splitSource(final String source) {
     return source.lines().map(this::removeComment).map(String::strip).filter(Predicate.not(String::isBlank)).toList();
   }
@@ -353,18 +409,13 @@ public class Tokenizer {
   private Param parseParam(final int opAddress, final int address, final OpType opType, final int headerParam, final int paramIndex, String paramString) {
     // Convert call function refs to ints
     if(CALL_PATTERN.matcher(paramString).matches()) {
-      boolean found = false;
-      for(int i = 0; i < this.meta.methods.length; i++) {
-        if(this.meta.methods[i].name.equalsIgnoreCase(paramString)) {
-          paramString = Integer.toString(i);
-          found = true;
-          break;
-        }
-      }
+      final int methodIndex = this.meta.getMethodIndexIgnoreCase(paramString);
 
-      if(!found) {
+      if(methodIndex == -1) {
         throw new UnknownCallException("Unknown call " + paramString);
       }
+
+      paramString = Integer.toString(methodIndex);
     }
 
     // Immediates
@@ -399,15 +450,13 @@ public class Tokenizer {
     if(paramIndex != -1 && paramIndex < this.meta.methods[headerParam].params.length && opType == OpType.CALL) {
       final String enumClass = this.meta.methods[headerParam].params[paramIndex].type;
       if(this.meta.enums.containsKey(enumClass)) {
-        final String[] enumValues = this.meta.enums.get(enumClass);
+        final int ordinal = this.meta.getEnumOrdinalIgnoreCase(enumClass, paramString);
 
-        for(int i = 0; i < enumValues.length; i++) {
-          if(enumValues[i].equalsIgnoreCase(paramString)) {
-            return new Param(address, ParameterType.IMMEDIATE, new int[] { i }, ResolvedValue.of(i), null);
-          }
+        if(ordinal == -1) {
+          throw new RuntimeException("Unknown " + enumClass + " value " + paramString);
         }
 
-        throw new RuntimeException("Unknown " + enumClass + " value " + paramString);
+        return new Param(address, ParameterType.IMMEDIATE, new int[] { ordinal }, ResolvedValue.of(ordinal), null);
       }
     }
 
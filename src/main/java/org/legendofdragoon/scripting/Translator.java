@@ -31,7 +31,7 @@ public class Translator {
     final List<String> sortedLabels = script.labels.entrySet().stream()
       .sorted(Comparator.comparingInt(Map.Entry::getKey))
       .flatMap(e -> e.getValue().stream())
-      .filter(label -> label.startsWith("LABEL_"))
+      .filter(script.numberedLabels::contains)
       .toList();
 
     this.reindexedLabels.clear();
@@ -54,6 +54,10 @@ public class Translator {
           builder.append("\n; FORK JMP\n");
         }
 
+        if(script.speculativeBranches.containsKey(entry.address)) {
+          builder.append("\n; SPECULATIVE: not reachable from any known pointer (confidence ").append(script.speculativeBranches.get(entry.address)).append(")\n");
+        }
+
         if(script.warnings.containsKey(entry.address)) {
           builder.append("\n; WARNING: ").append(script.warnings.get(entry.address)).append('\n');
         }
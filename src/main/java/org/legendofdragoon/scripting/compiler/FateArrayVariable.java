@@ -1,5 +1,7 @@
 package org.legendofdragoon.scripting.compiler;
 
+import java.util.function.Consumer;
+
 public class FateArrayVariable extends FateValue {
   public final FateValue var;
   public final FateValue index;
@@ -9,6 +11,21 @@ public class FateArrayVariable extends FateValue {
     this.index = index;
   }
 
+  @Override
+  public int getWidth() {
+    if(this.var instanceof final FateVariable var && var.isRel) {
+      return 1;
+    }
+
+    return 2;
+  }
+
+  @Override
+  public void forEachVariable(final Consumer<FateVariable> consumer) {
+    this.var.forEachVariable(consumer);
+    this.index.forEachVariable(consumer);
+  }
+
   @Override
   public String toString() {
     if(this.var instanceof final FateVariable var && var.isRel) {
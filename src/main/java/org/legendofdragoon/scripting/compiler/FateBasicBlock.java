@@ -0,0 +1,55 @@
+package org.legendofdragoon.scripting.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** A run of ops in a function body that can only be entered at the first op and only left after the last one */
+public class FateBasicBlock {
+  /** Index of the first op in the function body */
+  public final int start;
+  /** Index one past the last op in the function body */
+  public final int end;
+  public final List<FateBasicBlock> successors = new ArrayList<>();
+  public final List<FateBasicBlock> predecessors = new ArrayList<>();
+
+  public FateBasicBlock(final int start, final int end) {
+    this.start = start;
+    this.end = end;
+  }
+
+  public boolean contains(final int index) {
+    return index >= this.start && index < this.end;
+  }
+
+  /** Splits a function body into blocks, in op order */
+  public static List<FateBasicBlock> build(final FateFlowGraph graph) {
+    final List<FateBasicBlock> blocks = new ArrayList<>();
+    final FateBasicBlock[] blockByOp = new FateBasicBlock[graph.size()];
+    int start = 0;
+
+    for(int i = 0; i < graph.size(); i++) {
+      final int[] successors = graph.getSuccessors(i);
+      final boolean endsBlock = i + 1 == graph.size() || graph.ops.get(i + 1) instanceof FateLabel || successors.length != 1 || successors[0] != i + 1;
+
+      if(endsBlock) {
+        final FateBasicBlock block = new FateBasicBlock(start, i + 1);
+
+        for(int n = start; n <= i; n++) {
+          blockByOp[n] = block;
+        }
+
+        blocks.add(block);
+        start = i + 1;
+      }
+    }
+
+    for(final FateBasicBlock block : blocks) {
+      for(final int successor : graph.getSuccessors(block.end - 1)) {
+        block.successors.add(blockByOp[successor]);
+        blockByOp[successor].predecessors.add(block);
+      }
+    }
+
+    return blocks;
+  }
+}
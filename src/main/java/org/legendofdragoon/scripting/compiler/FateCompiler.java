@@ -3,6 +3,8 @@ package org.legendofdragoon.scripting.compiler;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.tree.ParseTree;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.legendofdragoon.scripting.Include;
 import org.legendofdragoon.scripting.meta.Meta;
 
@@ -18,17 +20,34 @@ import java.util.Map;
 import java.util.Set;
 
 public class FateCompiler {
+  private static final Logger LOGGER = LogManager.getFormatterLogger(FateCompiler.class);
+
   public FateCompiler(final Meta meta) {
+    this(meta, new FateOptions());
+  }
+
+  public FateCompiler(final Meta meta, final FateOptions options) {
     this.meta = meta;
+    this.options = options;
   }
 
   private final Meta meta;
+  private final FateOptions options;
 
   public String compile(final List<Path> includePaths, final String source, final List<String> errors) {
     return this.compile(includePaths, source, "", errors);
   }
 
   public String compile(final List<Path> includePaths, final String source, final String labelPrefix, final List<String> errors) {
+    return this.compile(includePaths, source, labelPrefix, null, errors);
+  }
+
+  /**
+   * @param externalReferences Labels referenced by the script including this one. Functions and globals that aren't
+   *                           reachable from these or from an entrypoint are stripped. Pass null to keep everything
+   *                           in scripts without entrypoints.
+   */
+  public String compile(final List<Path> includePaths, final String source, final String labelPrefix, final Set<String> externalReferences, final List<String> errors) {
     final ParseTree tree = this.parse(source);
 
     // Preprocess to find functions
@@ -41,9 +60,43 @@ public class FateCompiler {
     this.getFunctionsFromIncludes(includePaths, errors, includes, processedIncludes, functions);
 
     final FateContext fate = new FateContext();
-    final FateCompilerVisitor visitor = new FateCompilerVisitor(this.meta, fate, errors, functions);
+    final FateCompilerVisitor visitor = new FateCompilerVisitor(this.meta, this.options, fate, errors, functions, preprocessor.getWrittenVariables());
     visitor.visit(tree);
 
+    new FateJumpOptimizer().optimize(fate);
+
+    if(this.options.optimize) {
+      final FateExpressionOptimizer expressionOptimizer = new FateExpressionOptimizer();
+      expressionOptimizer.optimize(fate);
+
+      if(expressionOptimizer.getEliminatedCount() != 0 || expressionOptimizer.getHoistedCount() != 0) {
+        LOGGER.info("Reused %d repeated expressions and moved %d out of loops", expressionOptimizer.getEliminatedCount(), expressionOptimizer.getHoistedCount());
+      }
+    }
+
+    final int originalSize = fate.getSize();
+    final List<String> stripped = new FateDeadCodeEliminator().eliminate(fate, externalReferences);
+
+    if(!stripped.isEmpty()) {
+      LOGGER.info("Stripped %d unreferenced functions and globals, reducing script size from %d to %d words", stripped.size(), originalSize, fate.getSize());
+    }
+
+    final int unallocatedSize = fate.getSize();
+    new FateTempAllocator().allocate(fate);
+
+    if(fate.getSize() != unallocatedSize) {
+      LOGGER.info("Reusing temporaries reduced script size from %d to %d words", unallocatedSize, fate.getSize());
+    }
+
+    if(this.options.registerBase != -1) {
+      final int inlineSize = fate.getSize();
+      final int moved = new FateStorAllocator(fate).allocate(this.options.registerBase, this.options.registerCount);
+
+      if(moved != 0) {
+        LOGGER.info("Moved %d variables into stor slots, reducing script size from %d to %d words", moved, inlineSize, fate.getSize());
+      }
+    }
+
     fate.updateVariableNames();
     fate.updateLabelNames(labelPrefix);
     return fate.compile();
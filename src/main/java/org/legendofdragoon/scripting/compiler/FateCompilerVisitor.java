@@ -2,27 +2,46 @@ package org.legendofdragoon.scripting.compiler;
 
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.tree.AbstractParseTreeVisitor;
+import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.TerminalNode;
 import org.legendofdragoon.scripting.OpType;
 import org.legendofdragoon.scripting.meta.Meta;
 
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.TreeMap;
 
 public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> implements FateParserVisitor<FateValue> {
   private final List<String> errors;
   private final Map<String, FateFunctionDefinition> functions;
+  private final Set<String> writtenVariables;
 
   private final Meta meta;
+  private final FateOptions options;
   private final FateContext fate;
   private int exprVarIndex;
 
-  public FateCompilerVisitor(final Meta meta, final FateContext fate, final List<String> errors, final Map<String, FateFunctionDefinition> functions) {
+  /** Functions defined in this script, as opposed to included ones, which are the only ones that can be inlined */
+  private final Set<String> localFunctions = new HashSet<>();
+  private final Deque<FateInline> inlineStack = new LinkedList<>();
+  private int inlineIndex;
+  /** Stor slots used by function calling conventions, mapped to the function that uses them */
+  private final Map<Integer, String> reservedStors = new HashMap<>();
+
+  public FateCompilerVisitor(final Meta meta, final FateOptions options, final FateContext fate, final List<String> errors, final Map<String, FateFunctionDefinition> functions, final Set<String> writtenVariables) {
     this.meta = meta;
+    this.options = options;
     this.fate = fate;
     this.errors = errors;
     this.functions = functions;
+    this.writtenVariables = writtenVariables;
   }
 
   private FateValue getVar(final ParserRuleContext ctx, final TerminalNode identifier) {
@@ -39,7 +58,10 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
   private FateVariable getExprVar() {
     final String var = "_expr_" + this.exprVarIndex;
     this.exprVarIndex++;
-    return this.fate.addVariable(var);
+
+    final FateVariable out = this.fate.addVariable(var);
+    out.isTemp = true;
+    return out;
   }
 
   @Override
@@ -52,6 +74,24 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
       this.fate.addVariable(function);
     }
 
+    for(final FateParser.FunctionContext function : ctx.function()) {
+      this.localFunctions.add(function.IDENTIFIER().getText());
+    }
+
+    for(final FateFunctionDefinition def : this.functions.values()) {
+      final FateStorConvention convention = this.getStorConvention(def);
+
+      if(convention != null) {
+        for(int i = 0; i < convention.count; i++) {
+          this.reservedStors.putIfAbsent(convention.base + i, def.name);
+        }
+
+        if(convention.base <= 62 && convention.base + convention.count > 62) {
+          this.errors.add(def.ctx.getStart().getLine() + ": function \"" + def.name + "\" can't pass values through stor[62], it's used for string array lookups");
+        }
+      }
+    }
+
     return this.visitChildren(ctx);
   }
 
@@ -79,8 +119,25 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
       this.fate.getCurrentFunction().addParam(param);
     }
 
+    final FateStorConvention convention = this.getStorConvention(this.functions.get(name));
+
     for(int i = ctx.identifier_list().IDENTIFIER().size() - 1; i >= 0; i--) {
-      this.fate.addOp(new FateOp(OpType.POP, this.fate.getCurrentFunction().getParam(i)));
+      if(convention == null || !convention.usesSlot(i)) {
+        this.fate.addOp(new FateOp(OpType.POP, this.fate.getCurrentFunction().getParam(i)));
+      }
+    }
+
+    if(convention != null) {
+      // Functions that don't call anything can use their params straight from the slots since nothing will overwrite them
+      final boolean leaf = !this.containsFunctionCall(ctx.block());
+
+      for(int i = 0; i < ctx.identifier_list().IDENTIFIER().size() && convention.usesSlot(i); i++) {
+        if(leaf) {
+          this.fate.getCurrentFunction().getParam(i).storSlot = convention.base + i;
+        } else {
+          this.fate.addOp(new FateOp(OpType.MOV, convention.getSlot(i), this.fate.getCurrentFunction().getParam(i)));
+        }
+      }
     }
 
     this.visitBlock(ctx.block());
@@ -108,10 +165,8 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
 
   @Override
   public FateValue visitIf_(final FateParser.If_Context ctx) {
-    final FateValue expr = this.visitExpression(ctx.expression());
-
     final FateLabel label = this.fate.getLabel();
-    this.fate.addOp(new FateOp(OpType.JMP_CMP, new FateImmediate("=="), new FateImmediate("0"), expr, new FateLabelRef(label)));
+    this.emitBranch(ctx.expression(), label, false);
     this.visitBlock(ctx.block().getFirst());
 
     // if there's an else, we need to jump over it at the end of the if block
@@ -142,17 +197,19 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
 
   @Override
   public FateValue visitWhile_(final FateParser.While_Context ctx) {
-    final FateLabel label1 = this.fate.getLabel();
-    final FateLabel label2 = this.fate.getLabel();
+    final FateLabel bodyLabel = this.fate.getLabel();
+    final FateLabel conditionLabel = this.fate.getLabel();
+    final FateLabel endLabel = this.fate.getLabel();
 
-    this.fate.pushLoop(label1, label2);
+    this.fate.pushLoop(conditionLabel, endLabel);
 
-    this.fate.addOp(label1);
-    final FateValue expr = this.visitExpression(ctx.expression());
-    this.fate.addOp(new FateOp(OpType.JMP_CMP, new FateImmediate("=="), new FateImmediate("0"), expr, new FateLabelRef(label2)));
+    // The condition goes at the bottom so that each iteration only executes a single branch
+    this.fate.addOp(new FateOp(OpType.JMP, new FateLabelRef(conditionLabel)));
+    this.fate.addOp(bodyLabel);
     this.visitBlock(ctx.block());
-    this.fate.addOp(new FateOp(OpType.JMP, new FateLabelRef(label1)));
-    this.fate.addOp(label2);
+    this.fate.addOp(conditionLabel);
+    this.emitBranch(ctx.expression(), bodyLabel, true);
+    this.fate.addOp(endLabel);
 
     this.fate.popLoop();
 
@@ -161,18 +218,475 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
 
   @Override
   public FateValue visitDo_while(final FateParser.Do_whileContext ctx) {
-    final FateLabel label1 = this.fate.getLabel();
-    final FateLabel label2 = this.fate.getLabel();
+    final FateLabel bodyLabel = this.fate.getLabel();
+    final FateLabel conditionLabel = this.fate.getLabel();
+    final FateLabel endLabel = this.fate.getLabel();
 
-    this.fate.pushLoop(label1, label2);
+    this.fate.pushLoop(conditionLabel, endLabel);
 
-    this.fate.addOp(label1);
+    this.fate.addOp(bodyLabel);
     this.visitBlock(ctx.block());
-    final FateValue expr = this.visitExpression(ctx.expression());
-    this.fate.addOp(new FateOp(OpType.JMP_CMP, new FateImmediate("!="), new FateImmediate("0"), expr, new FateLabelRef(label2)));
-    this.fate.addOp(label2);
+    this.fate.addOp(conditionLabel);
+    this.emitBranch(ctx.expression(), bodyLabel, true);
+    this.fate.addOp(endLabel);
+
+    this.fate.popLoop();
+
+    return null;
+  }
+
+  @Override
+  public FateValue visitRepeat(final FateParser.RepeatContext ctx) {
+    final FateValue count = this.visitExpression(ctx.expression());
+    final OptionalInt constantCount = this.fate.getConstant(count);
+
+    if(constantCount.isPresent() && constantCount.getAsInt() <= 0) {
+      return null;
+    }
+
+    final FateLabel endLabel = this.fate.getLabel();
+    final FateVariable counter = this.getExprVar();
+    this.fate.addOp(new FateOp(OpType.MOV, count, counter));
+
+    // WHILE decrements before checking, so a count of 0 would wrap around
+    if(constantCount.isEmpty()) {
+      this.fate.addOp(new FateOp(OpType.JMP_CMP, new FateImmediate("<="), counter, new FateImmediate(0), new FateLabelRef(endLabel)));
+    }
+
+    this.emitCountedLoop(counter, ctx.block(), null, endLabel);
+    return null;
+  }
+
+  @Override
+  public FateValue visitFor_(final FateParser.For_Context ctx) {
+    this.fate.pushScope();
+
+    if(ctx.for_init() != null) {
+      this.visitChildren(ctx.for_init());
+    }
+
+    final OptionalInt tripCount = this.getTripCount(ctx);
+
+    if(tripCount.isPresent()) {
+      if(tripCount.getAsInt() > 0) {
+        // The loop variable doesn't need to be kept up to date if nothing can see it
+        final String var = this.getLoopVariable(ctx);
+        final boolean varObservable = ctx.for_init().declaration() == null || this.referencesVariable(ctx.block(), var);
+
+        final FateLabel endLabel = this.fate.getLabel();
+        final FateVariable counter = this.getExprVar();
+        this.fate.addOp(new FateOp(OpType.MOV, new FateImmediate(tripCount.getAsInt()), counter));
+        this.emitCountedLoop(counter, ctx.block(), varObservable ? ctx.for_step() : null, endLabel);
+      }
+    } else {
+      final FateLabel bodyLabel = this.fate.getLabel();
+      final FateLabel continueLabel = this.fate.getLabel();
+      final FateLabel conditionLabel = this.fate.getLabel();
+      final FateLabel endLabel = this.fate.getLabel();
+
+      this.fate.pushLoop(continueLabel, endLabel);
+
+      this.fate.addOp(new FateOp(OpType.JMP, new FateLabelRef(conditionLabel)));
+      this.fate.addOp(bodyLabel);
+      this.visitBlock(ctx.block());
+      this.fate.addOp(continueLabel);
+
+      if(ctx.for_step() != null) {
+        this.visitChildren(ctx.for_step());
+      }
+
+      this.fate.addOp(conditionLabel);
+
+      if(ctx.expression() != null) {
+        this.emitBranch(ctx.expression(), bodyLabel, true);
+      } else {
+        this.fate.addOp(new FateOp(OpType.JMP, new FateLabelRef(bodyLabel)));
+      }
+
+      this.fate.addOp(endLabel);
+
+      this.fate.popLoop();
+    }
+
+    this.fate.popScope();
+    return null;
+  }
+
+  /** Loops using the native decrement-and-branch op, which must only be used when the counter is at least 1 */
+  private void emitCountedLoop(final FateVariable counter, final FateParser.BlockContext block, final FateParser.For_stepContext step, final FateLabel endLabel) {
+    final FateLabel bodyLabel = this.fate.getLabel();
+    final FateLabel continueLabel = this.fate.getLabel();
+
+    this.fate.pushLoop(continueLabel, endLabel);
+
+    this.fate.addOp(bodyLabel);
+    this.visitBlock(block);
+    this.fate.addOp(continueLabel);
+
+    if(step != null) {
+      this.visitChildren(step);
+    }
+
+    this.fate.addOp(new FateOp(OpType.WHILE, counter, new FateLabelRef(bodyLabel)));
+    this.fate.addOp(endLabel);
+
+    this.fate.popLoop();
+  }
+
+  /**
+   * Gets the number of iterations of a for loop if it's a simple counter, i.e. {@code for(var i = 0; i < 10; i++)},
+   * where the bounds are known at compile time and the loop variable isn't written in the body
+   */
+  private OptionalInt getTripCount(final FateParser.For_Context ctx) {
+    final String var = this.getLoopVariable(ctx);
+
+    if(var == null || ctx.expression() == null || ctx.for_step() == null || this.getWrittenVariables(ctx.block()).contains(var)) {
+      return OptionalInt.empty();
+    }
+
+    // Step must be +1 or -1
+    final int step;
+    if(ctx.for_step().postfix() != null && this.isVariable(ctx.for_step().postfix().assignable(), var)) {
+      step = ctx.for_step().postfix().postfix_op().INCR() != null ? 1 : -1;
+    } else if(ctx.for_step().augmented_assignment() != null && this.isVariable(ctx.for_step().augmented_assignment().assignable(), var) && "1".equals(ctx.for_step().augmented_assignment().expression().getText())) {
+      if(ctx.for_step().augmented_assignment().augmented_assignment_op().ADD_ASSIGN() != null) {
+        step = 1;
+      } else if(ctx.for_step().augmented_assignment().augmented_assignment_op().SUB_ASSIGN() != null) {
+        step = -1;
+      } else {
+        return OptionalInt.empty();
+      }
+    } else {
+      return OptionalInt.empty();
+    }
+
+    // Condition must compare the loop variable against a bound that can't change during the loop
+    final FateParser.ExpressionContext condition = ctx.expression();
+    final String operator = this.getBranchOperator(condition);
+
+    if(operator == null || "&".equals(operator) || !this.isVariable(condition.expression(0), var)) {
+      return OptionalInt.empty();
+    }
+
+    final FateParser.ExpressionContext boundCtx = condition.expression(1);
+    final OptionalInt bound;
+    if(boundCtx.value() != null && boundCtx.value().NUMBER() != null) {
+      bound = new FateImmediate(boundCtx.value().NUMBER().getText()).constantValue();
+    } else if(this.isVariable(boundCtx, null) && this.fate.isVariableInScope(boundCtx.getText()) && !this.getWrittenVariables(ctx.block()).contains(boundCtx.getText())) {
+      bound = this.fate.getConstant(this.fate.getVariable(boundCtx.getText()));
+    } else {
+      return OptionalInt.empty();
+    }
+
+    // An undeclared loop variable is reported when the init is compiled
+    if(!this.fate.isVariableInScope(var)) {
+      return OptionalInt.empty();
+    }
+
+    final OptionalInt start = this.fate.getConstant(this.fate.getVariable(var));
+
+    if(bound.isEmpty() || start.isEmpty()) {
+      return OptionalInt.empty();
+    }
+
+    // The variable has to move towards the bound
+    final boolean counting = switch(operator) {
+      case "<", "<=" -> step == 1;
+      case ">", ">=" -> step == -1;
+      case "!=" -> true;
+      default -> false;
+    };
+
+    if(!counting) {
+      return OptionalInt.empty();
+    }
+
+    final long distance = step == 1 ? (long)bound.getAsInt() - start.getAsInt() : (long)start.getAsInt() - bound.getAsInt();
+    final long count = "<=".equals(operator) || ">=".equals(operator) ? distance + 1 : distance;
+
+    // Loops that wrap around aren't simple counters
+    if("!=".equals(operator) && count < 0 || count > Integer.MAX_VALUE) {
+      return OptionalInt.empty();
+    }
+
+    return OptionalInt.of((int)Math.max(count, 0));
+  }
+
+  private String getLoopVariable(final FateParser.For_Context ctx) {
+    if(ctx.for_init() == null) {
+      return null;
+    }
+
+    if(ctx.for_init().declaration() != null && ctx.for_init().declaration().IDENTIFIER() != null && ctx.for_init().declaration().expression() != null) {
+      return ctx.for_init().declaration().IDENTIFIER().getText();
+    }
+
+    if(ctx.for_init().assignment() != null && ctx.for_init().assignment().assignable() != null && ctx.for_init().assignment().assignable().IDENTIFIER() != null && ctx.for_init().assignment().expression() != null) {
+      return ctx.for_init().assignment().assignable().IDENTIFIER().getText();
+    }
+
+    return null;
+  }
+
+  /** Whether an assignable or expression is a plain variable with the given name (or any name if null) */
+  private boolean isVariable(final ParserRuleContext ctx, final String name) {
+    FateParser.AssignableContext assignable = null;
+
+    if(ctx instanceof final FateParser.AssignableContext a) {
+      assignable = a;
+    } else if(ctx instanceof final FateParser.ExpressionContext expression && expression.value() != null) {
+      assignable = expression.value().assignable();
+    }
+
+    return assignable != null && assignable.IDENTIFIER() != null && (name == null || assignable.IDENTIFIER().getText().equals(name));
+  }
+
+  private Set<String> getWrittenVariables(final ParseTree tree) {
+    final FatePreprocessor preprocessor = new FatePreprocessor(new ArrayList<>(), new ArrayList<>(), new HashMap<>());
+    preprocessor.visit(tree);
+    return preprocessor.getWrittenVariables();
+  }
+
+  private boolean referencesVariable(final ParseTree tree, final String name) {
+    if(tree instanceof final TerminalNode terminal) {
+      return terminal.getSymbol().getType() == FateLexer.IDENTIFIER && terminal.getText().equals(name);
+    }
+
+    for(int i = 0; i < tree.getChildCount(); i++) {
+      if(this.referencesVariable(tree.getChild(i), name)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  @Override
+  public FateValue visitFor_init(final FateParser.For_initContext ctx) {
+    return this.visitChildren(ctx);
+  }
+
+  @Override
+  public FateValue visitFor_step(final FateParser.For_stepContext ctx) {
+    return this.visitChildren(ctx);
+  }
+
+  @Override
+  public FateValue visitSwitch_(final FateParser.Switch_Context ctx) {
+    final FateValue value = this.visitExpression(ctx.expression());
+    final FateLabel endLabel = this.fate.getLabel();
+    final FateLabel defaultLabel = ctx.default_() != null ? this.fate.getLabel() : endLabel;
+
+    // Map each case value to the label of its block
+    final List<FateLabel> caseLabels = new ArrayList<>();
+    final TreeMap<Integer, FateLabel> cases = new TreeMap<>();
+
+    for(final FateParser.Case_Context caseCtx : ctx.case_()) {
+      final FateLabel caseLabel = this.fate.getLabel();
+      caseLabels.add(caseLabel);
+
+      for(final FateParser.ExpressionContext caseValueCtx : caseCtx.expression()) {
+        final OptionalInt caseValue = this.fate.getConstant(this.visitExpression(caseValueCtx));
+
+        if(caseValue.isEmpty()) {
+          this.errors.add(caseValueCtx.getStart().getLine() + ": case values must be constant");
+        } else if(cases.putIfAbsent(caseValue.getAsInt(), caseLabel) != null) {
+          this.errors.add(caseValueCtx.getStart().getLine() + ": duplicate case " + caseValue.getAsInt());
+        }
+      }
+    }
+
+    final OptionalInt constantValue = this.fate.getConstant(value);
+
+    if(constantValue.isPresent()) {
+      this.fate.addOp(new FateOp(OpType.JMP, new FateLabelRef(cases.getOrDefault(constantValue.getAsInt(), defaultLabel))));
+    } else if(this.isDenseSwitch(cases)) {
+      this.emitJumpTable(value, cases, defaultLabel);
+    } else {
+      this.emitCompareTree(value, new ArrayList<>(cases.entrySet()), defaultLabel);
+    }
+
+    // break exits the switch, continue still applies to the enclosing loop (if any)
+    final FateLoop enclosingLoop = this.fate.getCurrentLoop();
+    this.fate.pushLoop(enclosingLoop != null ? enclosingLoop.startLabel : null, endLabel);
+
+    // Cases don't fall through
+    for(int i = 0; i < ctx.case_().size(); i++) {
+      this.fate.addOp(caseLabels.get(i));
+      this.visitBlock(ctx.case_(i).block());
+      this.fate.addOp(new FateOp(OpType.JMP, new FateLabelRef(endLabel)));
+    }
+
+    if(ctx.default_() != null) {
+      this.fate.addOp(defaultLabel);
+      this.visitBlock(ctx.default_().block());
+    }
 
     this.fate.popLoop();
+    this.fate.addOp(endLabel);
+    return null;
+  }
+
+  /** Jump tables take a bounds check and a word per value in the range, so they're only worth it for larger, mostly-filled ranges */
+  private boolean isDenseSwitch(final TreeMap<Integer, FateLabel> cases) {
+    if(cases.size() < 4) {
+      return false;
+    }
+
+    final long range = (long)cases.lastKey() - cases.firstKey() + 1;
+    return range <= cases.size() * 2L;
+  }
+
+  private void emitJumpTable(final FateValue value, final TreeMap<Integer, FateLabel> cases, final FateLabel defaultLabel) {
+    final int min = cases.firstKey();
+    final int range = cases.lastKey() - min + 1;
+
+    // Tables are indexed from 0
+    FateValue index = value;
+    if(min != 0) {
+      final FateVariable offset = this.getExprVar();
+      this.fate.addOp(new FateOp(OpType.MOV, value, offset));
+      this.fate.addOp(new FateOp(OpType.SUB, new FateImmediate(min), offset));
+      index = offset;
+    }
+
+    this.fate.addOp(new FateOp(OpType.JMP_CMP, new FateImmediate("<"), index, new FateImmediate(0), new FateLabelRef(defaultLabel)));
+    this.fate.addOp(new FateOp(OpType.JMP_CMP, new FateImmediate(">="), index, new FateImmediate(range), new FateLabelRef(defaultLabel)));
+
+    final FateLabel tableLabel = this.fate.getLabel();
+    final FateLabelRef[] targets = new FateLabelRef[range];
+
+    for(int i = 0; i < range; i++) {
+      targets[i] = new FateLabelRef(cases.getOrDefault(min + i, defaultLabel));
+    }
+
+    this.fate.addOp(new FateOp(OpType.JMP_TABLE, index, new FateLabelRef(tableLabel)));
+    this.fate.addOp(tableLabel);
+    this.fate.addOp(new FateJumpTable(targets));
+  }
+
+  /** Binary search over the sorted case values, finishing with a linear scan once only a few are left */
+  private void emitCompareTree(final FateValue value, final List<Map.Entry<Integer, FateLabel>> cases, final FateLabel defaultLabel) {
+    if(cases.size() <= 3) {
+      for(final Map.Entry<Integer, FateLabel> entry : cases) {
+        this.fate.addOp(new FateOp(OpType.JMP_CMP, new FateImmediate("=="), value, new FateImmediate(entry.getKey()), new FateLabelRef(entry.getValue())));
+      }
+
+      this.fate.addOp(new FateOp(OpType.JMP, new FateLabelRef(defaultLabel)));
+      return;
+    }
+
+    final int mid = cases.size() / 2;
+    final FateLabel upperLabel = this.fate.getLabel();
+
+    this.fate.addOp(new FateOp(OpType.JMP_CMP, new FateImmediate(">="), value, new FateImmediate(cases.get(mid).getKey()), new FateLabelRef(upperLabel)));
+    this.emitCompareTree(value, cases.subList(0, mid), defaultLabel);
+    this.fate.addOp(upperLabel);
+    this.emitCompareTree(value, cases.subList(mid, cases.size()), defaultLabel);
+  }
+
+  @Override
+  public FateValue visitCase_(final FateParser.Case_Context ctx) {
+    return null;
+  }
+
+  @Override
+  public FateValue visitDefault_(final FateParser.Default_Context ctx) {
+    return null;
+  }
+
+  /**
+   * Jumps to a label if a condition evaluates to the given truthiness. Comparisons are lowered straight to a
+   * JMP_CMP and logical operators short-circuit, so conditions are only stored in temporaries when they have to be.
+   */
+  private void emitBranch(FateParser.ExpressionContext ctx, final FateLabel label, final boolean jumpIfTrue) {
+    while(ctx.LPAREN() != null) {
+      ctx = ctx.expression(0);
+    }
+
+    if(ctx.NOTC() != null) {
+      this.emitBranch(ctx.expression(0), label, !jumpIfTrue);
+      return;
+    }
+
+    // a && b is false as soon as a is false, a || b is true as soon as a is true
+    if(ctx.ANDC() != null || ctx.ORC() != null) {
+      final boolean shortCircuitsOn = ctx.ORC() != null;
+
+      if(jumpIfTrue == shortCircuitsOn) {
+        this.emitBranch(ctx.expression(0), label, jumpIfTrue);
+        this.emitBranch(ctx.expression(1), label, jumpIfTrue);
+      } else {
+        final FateLabel skipLabel = this.fate.getLabel();
+        this.emitBranch(ctx.expression(0), skipLabel, shortCircuitsOn);
+        this.emitBranch(ctx.expression(1), label, jumpIfTrue);
+        this.fate.addOp(skipLabel);
+      }
+
+      return;
+    }
+
+    final String operator = this.getBranchOperator(ctx);
+
+    if(operator != null) {
+      final FateValue a = this.visitExpression(ctx.expression(0));
+      final FateValue b = this.visitExpression(ctx.expression(1));
+      final OptionalInt left = this.fate.getConstant(a);
+      final OptionalInt right = this.fate.getConstant(b);
+
+      if(left.isPresent() && right.isPresent()) {
+        this.emitConstantBranch(FateConstants.compare(operator, left.getAsInt(), right.getAsInt()).orElseThrow() != 0, label, jumpIfTrue);
+        return;
+      }
+
+      this.fate.addOp(new FateOp(OpType.JMP_CMP, new FateImmediate(jumpIfTrue ? operator : FateConstants.invertOperator(operator)), this.fold(a), this.fold(b), new FateLabelRef(label)));
+      return;
+    }
+
+    final FateValue expr = this.visitExpression(ctx);
+    final OptionalInt value = this.fate.getConstant(expr);
+
+    if(value.isPresent()) {
+      this.emitConstantBranch(value.getAsInt() != 0, label, jumpIfTrue);
+      return;
+    }
+
+    this.fate.addOp(new FateOp(OpType.JMP_CMP, new FateImmediate(jumpIfTrue ? "!=" : "=="), new FateImmediate("0"), expr, new FateLabelRef(label)));
+  }
+
+  private void emitConstantBranch(final boolean condition, final FateLabel label, final boolean jumpIfTrue) {
+    if(condition == jumpIfTrue) {
+      this.fate.addOp(new FateOp(OpType.JMP, new FateLabelRef(label)));
+    }
+  }
+
+  /** Gets the JMP_CMP operator for a binary expression that can be branched on directly */
+  private String getBranchOperator(final FateParser.ExpressionContext ctx) {
+    if(ctx.relational_op() != null) {
+      if(ctx.relational_op().GT() != null) {
+        return ">";
+      }
+
+      if(ctx.relational_op().LT() != null) {
+        return "<";
+      }
+
+      if(ctx.relational_op().GTE() != null) {
+        return ">=";
+      }
+
+      if(ctx.relational_op().LTE() != null) {
+        return "<=";
+      }
+    }
+
+    if(ctx.equality_op() != null) {
+      return ctx.equality_op().EQ() != null ? "==" : "!=";
+    }
+
+    if(ctx.ANDA() != null) {
+      return "&";
+    }
 
     return null;
   }
@@ -182,6 +696,11 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
     return this.visitChildren(ctx);
   }
 
+  @Override
+  public FateValue visitAttribute(final FateParser.AttributeContext ctx) {
+    return null;
+  }
+
   @Override
   public FateValue visitBlock(final FateParser.BlockContext ctx) {
     this.fate.pushScope();
@@ -195,7 +714,7 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
     if(ctx.CONTINUE() != null) {
       final FateLoop loop = this.fate.getCurrentLoop();
 
-      if(loop == null) {
+      if(loop == null || loop.startLabel == null) {
         this.errors.add(ctx.getStart().getLine() + ": continue is only valid inside of loop");
         return null;
       }
@@ -208,7 +727,7 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
       final FateLoop loop = this.fate.getCurrentLoop();
 
       if(loop == null) {
-        this.errors.add(ctx.getStart().getLine() + ": break is only valid inside of loop");
+        this.errors.add(ctx.getStart().getLine() + ": break is only valid inside of loop or switch");
         return null;
       }
 
@@ -384,6 +903,12 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
 
     if(ctx.NUMBER() != null) {
       this.fate.addOp(new FateGlobal("data", var.name, ctx.NUMBER().getText()));
+
+      // Globals that are never written to are constants
+      final OptionalInt value = new FateImmediate(ctx.NUMBER().getText()).constantValue();
+      if(value.isPresent() && !this.writtenVariables.contains(var.name)) {
+        this.fate.addConstant(var, value.getAsInt());
+      }
     } else if(ctx.const_array_initializer() != null) {
       if(!ctx.const_array_initializer().NUMBER().isEmpty()) {
         final String[] values = ctx.const_array_initializer().NUMBER().stream().map(TerminalNode::getText).toArray(String[]::new);
@@ -438,7 +963,11 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
           continue;
         }
 
-        params[i] = this.visitExpression(ctx.expression_or_string_list().expression_or_string(i).expression());
+        if(i < opType.params.length && opType.params[i].modifiesOutput()) {
+          params[i] = this.visitDestination(ctx.expression_or_string_list().expression_or_string(i).expression());
+        } else {
+          params[i] = this.visitExpression(ctx.expression_or_string_list().expression_or_string(i).expression());
+        }
       }
 
       if(opType == OpType.WAIT) {
@@ -457,15 +986,8 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
     if(ctx.SCOPE() != null) {
       name += "::" + ctx.IDENTIFIER(1);
 
-      Meta.ScriptMethod def = null;
-      int methodIndex;
-
-      for(methodIndex = 0; methodIndex < this.meta.methods.length; methodIndex++) {
-        if(this.meta.methods[methodIndex].name.equals(name)) {
-          def = this.meta.methods[methodIndex];
-          break;
-        }
-      }
+      final int methodIndex = this.meta.getMethodIndex(name);
+      final Meta.ScriptMethod def = methodIndex != -1 ? this.meta.methods[methodIndex] : null;
 
       if(def == null) {
         this.errors.add(ctx.getStart().getLine() + ": unknown engine call " + name);
@@ -483,7 +1005,12 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
         final FateParser.Expression_or_stringContext expressionOrString = ctx.expression_or_string_list().expression_or_string(i);
 
         if(expressionOrString.expression() != null) {
-          params[i + 1] = this.visitExpression(expressionOrString.expression());
+          // The engine may write to any param that isn't explicitly an input
+          if(i < def.params.length && def.params[i].isInput) {
+            params[i + 1] = this.visitExpression(expressionOrString.expression());
+          } else {
+            params[i + 1] = this.visitDestination(expressionOrString.expression());
+          }
         } else if(expressionOrString.STRING() != null) {
           final String string = expressionOrString.STRING().getText();
           final FateVariable stringVar = this.getExprVar();
@@ -505,13 +1032,22 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
     if(def != null) {
       if(ctx.expression_or_string_list() == null && !def.params.isEmpty() || ctx.expression_or_string_list().expression_or_string().size() != def.params.size()) {
         this.errors.add(ctx.getStart().getLine() + ": expected " + def.params.size() + " params, got " + ctx.expression_or_string_list().expression_or_string().size());
+      } else if(this.shouldInline(def)) {
+        this.inlineCall(ctx, def);
+        return null;
       }
     } else {
       this.errors.add(ctx.getStart().getLine() + ": unknown function " + name);
     }
 
     // Push params
-    for(final FateParser.Expression_or_stringContext exprCtx : ctx.expression_or_string_list().expression_or_string()) {
+    final FateStorConvention convention = def != null ? this.getStorConvention(def) : null;
+    final List<FateParser.Expression_or_stringContext> args = ctx.expression_or_string_list().expression_or_string();
+    final Map<Integer, FateValue> stagedArgs = new HashMap<>();
+
+    for(int i = 0; i < args.size(); i++) {
+      final FateParser.Expression_or_stringContext exprCtx = args.get(i);
+
       if(exprCtx.STRING() != null) {
         this.errors.add(ctx.getStart().getLine() + ": strings cannot be passed as parameters");
         this.fate.addOp(new FateOp(OpType.PUSH, new FateImmediate("INVALID")));
@@ -519,7 +1055,23 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
       }
 
       final FateValue value = this.visitExpression(exprCtx.expression());
-      this.fate.addOp(new FateOp(OpType.PUSH, value));
+
+      if(convention != null && convention.usesSlot(i)) {
+        // Calls in later args may use the same slots, so hold on to the value until they're done
+        if(args.subList(i + 1, args.size()).stream().anyMatch(this::containsFunctionCall)) {
+          final FateVariable staged = this.getExprVar();
+          this.fate.addOp(new FateOp(OpType.MOV, value, staged));
+          stagedArgs.put(i, staged);
+        } else {
+          this.fate.addOp(new FateOp(OpType.MOV, value, convention.getSlot(i)));
+        }
+      } else {
+        this.fate.addOp(new FateOp(OpType.PUSH, value));
+      }
+    }
+
+    for(final Map.Entry<Integer, FateValue> staged : stagedArgs.entrySet()) {
+      this.fate.addOp(new FateOp(OpType.MOV, staged.getValue(), convention.getSlot(staged.getKey())));
     }
 
     final FateFunctionRef ret = new FateFunctionRef(name);
@@ -527,6 +1079,150 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
     return ret;
   }
 
+  private FateStorConvention getStorConvention(final FateFunctionDefinition def) {
+    if(def == null) {
+      return null;
+    }
+
+    final FateParser.AttributeContext attribute = def.getAttribute("stor");
+
+    if(attribute != null && !attribute.NUMBER().isEmpty()) {
+      final int base = new FateImmediate(attribute.NUMBER(0).getText()).constantValue().orElse(0);
+      final int count = attribute.NUMBER().size() > 1 ? new FateImmediate(attribute.NUMBER(1).getText()).constantValue().orElse(0) : this.options.storCount;
+      return new FateStorConvention(base, count);
+    }
+
+    if(this.options.storBase != -1) {
+      return new FateStorConvention(this.options.storBase, this.options.storCount);
+    }
+
+    return null;
+  }
+
+  /** Whether there are any calls to script functions (as opposed to ASM ops or engine calls) */
+  private boolean containsFunctionCall(final ParseTree tree) {
+    if(tree instanceof final FateParser.CallContext call && call.SCOPE() == null && OpType.byName(call.IDENTIFIER(0).getText()) == null) {
+      return true;
+    }
+
+    for(int i = 0; i < tree.getChildCount(); i++) {
+      if(this.containsFunctionCall(tree.getChild(i))) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private boolean shouldInline(final FateFunctionDefinition def) {
+    if(!this.localFunctions.contains(def.name) || def.hasAttribute("noinline")) {
+      return false;
+    }
+
+    // Recursive functions can't be inlined into themselves
+    if(this.fate.getCurrentFunction() == null || this.fate.getCurrentFunction().name.equals(def.name) || this.inlineStack.stream().anyMatch(inline -> inline.def == def)) {
+      return false;
+    }
+
+    return def.hasAttribute("inline") || this.options.optimize && this.countStatements(def.ctx.block()) <= this.options.inlineThreshold;
+  }
+
+  private int countStatements(final FateParser.BlockContext ctx) {
+    int count = ctx.statement().size();
+
+    for(final FateParser.ControlContext control : ctx.control()) {
+      FateParser.If_Context if_ = control.if_();
+      while(if_ != null) {
+        for(final FateParser.BlockContext block : if_.block()) {
+          count += this.countStatements(block);
+        }
+
+        count++;
+        if_ = if_.if_();
+      }
+
+      if(control.while_() != null) {
+        count += this.countStatements(control.while_().block()) + 1;
+      }
+
+      if(control.do_while() != null) {
+        count += this.countStatements(control.do_while().block()) + 1;
+      }
+
+      // Each case is another comparison, like an else if
+      if(control.switch_() != null) {
+        for(final FateParser.Case_Context case_ : control.switch_().case_()) {
+          count += this.countStatements(case_.block()) + 1;
+        }
+
+        if(control.switch_().default_() != null) {
+          count += this.countStatements(control.switch_().default_().block());
+        }
+
+        count++;
+      }
+
+      if(control.for_() != null) {
+        final FateParser.For_Context for_ = control.for_();
+        count += this.countStatements(for_.block()) + 1 + (for_.for_init() != null ? 1 : 0) + (for_.for_step() != null ? 1 : 0);
+      }
+
+      if(control.repeat() != null) {
+        count += this.countStatements(control.repeat().block()) + 1;
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Compiles a function's body in place of a call to it. Params and locals get their own variables, and returns
+   * jump to the end of the inlined body rather than going through the stack.
+   */
+  private List<FateVariable> inlineCall(final FateParser.CallContext ctx, final FateFunctionDefinition def) {
+    // Arguments are evaluated in the caller's scope
+    final List<FateValue> args = new ArrayList<>();
+
+    for(final FateParser.Expression_or_stringContext exprCtx : ctx.expression_or_string_list().expression_or_string()) {
+      if(exprCtx.STRING() != null) {
+        this.errors.add(ctx.getStart().getLine() + ": strings cannot be passed as parameters");
+        args.add(new FateImmediate("INVALID"));
+        continue;
+      }
+
+      args.add(this.visitExpression(exprCtx.expression()));
+    }
+
+    final List<FateVariable> returns = new ArrayList<>();
+    for(int i = 0; i < def.returns; i++) {
+      returns.add(this.getExprVar());
+    }
+
+    final FateInline inline = new FateInline(def, this.fate.getLabel(), returns);
+    this.inlineStack.push(inline);
+    this.fate.pushInlineScope("_inline" + this.inlineIndex + '_');
+    this.inlineIndex++;
+
+    for(int i = 0; i < def.params.size(); i++) {
+      final FateVariable param = this.fate.addVariable(def.params.get(i));
+      this.fate.addOp(new FateOp(OpType.MOV, args.get(i), param));
+    }
+
+    // Visit the statements directly since the function's block shouldn't get a scope that can see the caller
+    this.visitChildren(def.ctx.block());
+
+    this.fate.popScope();
+    this.inlineStack.pop();
+    this.fate.addOp(inline.endLabel);
+    return returns;
+  }
+
+  private FateValueList toValueList(final List<? extends FateValue> values) {
+    final FateValueList list = new FateValueList();
+    list.values.addAll(values);
+    return list;
+  }
+
   @Override
   public FateValue visitReturn_(final FateParser.Return_Context ctx) {
     final List<FateValue> returns = new ArrayList<>();
@@ -543,16 +1239,54 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
       }
     }
 
-    final FateFunctionDefinition def = this.functions.get(this.fate.getCurrentFunction().name);
+    final FateInline inline = this.inlineStack.peek();
+    final FateFunctionDefinition def = inline != null ? inline.def : this.functions.get(this.fate.getCurrentFunction().name);
 
     if(def.returns != returns.size()) {
       this.errors.add(ctx.getStart().getLine() + ": return expected " + def.returns + " parameter(s), got " + returns.size() + " instead");
     }
 
+    if(inline != null) {
+      for(int i = 0; i < Math.min(returns.size(), inline.returns.size()); i++) {
+        this.fate.addOp(new FateOp(OpType.MOV, returns.get(i), inline.returns.get(i)));
+      }
+
+      // A return that's the last thing in the body falls through to the end label anyway. Any other return needs the
+      // jump, which FateJumpOptimizer removes if it turns out to land on the next op.
+      final FateParser.BlockContext body = def.ctx.block();
+      if(!(body.getChild(body.getChildCount() - 2) instanceof final FateParser.StatementContext last) || last.return_() != ctx) {
+        this.fate.addOp(new FateOp(OpType.JMP, new FateLabelRef(inline.endLabel)));
+      }
+
+      return null;
+    }
+
     this.fate.getCurrentFunction().addReturn(ctx, returns);
 
-    for(final FateValue value : returns) {
-      this.fate.addOp(new FateOp(OpType.PUSH, value));
+    final FateStorConvention convention = this.getStorConvention(def);
+
+    for(int i = 0; i < returns.size(); i++) {
+      if(convention != null && convention.usesSlot(i)) {
+        // Values read from a slot that an earlier return value is written to have to be copied out first
+        for(int earlier = 0; earlier < i; earlier++) {
+          if(FateStorConvention.readsSlot(returns.get(i), convention.base + earlier)) {
+            final FateVariable copy = this.getExprVar();
+            this.fate.addOp(new FateOp(OpType.MOV, returns.get(i), copy));
+            returns.set(i, copy);
+            break;
+          }
+        }
+      }
+    }
+
+    for(int i = 0; i < returns.size(); i++) {
+      if(convention != null && convention.usesSlot(i)) {
+        if(!FateStorConvention.readsSlot(returns.get(i), convention.base + i)) {
+          this.fate.addOp(new FateOp(OpType.MOV, returns.get(i), convention.getSlot(i)));
+        }
+      } else {
+        this.fate.addOp(new FateOp(OpType.PUSH, returns.get(i)));
+      }
     }
 
     this.fate.addOp(new FateOp(OpType.RETURN));
@@ -594,7 +1328,7 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
     // Values
     if(ctx.value() != null) {
       if(ctx.value().assignable() != null) {
-        return this.visitAssignable(ctx.value().assignable());
+        return this.fold(this.visitAssignable(ctx.value().assignable()));
       }
 
       if(ctx.value().NUMBER() != null) {
@@ -620,6 +1354,13 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
       }
 
       if(ctx.value().call() != null) {
+        final FateFunctionDefinition inlineDef = this.functions.get(ctx.value().call().IDENTIFIER(0).getText());
+
+        if(ctx.value().call().SCOPE() == null && inlineDef != null && ctx.value().call().expression_or_string_list().expression_or_string().size() == inlineDef.params.size() && this.shouldInline(inlineDef)) {
+          final List<FateVariable> returns = this.inlineCall(ctx.value().call(), inlineDef);
+          return returns.isEmpty() ? null : returns.size() == 1 ? returns.getFirst() : this.toValueList(returns);
+        }
+
         final FateFunctionRef ret = this.visitCall(ctx.value().call());
 
         if(ret == null) {
@@ -634,8 +1375,14 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
           returns.values.add(this.getExprVar());
         }
 
+        final FateStorConvention convention = this.getStorConvention(def);
+
         for(int i = def.returns - 1; i >= 0; i--) {
-          this.fate.addOp(new FateOp(OpType.POP, returns.values.get(i)));
+          if(convention != null && convention.usesSlot(i)) {
+            this.fate.addOp(new FateOp(OpType.MOV, convention.getSlot(i), returns.values.get(i)));
+          } else {
+            this.fate.addOp(new FateOp(OpType.POP, returns.values.get(i)));
+          }
         }
 
         return returns.values.isEmpty() ? null : returns.values.size() == 1 ? returns.values.getFirst() : returns;
@@ -646,62 +1393,50 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
 
     // Simple unary
     if(ctx.ADD() != null) {
-      final FateVariable out = this.getExprVar();
       final FateValue expr = this.visitExpression(ctx.expression(0));
+
+      if(this.fate.getConstant(expr).isPresent()) {
+        return expr;
+      }
+
+      final FateVariable out = this.getExprVar();
       this.fate.addOp(new FateOp(OpType.MOV, expr, out));
       return out;
     }
 
     if(ctx.SUB() != null) {
-      final FateVariable out = this.getExprVar();
-      final FateValue expr = this.visitExpression(ctx.expression(0));
-      this.fate.addOp(new FateOp(OpType.MOV, expr, out));
-      this.fate.addOp(new FateOp(OpType.NEG, out));
-      return out;
+      return this.emitUnary(ctx, OpType.NEG);
     }
 
     if(ctx.NOTC() != null) {
-      final FateVariable out = this.getExprVar();
       final FateValue expr = this.visitExpression(ctx.expression(0));
+      final OptionalInt value = this.fate.getConstant(expr);
+
+      if(value.isPresent()) {
+        return new FateImmediate(value.getAsInt() == 0 ? 1 : 0);
+      }
+
+      final FateVariable out = this.getExprVar();
       this.fate.addOp(new FateOp(OpType.CMP, new FateImmediate("=="), expr, new FateImmediate("0"), out));
       return out;
     }
 
     if(ctx.NOTA() != null) {
-      final FateVariable out = this.getExprVar();
-      final FateValue expr = this.visitExpression(ctx.expression(0));
-      this.fate.addOp(new FateOp(OpType.MOV, expr, out));
-      this.fate.addOp(new FateOp(OpType.NOT, out));
-      return out;
+      return this.emitUnary(ctx, OpType.NOT);
     }
 
     // Multiplicative
     if(ctx.mult_op() != null) {
       if(ctx.mult_op().MUL() != null) {
-        final FateVariable out = this.getExprVar();
-        final FateValue a = this.visitExpression(ctx.expression(0));
-        final FateValue b = this.visitExpression(ctx.expression(1));
-        this.fate.addOp(new FateOp(OpType.MOV, a, out));
-        this.fate.addOp(new FateOp(OpType.MUL, b, out));
-        return out;
+        return this.emitArithmetic(ctx, OpType.MUL);
       }
 
       if(ctx.mult_op().DIV() != null) {
-        final FateVariable out = this.getExprVar();
-        final FateValue a = this.visitExpression(ctx.expression(0));
-        final FateValue b = this.visitExpression(ctx.expression(1));
-        this.fate.addOp(new FateOp(OpType.MOV, a, out));
-        this.fate.addOp(new FateOp(OpType.DIV, b, out));
-        return out;
+        return this.emitArithmetic(ctx, OpType.DIV);
       }
 
       if(ctx.mult_op().MOD() != null) {
-        final FateVariable out = this.getExprVar();
-        final FateValue a = this.visitExpression(ctx.expression(0));
-        final FateValue b = this.visitExpression(ctx.expression(1));
-        this.fate.addOp(new FateOp(OpType.MOV, a, out));
-        this.fate.addOp(new FateOp(OpType.MOD, b, out));
-        return out;
+        return this.emitArithmetic(ctx, OpType.MOD);
       }
 
       this.errors.add(ctx.getStart().getLine() + ": unimplemented op " + ctx.getText());
@@ -710,21 +1445,11 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
     // Additive
     if(ctx.add_op() != null) {
       if(ctx.add_op().ADD() != null) {
-        final FateVariable out = this.getExprVar();
-        final FateValue a = this.visitExpression(ctx.expression(0));
-        final FateValue b = this.visitExpression(ctx.expression(1));
-        this.fate.addOp(new FateOp(OpType.MOV, a, out));
-        this.fate.addOp(new FateOp(OpType.ADD, b, out));
-        return out;
+        return this.emitArithmetic(ctx, OpType.ADD);
       }
 
       if(ctx.add_op().SUB() != null) {
-        final FateVariable out = this.getExprVar();
-        final FateValue a = this.visitExpression(ctx.expression(0));
-        final FateValue b = this.visitExpression(ctx.expression(1));
-        this.fate.addOp(new FateOp(OpType.MOV, a, out));
-        this.fate.addOp(new FateOp(OpType.SUB, b, out));
-        return out;
+        return this.emitArithmetic(ctx, OpType.SUB);
       }
 
       this.errors.add(ctx.getStart().getLine() + ": unimplemented op " + ctx.getText());
@@ -733,21 +1458,11 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
     // Shifts
     if(ctx.shift_op() != null) {
       if(ctx.shift_op().SHR() != null) {
-        final FateVariable out = this.getExprVar();
-        final FateValue a = this.visitExpression(ctx.expression(0));
-        final FateValue b = this.visitExpression(ctx.expression(1));
-        this.fate.addOp(new FateOp(OpType.MOV, a, out));
-        this.fate.addOp(new FateOp(OpType.SHR, b, out));
-        return out;
+        return this.emitArithmetic(ctx, OpType.SHR);
       }
 
       if(ctx.shift_op().SHL() != null) {
-        final FateVariable out = this.getExprVar();
-        final FateValue a = this.visitExpression(ctx.expression(0));
-        final FateValue b = this.visitExpression(ctx.expression(1));
-        this.fate.addOp(new FateOp(OpType.MOV, a, out));
-        this.fate.addOp(new FateOp(OpType.SHL, b, out));
-        return out;
+        return this.emitArithmetic(ctx, OpType.SHL);
       }
 
       this.errors.add(ctx.getStart().getLine() + ": unimplemented op " + ctx.getText());
@@ -756,53 +1471,29 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
     // Comparisons
     if(ctx.relational_op() != null) {
       if(ctx.relational_op().GT() != null) {
-        final FateVariable out = this.getExprVar();
-        final FateValue a = this.visitExpression(ctx.expression(0));
-        final FateValue b = this.visitExpression(ctx.expression(1));
-        this.fate.addOp(new FateOp(OpType.CMP, new FateImmediate(">"), a, b, out));
-        return out;
+        return this.emitComparison(ctx, ">");
       }
 
       if(ctx.relational_op().LT() != null) {
-        final FateVariable out = this.getExprVar();
-        final FateValue a = this.visitExpression(ctx.expression(0));
-        final FateValue b = this.visitExpression(ctx.expression(1));
-        this.fate.addOp(new FateOp(OpType.CMP, new FateImmediate("<"), a, b, out));
-        return out;
+        return this.emitComparison(ctx, "<");
       }
 
       if(ctx.relational_op().GTE() != null) {
-        final FateVariable out = this.getExprVar();
-        final FateValue a = this.visitExpression(ctx.expression(0));
-        final FateValue b = this.visitExpression(ctx.expression(1));
-        this.fate.addOp(new FateOp(OpType.CMP, new FateImmediate(">="), a, b, out));
-        return out;
+        return this.emitComparison(ctx, ">=");
       }
 
       if(ctx.relational_op().LTE() != null) {
-        final FateVariable out = this.getExprVar();
-        final FateValue a = this.visitExpression(ctx.expression(0));
-        final FateValue b = this.visitExpression(ctx.expression(1));
-        this.fate.addOp(new FateOp(OpType.CMP, new FateImmediate("<="), a, b, out));
-        return out;
+        return this.emitComparison(ctx, "<=");
       }
     }
 
     if(ctx.equality_op() != null) {
       if(ctx.equality_op().EQ() != null) {
-        final FateVariable out = this.getExprVar();
-        final FateValue a = this.visitExpression(ctx.expression(0));
-        final FateValue b = this.visitExpression(ctx.expression(1));
-        this.fate.addOp(new FateOp(OpType.CMP, new FateImmediate("=="), a, b, out));
-        return out;
+        return this.emitComparison(ctx, "==");
       }
 
       if(ctx.equality_op().NEQ() != null) {
-        final FateVariable out = this.getExprVar();
-        final FateValue a = this.visitExpression(ctx.expression(0));
-        final FateValue b = this.visitExpression(ctx.expression(1));
-        this.fate.addOp(new FateOp(OpType.CMP, new FateImmediate("!="), a, b, out));
-        return out;
+        return this.emitComparison(ctx, "!=");
       }
 
       this.errors.add(ctx.getStart().getLine() + ": unimplemented op " + ctx.getText());
@@ -810,59 +1501,114 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
 
     // Bitwise
     if(ctx.ANDA() != null) {
-      final FateVariable out = this.getExprVar();
-      final FateValue a = this.visitExpression(ctx.expression(0));
-      final FateValue b = this.visitExpression(ctx.expression(1));
-      this.fate.addOp(new FateOp(OpType.MOV, a, out));
-      this.fate.addOp(new FateOp(OpType.AND, b, out));
-      return out;
+      return this.emitArithmetic(ctx, OpType.AND);
     }
 
     if(ctx.XORA() != null) {
-      final FateVariable out = this.getExprVar();
-      final FateValue a = this.visitExpression(ctx.expression(0));
-      final FateValue b = this.visitExpression(ctx.expression(1));
-      this.fate.addOp(new FateOp(OpType.MOV, a, out));
-      this.fate.addOp(new FateOp(OpType.XOR, b, out));
-      return out;
+      return this.emitArithmetic(ctx, OpType.XOR);
     }
 
     if(ctx.ORA() != null) {
-      final FateVariable out = this.getExprVar();
-      final FateValue a = this.visitExpression(ctx.expression(0));
-      final FateValue b = this.visitExpression(ctx.expression(1));
-      this.fate.addOp(new FateOp(OpType.MOV, a, out));
-      this.fate.addOp(new FateOp(OpType.OR, b, out));
-      return out;
+      return this.emitArithmetic(ctx, OpType.OR);
     }
 
     if(ctx.ANDC() != null) {
-      final FateVariable out = this.getExprVar();
-      final FateValue a = this.visitExpression(ctx.expression(0));
-      final FateValue b = this.visitExpression(ctx.expression(1));
-      this.fate.addOp(new FateOp(OpType.CMP, new FateImmediate("&&"), a, b, out));
-      return out;
+      return this.emitComparison(ctx, "&&");
     }
 
     if(ctx.ORC() != null) {
-      final FateVariable out = this.getExprVar();
-      final FateValue a = this.visitExpression(ctx.expression(0));
-      final FateValue b = this.visitExpression(ctx.expression(1));
-      this.fate.addOp(new FateOp(OpType.CMP, new FateImmediate("||"), a, b, out));
-      return out;
+      return this.emitComparison(ctx, "||");
     }
 
     this.errors.add(ctx.getStart().getLine() + ": unimplemented op " + ctx.getText());
     return this.visitChildren(ctx);
   }
 
+  private FateValue emitUnary(final FateParser.ExpressionContext ctx, final OpType opType) {
+    final FateValue expr = this.visitExpression(ctx.expression(0));
+    final OptionalInt value = this.fate.getConstant(expr);
+
+    if(value.isPresent()) {
+      final OptionalInt result = FateConstants.apply(opType, value.getAsInt());
+
+      if(result.isPresent()) {
+        return new FateImmediate(result.getAsInt());
+      }
+    }
+
+    final FateVariable out = this.getExprVar();
+    this.fate.addOp(new FateOp(OpType.MOV, expr, out));
+    this.fate.addOp(new FateOp(opType, out));
+    return out;
+  }
+
+  private FateValue emitArithmetic(final FateParser.ExpressionContext ctx, final OpType opType) {
+    final FateValue a = this.visitExpression(ctx.expression(0));
+    final FateValue b = this.visitExpression(ctx.expression(1));
+    final OptionalInt left = this.fate.getConstant(a);
+    final OptionalInt right = this.fate.getConstant(b);
+
+    if(left.isPresent() && right.isPresent()) {
+      final OptionalInt result = FateConstants.apply(opType, right.getAsInt(), left.getAsInt());
+
+      if(result.isPresent()) {
+        return new FateImmediate(result.getAsInt());
+      }
+    }
+
+    final FateVariable out = this.getExprVar();
+    this.fate.addOp(new FateOp(OpType.MOV, a, out));
+    this.fate.addOp(new FateOp(opType, b, out));
+    return out;
+  }
+
+  private FateValue emitComparison(final FateParser.ExpressionContext ctx, final String operator) {
+    final FateValue a = this.visitExpression(ctx.expression(0));
+    final FateValue b = this.visitExpression(ctx.expression(1));
+    final OptionalInt left = this.fate.getConstant(a);
+    final OptionalInt right = this.fate.getConstant(b);
+
+    if(left.isPresent() && right.isPresent()) {
+      return new FateImmediate(FateConstants.compare(operator, left.getAsInt(), right.getAsInt()).orElseThrow());
+    }
+
+    final FateVariable out = this.getExprVar();
+    this.fate.addOp(new FateOp(OpType.CMP, new FateImmediate(operator), a, b, out));
+    return out;
+  }
+
+  /** Replaces values that are known at compile time with immediates */
+  private FateValue fold(final FateValue value) {
+    final OptionalInt constant = this.fate.getConstant(value);
+
+    if(constant.isPresent() && !(value instanceof FateImmediate)) {
+      return new FateImmediate(constant.getAsInt());
+    }
+
+    return value;
+  }
+
+  /** Visits an expression that's going to be written to. Plain variables can't be folded into immediates here. */
+  private FateValue visitDestination(FateParser.ExpressionContext ctx) {
+    while(ctx.LPAREN() != null) {
+      ctx = ctx.expression(0);
+    }
+
+    if(ctx.value() != null && ctx.value().assignable() != null) {
+      return this.visitAssignable(ctx.value().assignable());
+    }
+
+    return this.visitExpression(ctx);
+  }
+
   @Override
   public FateValue visitValue(final FateParser.ValueContext ctx) {
     return this.visitChildren(ctx);
   }
 
   private FateValue valueToVariable(final FateValue oldVal) {
-    if(oldVal instanceof FateVariable) {
+    // Variables that live in stor slots can't be used as indices
+    if(oldVal instanceof final FateVariable var && var.storSlot == -1) {
       return oldVal;
     }
 
@@ -871,15 +1617,25 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
     return newVal;
   }
 
+  /** Indices that are known at compile time and fit in a byte can be encoded directly in the param */
+  private FateValue indexToParam(final FateValue index) {
+    if(this.isByteConstant(index)) {
+      return index;
+    }
+
+    return this.valueToVariable(index);
+  }
+
+  private boolean isByteConstant(final FateValue value) {
+    final OptionalInt constant = this.fate.getConstant(value);
+    return value instanceof FateImmediate && constant.isPresent() && (constant.getAsInt() & ~0xff) == 0;
+  }
+
   @Override
   public FateValue visitAssignable(final FateParser.AssignableContext ctx) {
     if(ctx.IDENTIFIER() != null) {
-      for(final String[] values : this.meta.enums.values()) {
-        for(final String value : values) {
-          if(value.equals(ctx.IDENTIFIER().getText())) {
-            return new FateEnum(value);
-          }
-        }
+      if(this.meta.isEnumValue(ctx.IDENTIFIER().getText())) {
+        return new FateEnum(ctx.IDENTIFIER().getText());
       }
 
       return this.getVar(ctx, ctx.IDENTIFIER());
@@ -888,7 +1644,13 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
     if(ctx.stor() != null) {
       if(ctx.stor().expression(1) == null) {
         final FateValue storIndex = this.visitExpression(ctx.stor().expression(0));
-        return new FateStor(null, this.valueToVariable(storIndex));
+        final OptionalInt slot = this.fate.getConstant(storIndex);
+
+        if(slot.isPresent() && this.reservedStors.containsKey(slot.getAsInt())) {
+          this.errors.add(ctx.getStart().getLine() + ": stor[" + slot.getAsInt() + "] is reserved for passing values to function \"" + this.reservedStors.get(slot.getAsInt()) + '"');
+        }
+
+        return new FateStor(null, this.indexToParam(storIndex));
       }
 
       final FateValue scriptIndex = this.visitExpression(ctx.stor().expression(0));
@@ -901,10 +1663,16 @@ public class FateCompilerVisitor extends AbstractParseTreeVisitor<FateValue> imp
 
       if(ctx.gamevar().expression(1) != null) {
         final FateValue index2 = this.visitExpression(ctx.gamevar().expression(1));
+
+        // Constant indices can be encoded directly, but only if both are constant
+        if(this.isByteConstant(index1) && this.isByteConstant(index2)) {
+          return new FateGameVarArray(index1, index2);
+        }
+
         return new FateGameVarArray(this.valueToVariable(index1), this.valueToVariable(index2));
       }
 
-      return new FateGameVar(this.valueToVariable(index1));
+      return new FateGameVar(this.indexToParam(index1));
     }
 
     if(ctx.reg() != null) {
@@ -0,0 +1,81 @@
+package org.legendofdragoon.scripting.compiler;
+
+import org.legendofdragoon.scripting.MathHelper;
+import org.legendofdragoon.scripting.OpType;
+
+import java.util.OptionalInt;
+
+/** Compile-time evaluation of script ops. These must match the engine's 32-bit integer semantics exactly. */
+public final class FateConstants {
+  private FateConstants() { }
+
+  /** Evaluates a single-operand op, e.g. {@code neg operand} */
+  public static OptionalInt apply(final OpType opType, final int operand) {
+    return switch(opType) {
+      case NOT -> OptionalInt.of(~operand);
+      case INCR -> OptionalInt.of(operand + 1);
+      case DECR -> OptionalInt.of(operand - 1);
+      case NEG -> OptionalInt.of(-operand);
+      case ABS -> OptionalInt.of(Math.abs(operand));
+      default -> OptionalInt.empty();
+    };
+  }
+
+  /** Evaluates a two-operand op, e.g. {@code sub amount, operand} */
+  public static OptionalInt apply(final OpType opType, final int amount, final int operand) {
+    return switch(opType) {
+      case AND -> OptionalInt.of(operand & amount);
+      case OR -> OptionalInt.of(operand | amount);
+      case XOR -> OptionalInt.of(operand ^ amount);
+      case SHL -> OptionalInt.of(operand << amount);
+      case SHR -> OptionalInt.of(operand >> amount);
+      case ADD -> OptionalInt.of(operand + amount);
+      case SUB -> OptionalInt.of(operand - amount);
+      case SUB_REV -> OptionalInt.of(amount - operand);
+      case MUL -> OptionalInt.of(operand * amount);
+      case DIV -> OptionalInt.of(MathHelper.safeDiv(operand, amount));
+      case DIV_REV -> OptionalInt.of(MathHelper.safeDiv(amount, operand));
+      case MOD, MOD43 -> OptionalInt.of(amount != 0 ? operand % amount : 0);
+      case MOD_REV, MOD_REV44 -> OptionalInt.of(operand != 0 ? amount % operand : 0);
+      default -> OptionalInt.empty();
+    };
+  }
+
+  /** Evaluates a comparison the way CMP and JMP_CMP do, returning 1 for true and 0 for false */
+  public static OptionalInt compare(final String operator, final int left, final int right) {
+    final boolean result;
+
+    switch(operator) {
+      case "<=" -> result = left <= right;
+      case "<" -> result = left < right;
+      case "==" -> result = left == right;
+      case "!=" -> result = left != right;
+      case ">" -> result = left > right;
+      case ">=" -> result = left >= right;
+      case "&" -> result = (left & right) != 0;
+      case "!&" -> result = (left & right) == 0;
+      case "&&" -> result = left != 0 && right != 0;
+      case "||" -> result = left != 0 || right != 0;
+      default -> {
+        return OptionalInt.empty();
+      }
+    }
+
+    return OptionalInt.of(result ? 1 : 0);
+  }
+
+  /** Gets the operator that's true exactly when the given one is false, or null if there isn't one */
+  public static String invertOperator(final String operator) {
+    return switch(operator) {
+      case "<=" -> ">";
+      case "<" -> ">=";
+      case "==" -> "!=";
+      case "!=" -> "==";
+      case ">" -> "<=";
+      case ">=" -> "<";
+      case "&" -> "!&";
+      case "!&" -> "&";
+      default -> null;
+    };
+  }
+}
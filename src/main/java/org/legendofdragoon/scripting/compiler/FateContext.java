@@ -3,9 +3,11 @@ package org.legendofdragoon.scripting.compiler;
 import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.OptionalInt;
 
 public class FateContext {
   private final List<String> entrypoints = new ArrayList<>();
@@ -22,10 +24,19 @@ public class FateContext {
   private final List<FateLabel> generatedLabels = new ArrayList<>();
   private int labelIndex;
 
+  /** Globals that are never written to. Their values are known everywhere. */
+  private final Map<FateVariable, Integer> constants = new HashMap<>();
+  /** Variables with a known value at the end of the op list. Anything that can merge control flow clears these. */
+  private final Map<FateVariable, Integer> knownValues = new HashMap<>();
+
   public void addEntrypoint(final String name) {
     this.entrypoints.add(name);
   }
 
+  public List<String> getEntrypoints() {
+    return this.entrypoints;
+  }
+
   public FateFunction startFunction(final String name) {
     this.pushScope();
     final FateFunction function = new FateFunction(this.getCurrentScope(), name);
@@ -52,6 +63,11 @@ public class FateContext {
     this.scopeStack.push(new FateScope(this.scopeStack.peek()));
   }
 
+  /** Starts a scope that can only see globals, for compiling a function's body in place of a call to it */
+  public void pushInlineScope(final String variablePrefix) {
+    this.scopeStack.push(new FateScope(this.scopeStack.peekLast(), variablePrefix));
+  }
+
   public void popScope() {
     this.scopeStack.pop();
   }
@@ -113,14 +129,156 @@ public class FateContext {
     }
   }
 
+  public void addConstant(final FateVariable var, final int value) {
+    this.constants.put(var, value);
+  }
+
+  /** Gets the value a param will have when the next op is executed, if it's known at compile time */
+  public OptionalInt getConstant(final FateValue value) {
+    if(value instanceof final FateVariable var) {
+      if(this.constants.containsKey(var)) {
+        return OptionalInt.of(this.constants.get(var));
+      }
+
+      if(this.knownValues.containsKey(var)) {
+        return OptionalInt.of(this.knownValues.get(var));
+      }
+    }
+
+    return value.constantValue();
+  }
+
   public void addOp(final FateOp op) {
     this.ops.add(op);
+    this.trackKnownValues(op);
+  }
+
+  private void trackKnownValues(final FateOp op) {
+    // Labels can be jumped to from anywhere, and functions start with nothing known
+    if(op instanceof FateLabel || op instanceof FateFunction) {
+      this.knownValues.clear();
+      return;
+    }
+
+    switch(op.opType) {
+      // Subroutines may write any variable, including our own if they recurse
+      case GOSUB, GOSUB_TABLE -> this.knownValues.clear();
+
+      // Forks and other scripts may write any variable while we're suspended or once a fork has started
+      case YIELD, WAIT, WAIT_CMP, WAIT_CMP_0, REWIND, REWIND5, REWIND6, REWIND7, REWIND11, REWIND13, REWIND14, REWIND15, FORK, FORK_REENTER -> this.knownValues.clear();
+
+      // We don't know which engine call params are written, so assume all of them are
+      case CALL -> {
+        for(final FateValue param : op.params) {
+          this.forgetValue(param);
+        }
+      }
+
+      default -> {
+        final int paramOffset = op.opType.headerParamName != null ? 1 : 0;
+
+        for(int i = paramOffset; i < op.params.size(); i++) {
+          if(i - paramOffset >= op.opType.params.length || op.opType.params[i - paramOffset].modifiesOutput()) {
+            final FateValue param = op.params.get(i);
+            final OptionalInt value = this.evaluate(op);
+
+            if(param instanceof final FateVariable var && var.length == 1 && !var.isRel && value.isPresent()) {
+              this.knownValues.put(var, value.getAsInt());
+            } else {
+              this.forgetValue(param);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /** Gets the value written by an op with a single output */
+  private OptionalInt evaluate(final FateOp op) {
+    return switch(op.opType) {
+      case MOV -> this.getConstant(op.params.getFirst());
+      case MOV_0 -> OptionalInt.of(0);
+      case CMP -> {
+        final OptionalInt left = this.getConstant(op.params.get(1));
+        final OptionalInt right = this.getConstant(op.params.get(2));
+
+        if(left.isEmpty() || right.isEmpty()) {
+          yield OptionalInt.empty();
+        }
+
+        yield FateConstants.compare(op.params.getFirst().toString(), left.getAsInt(), right.getAsInt());
+      }
+      default -> {
+        if(op.params.size() == 1) {
+          final OptionalInt operand = this.getConstant(op.params.getFirst());
+          yield operand.isPresent() ? FateConstants.apply(op.opType, operand.getAsInt()) : OptionalInt.empty();
+        }
+
+        if(op.params.size() == 2 && op.opType.params.length == 2 && op.opType.params[1].modifiesOutput()) {
+          final OptionalInt amount = this.getConstant(op.params.get(0));
+          final OptionalInt operand = this.getConstant(op.params.get(1));
+          yield amount.isPresent() && operand.isPresent() ? FateConstants.apply(op.opType, amount.getAsInt(), operand.getAsInt()) : OptionalInt.empty();
+        }
+
+        yield OptionalInt.empty();
+      }
+    };
+  }
+
+  private void forgetValue(final FateValue value) {
+    if(value instanceof final FateVariable var) {
+      this.knownValues.remove(var);
+    } else if(value instanceof final FateArrayVariable array && array.var instanceof final FateVariable var) {
+      this.knownValues.remove(var);
+    }
   }
 
   public void addOpBeforeFunction(final FateOp op) {
     this.ops.add(this.currentFunctionStart, op);
   }
 
+  public List<FateOp> getOps() {
+    return this.ops;
+  }
+
+  /** Gets the ops that make up each function body, not including the function itself */
+  public List<List<FateOp>> getFunctionBodies() {
+    return new ArrayList<>(this.getFunctionBodiesByFunction().values());
+  }
+
+  /** Gets the ops that make up each function body, keyed by the function they belong to, in script order */
+  public Map<FateFunction, List<FateOp>> getFunctionBodiesByFunction() {
+    final Map<FateFunction, List<FateOp>> bodies = new LinkedHashMap<>();
+    FateFunction function = null;
+    int start = -1;
+
+    for(int i = 0; i <= this.ops.size(); i++) {
+      final FateOp op = i < this.ops.size() ? this.ops.get(i) : null;
+
+      if(op == null || op instanceof FateFunction || op instanceof FateGlobal || op instanceof FateInclude) {
+        if(function != null) {
+          bodies.put(function, this.ops.subList(start, i));
+        }
+
+        function = op instanceof final FateFunction f ? f : null;
+        start = i + 1;
+      }
+    }
+
+    return bodies;
+  }
+
+  /** The number of words the compiled script will take up */
+  public int getSize() {
+    int size = this.entrypoints.size();
+
+    for(final FateOp op : this.ops) {
+      size += op.getSize();
+    }
+
+    return size;
+  }
+
   public String compile() {
     final StringBuilder builder = new StringBuilder();
 
@@ -0,0 +1,106 @@
+package org.legendofdragoon.scripting.compiler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Strips functions and globals that can't be reached from an entrypoint or from the script that included this one.
+ * Functions are reached through GOSUBs and function references, globals through variable references and rels.
+ */
+public class FateDeadCodeEliminator {
+  private static final Logger LOGGER = LogManager.getFormatterLogger(FateDeadCodeEliminator.class);
+
+  /**
+   * @param externalReferences Labels referenced by the code surrounding this script, or null if this script isn't
+   *                           being included anywhere
+   * @return The names of everything that was stripped
+   */
+  public List<String> eliminate(final FateContext fate, final Set<String> externalReferences) {
+    // A library compiled on its own has no way of knowing what will be used
+    if(fate.getEntrypoints().isEmpty() && externalReferences == null) {
+      return List.of();
+    }
+
+    // Split the script up into functions and globals. Anything else (i.e. includes) is always kept.
+    final Map<String, List<FateOp>> units = new LinkedHashMap<>();
+    List<FateOp> currentUnit = null;
+
+    for(final FateOp op : fate.getOps()) {
+      if(op instanceof final FateFunction function) {
+        currentUnit = units.computeIfAbsent(function.name, key -> new ArrayList<>());
+      } else if(op instanceof final FateGlobal global) {
+        currentUnit = units.computeIfAbsent(global.name, key -> new ArrayList<>());
+      } else if(op instanceof FateInclude) {
+        currentUnit = null;
+      }
+
+      if(currentUnit != null) {
+        currentUnit.add(op);
+      }
+    }
+
+    final Set<String> reachable = new HashSet<>();
+    final Deque<String> queue = new ArrayDeque<>(fate.getEntrypoints());
+
+    if(externalReferences != null) {
+      queue.addAll(externalReferences);
+    }
+
+    while(!queue.isEmpty()) {
+      final String name = queue.pop();
+
+      if(!units.containsKey(name) || !reachable.add(name)) {
+        continue;
+      }
+
+      for(final FateOp op : units.get(name)) {
+        this.addReferences(op, queue);
+      }
+    }
+
+    final List<String> stripped = new ArrayList<>();
+    final Set<FateOp> strippedOps = new HashSet<>();
+
+    for(final Map.Entry<String, List<FateOp>> unit : units.entrySet()) {
+      if(!reachable.contains(unit.getKey())) {
+        stripped.add(unit.getKey());
+        strippedOps.addAll(unit.getValue());
+        LOGGER.info("Stripping unreferenced %s %s", unit.getValue().getFirst() instanceof FateFunction ? "function" : "global", unit.getKey());
+      }
+    }
+
+    fate.getOps().removeIf(strippedOps::contains);
+    return stripped;
+  }
+
+  private void addReferences(final FateOp op, final Deque<String> queue) {
+    if(op instanceof final FateGlobal global) {
+      if("rel".equals(global.type)) {
+        for(final String value : global.values) {
+          queue.add(value.substring(1));
+        }
+      }
+
+      return;
+    }
+
+    for(final FateValue param : op.params) {
+      for(final FateValue value : param) {
+        if(value instanceof final FateFunctionRef ref) {
+          queue.add(ref.name);
+        }
+      }
+
+      param.forEachVariable(var -> queue.add(var.name));
+    }
+  }
+}
@@ -0,0 +1,490 @@
+package org.legendofdragoon.scripting.compiler;
+
+import org.legendofdragoon.scripting.Direction;
+import org.legendofdragoon.scripting.OpType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Removes redundant expression evaluation. Each compiler temporary is written by a single chain of ops, e.g.
+ * {@code mov a, t; mul b, t}, which works like an expression tree node. Chains that repeat an earlier chain in the same
+ * basic block with none of their inputs changed in between are replaced by the earlier result, and chains in a loop
+ * whose inputs are never written inside the loop are moved in front of it.
+ *
+ * <p>Engine calls, subroutine calls, yields and writes to game vars may change anything, so they're barriers.</p>
+ */
+public class FateExpressionOptimizer {
+  /** Ops that don't do anything other than writing their output params */
+  private static final Set<OpType> PURE_OPS = EnumSet.of(
+    OpType.MOV, OpType.MOV_0, OpType.AND, OpType.OR, OpType.XOR, OpType.ANDOR, OpType.NOT, OpType.SHL, OpType.SHR,
+    OpType.ADD, OpType.SUB, OpType.SUB_REV, OpType.INCR, OpType.DECR, OpType.NEG, OpType.ABS, OpType.MUL, OpType.DIV,
+    OpType.DIV_REV, OpType.MOD, OpType.MOD_REV, OpType.MUL_12, OpType.DIV_12, OpType.DIV_12_REV, OpType.MOD43,
+    OpType.MOD_REV44, OpType.SQRT, OpType.SIN_12, OpType.COS_12, OpType.ATAN2_12, OpType.JMP, OpType.JMP_CMP,
+    OpType.JMP_CMP_0, OpType.WHILE, OpType.JMP_TABLE, OpType.NOOP, OpType.PUSH, OpType.POP, OpType.CMP
+  );
+
+  /** Ops that can start a chain by writing a value to a temporary */
+  private static final Set<OpType> CHAIN_STARTS = EnumSet.of(OpType.MOV, OpType.SQRT, OpType.SIN_12, OpType.COS_12, OpType.ATAN2_12, OpType.CMP);
+
+  /** Ops that can continue a chain by modifying a temporary in place */
+  private static final Set<OpType> CHAIN_STEPS = EnumSet.of(
+    OpType.AND, OpType.OR, OpType.XOR, OpType.ANDOR, OpType.NOT, OpType.SHL, OpType.SHR, OpType.ADD, OpType.SUB,
+    OpType.SUB_REV, OpType.INCR, OpType.DECR, OpType.NEG, OpType.ABS, OpType.MUL, OpType.DIV, OpType.DIV_REV,
+    OpType.MOD, OpType.MOD_REV, OpType.MUL_12, OpType.DIV_12, OpType.DIV_12_REV, OpType.MOD43, OpType.MOD_REV44
+  );
+
+  /** Writes to this location may change anything */
+  private static final String ANYWHERE = "*";
+
+  private int eliminated;
+  private int hoisted;
+
+  public void optimize(final FateContext fate) {
+    for(int i = 0; i < fate.getFunctionBodies().size(); i++) {
+      // Changing a body moves the ops of every body after it, so they have to be fetched again each time
+      boolean changed = true;
+      while(changed) {
+        final List<FateOp> ops = fate.getFunctionBodies().get(i);
+        changed = this.eliminateCommonSubexpressions(ops) || this.hoistLoopInvariants(ops);
+      }
+    }
+  }
+
+  public int getEliminatedCount() {
+    return this.eliminated;
+  }
+
+  public int getHoistedCount() {
+    return this.hoisted;
+  }
+
+  private boolean eliminateCommonSubexpressions(final List<FateOp> ops) {
+    final FateFlowGraph graph = new FateFlowGraph(ops);
+    final List<FateBasicBlock> blocks = FateBasicBlock.build(graph);
+    final Collection<Chain> chains = this.findChains(ops, blocks).values();
+
+    final Map<Integer, Chain> chainsByOp = new HashMap<>();
+    for(final Chain chain : chains) {
+      for(final int index : chain.ops) {
+        chainsByOp.put(index, chain);
+      }
+    }
+
+    final Set<Integer> removed = new HashSet<>();
+
+    for(final FateBasicBlock block : blocks) {
+      final Map<String, Chain> available = new HashMap<>();
+      final Set<Chain> open = new HashSet<>();
+      final Set<Chain> dirty = new HashSet<>();
+
+      for(int i = block.start; i < block.end; i++) {
+        final FateOp op = ops.get(i);
+        final Chain chain = chainsByOp.get(i);
+
+        if(chain != null && chain.getStart() == i) {
+          open.add(chain);
+        }
+
+        if(isBarrier(op)) {
+          available.clear();
+          dirty.addAll(open);
+        } else {
+          for(final String write : getWrites(op)) {
+            if(chain == null || !write.equals(getLocation(chain.temp))) {
+              available.values().removeIf(other -> aliases(other.reads, write));
+
+              for(final Chain other : open) {
+                if(aliases(other.reads, write)) {
+                  dirty.add(other);
+                }
+              }
+            }
+          }
+        }
+
+        if(chain != null && chain.getEnd() == i) {
+          open.remove(chain);
+
+          // Inputs changed partway through, so the chain's result isn't a function of its ops
+          if(dirty.contains(chain)) {
+            continue;
+          }
+
+          final String key = getKey(ops, chain);
+          final Chain existing = available.get(key);
+
+          // Copying a single value into a temporary is as cheap as reusing one
+          if(existing != null && (chain.ops.size() > 1 || ops.get(chain.getStart()).opType != OpType.MOV)) {
+            removed.addAll(chain.ops);
+            replaceVariable(ops, chain.temp, existing.temp);
+            this.eliminated++;
+          } else {
+            available.put(key, chain);
+          }
+        }
+      }
+    }
+
+    removed.stream().sorted(Comparator.reverseOrder()).forEach(index -> ops.remove((int)index));
+    return !removed.isEmpty();
+  }
+
+  private boolean hoistLoopInvariants(final List<FateOp> ops) {
+    final FateFlowGraph graph = new FateFlowGraph(ops);
+    final List<FateBasicBlock> blocks = FateBasicBlock.build(graph);
+    final Collection<Chain> chains = this.findChains(ops, blocks).values();
+
+    // Every backwards edge makes a loop out of the ops between its target and its source
+    final List<int[]> loops = new ArrayList<>();
+    for(final FateBasicBlock block : blocks) {
+      for(final FateBasicBlock successor : block.successors) {
+        if(successor.start <= block.start) {
+          loops.add(new int[] {successor.start, block.end});
+        }
+      }
+    }
+
+    // Innermost first, so that anything hoisted out of an inner loop can be hoisted again from the outer one next time
+    loops.sort(Comparator.comparingInt(loop -> loop[1] - loop[0]));
+
+    for(final int[] loop : loops) {
+      final int loopStart = loop[0];
+      final int loopEnd = loop[1];
+      final int preheader = this.getPreheader(ops, graph, loopStart, loopEnd);
+
+      if(preheader == -1 || ops.subList(loopStart, loopEnd).stream().anyMatch(FateExpressionOptimizer::isBarrier)) {
+        continue;
+      }
+
+      final List<Chain> candidates = chains.stream()
+        .filter(chain -> chain.speculationSafe && chain.getStart() >= loopStart && chain.getEnd() < loopEnd)
+        .toList();
+
+      // Chains may use the results of other invariant chains, so keep going until nothing else is found
+      final Set<Chain> invariant = new LinkedHashSet<>();
+      boolean found = true;
+      while(found) {
+        found = false;
+
+        final Set<Integer> invariantOps = invariant.stream().flatMap(chain -> chain.ops.stream()).collect(Collectors.toSet());
+        final List<String> loopWrites = new ArrayList<>();
+        for(int i = loopStart; i < loopEnd; i++) {
+          if(!invariantOps.contains(i)) {
+            loopWrites.addAll(getWrites(ops.get(i)));
+          }
+        }
+
+        for(final Chain chain : candidates) {
+          if(!invariant.contains(chain) && loopWrites.stream().filter(write -> !write.equals(getLocation(chain.temp))).noneMatch(write -> aliases(chain.reads, write))) {
+            invariant.add(chain);
+            found = true;
+          }
+        }
+      }
+
+      if(invariant.isEmpty()) {
+        continue;
+      }
+
+      final List<Integer> indices = invariant.stream().flatMap(chain -> chain.ops.stream()).sorted().toList();
+      final List<FateOp> moved = new ArrayList<>();
+      for(final int index : indices) {
+        moved.add(ops.get(index));
+      }
+
+      for(int i = indices.size() - 1; i >= 0; i--) {
+        ops.remove((int)indices.get(i));
+      }
+
+      final int insertAt = preheader - (int)indices.stream().filter(index -> index < preheader).count();
+      ops.addAll(insertAt, moved);
+      this.hoisted += invariant.size();
+      return true;
+    }
+
+    return false;
+  }
+
+  /** Finds where to put code that has to run once before a loop is entered, or -1 if there's no single place */
+  private int getPreheader(final List<FateOp> ops, final FateFlowGraph graph, final int loopStart, final int loopEnd) {
+    int entry = -1;
+
+    for(int i = 0; i < graph.size(); i++) {
+      if(i >= loopStart && i < loopEnd) {
+        continue;
+      }
+
+      for(final int successor : graph.getSuccessors(i)) {
+        if(successor >= loopStart && successor < loopEnd) {
+          if(entry != -1 && entry != i) {
+            return -1;
+          }
+
+          entry = i;
+        }
+      }
+    }
+
+    if(entry == -1 || ops.get(entry) instanceof FateJumpTable) {
+      return -1;
+    }
+
+    // Jumps into the loop need the code in front of them, everything else falls through into the start of the loop
+    if(ops.get(entry).params.stream().anyMatch(param -> param instanceof FateLabelRef)) {
+      return entry;
+    }
+
+    return entry + 1;
+  }
+
+  /** Finds the chain of ops that writes each temporary, for temporaries that are only written by a single chain */
+  private Map<String, Chain> findChains(final List<FateOp> ops, final List<FateBasicBlock> blocks) {
+    final Map<String, List<Integer>> writes = new LinkedHashMap<>();
+    final Map<String, List<Integer>> reads = new HashMap<>();
+
+    for(int i = 0; i < ops.size(); i++) {
+      final int index = i;
+      ops.get(i).forEachWrite(var -> {
+        if(var.isTemp && var.length == 1 && var.storSlot == -1 && "0".equals(var.value)) {
+          writes.computeIfAbsent(var.name, key -> new ArrayList<>()).add(index);
+        }
+      });
+      ops.get(i).forEachRead(var -> reads.computeIfAbsent(var.name, key -> new ArrayList<>()).add(index));
+    }
+
+    final Map<String, Chain> chains = new HashMap<>();
+
+    for(final Map.Entry<String, List<Integer>> entry : writes.entrySet()) {
+      final String name = entry.getKey();
+      final List<Integer> indices = entry.getValue().stream().distinct().toList();
+      final FateOp first = ops.get(indices.getFirst());
+      final FateBasicBlock block = blocks.stream().filter(b -> b.contains(indices.getFirst())).findFirst().orElseThrow();
+
+      if(!CHAIN_STARTS.contains(first.opType) || !isChainOp(first, name) || !block.contains(indices.getLast())) {
+        continue;
+      }
+
+      boolean valid = true;
+      for(int i = 1; i < indices.size(); i++) {
+        final FateOp step = ops.get(indices.get(i));
+
+        // A MOV can continue a chain when it reads something indexed by the temporary, like an array element
+        final boolean isLoad = step.opType == OpType.MOV && step.params.getLast() instanceof final FateVariable var && var.name.equals(name) && referencesVariable(step.params.getFirst(), name);
+
+        if(!isLoad && (!CHAIN_STEPS.contains(step.opType) || !isChainOp(step, name))) {
+          valid = false;
+          break;
+        }
+      }
+
+      // Anything that looks at the temporary before the chain is done would see a partial result
+      for(final int read : reads.getOrDefault(name, List.of())) {
+        if(read < indices.getLast() && !indices.contains(read)) {
+          valid = false;
+          break;
+        }
+      }
+
+      if(!valid) {
+        continue;
+      }
+
+      final Chain chain = new Chain((FateVariable)first.params.getLast(), indices);
+
+      for(final int index : indices) {
+        final List<FateValue> params = ops.get(index).params;
+
+        for(final FateValue param : params.subList(0, params.size() - 1)) {
+          addReads(param, chain.reads);
+          chain.speculationSafe &= isSafeToSpeculate(param);
+        }
+      }
+
+      chains.put(name, chain);
+    }
+
+    return chains;
+  }
+
+  /** Whether the op's last param is the temporary and nothing else refers to it */
+  private static boolean isChainOp(final FateOp op, final String name) {
+    if(!(op.params.getLast() instanceof final FateVariable var) || !var.name.equals(name)) {
+      return false;
+    }
+
+    return op.params.subList(0, op.params.size() - 1).stream().noneMatch(param -> referencesVariable(param, name));
+  }
+
+  private static boolean referencesVariable(final FateValue value, final String name) {
+    final Set<String> names = new HashSet<>();
+    value.forEachVariable(var -> names.add(var.name));
+    return names.contains(name);
+  }
+
+  /** Reading another script's stor is only safe when that script exists, so it can't be moved out of a condition */
+  private static boolean isSafeToSpeculate(final FateValue value) {
+    return switch(value) {
+      case final FateStor stor -> stor.scriptIndex == null && isSafeToSpeculate(stor.storIndex);
+      case final FateArrayVariable array -> isSafeToSpeculate(array.var) && isSafeToSpeculate(array.index);
+      case final FateGameVar var -> isSafeToSpeculate(var.index);
+      case final FateGameVarArray var -> isSafeToSpeculate(var.index1) && isSafeToSpeculate(var.index2);
+      case final FateReg reg -> isSafeToSpeculate(reg.index);
+      default -> true;
+    };
+  }
+
+  private static String getKey(final List<FateOp> ops, final Chain chain) {
+    final StringBuilder key = new StringBuilder();
+
+    for(final int index : chain.ops) {
+      final FateOp op = ops.get(index);
+      key.append(op.opType.name()).append('(');
+
+      for(final FateValue param : op.params.subList(0, op.params.size() - 1)) {
+        key.append(param).append(',');
+      }
+
+      key.append(')');
+    }
+
+    return key.toString();
+  }
+
+  private static boolean isBarrier(final FateOp op) {
+    if(op instanceof FateLabel || op instanceof FateJumpTable) {
+      return false;
+    }
+
+    return !PURE_OPS.contains(op.opType) || writesGameVar(op);
+  }
+
+  /** Game vars are shared with the engine, which may read or write other state when they change */
+  private static boolean writesGameVar(final FateOp op) {
+    for(int i = 0; i < op.params.size(); i++) {
+      final Direction direction = op.getDirection(i);
+
+      if(direction != null && direction.modifiesParam() && (op.params.get(i) instanceof FateGameVar || op.params.get(i) instanceof FateGameVarArray)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private static List<String> getWrites(final FateOp op) {
+    final List<String> writes = new ArrayList<>();
+
+    for(int i = 0; i < op.params.size(); i++) {
+      final Direction direction = op.getDirection(i);
+
+      if(direction != null && direction.modifiesParam()) {
+        final String location = getLocation(op.params.get(i));
+        writes.add(location != null ? location : ANYWHERE);
+      }
+    }
+
+    return writes;
+  }
+
+  /** Adds the locations read when evaluating a value, including anything used as an index */
+  private static void addReads(final FateValue value, final Set<String> reads) {
+    final String location = getLocation(value);
+
+    if(location != null) {
+      reads.add(location);
+    }
+
+    value.forEachVariable(var -> reads.add(getLocation(var)));
+  }
+
+  /**
+   * Gets a key for the storage a value lives in, or null for values that aren't stored anywhere (like immediates).
+   * Keys ending in ? may refer to any location with the same prefix. Writes to game vars are barriers, so the game var
+   * key is only used for reads.
+   */
+  private static String getLocation(final FateValue value) {
+    return switch(value) {
+      case final FateVariable var -> var.storSlot != -1 ? "stor:" + var.storSlot : "var:" + var.name;
+      case final FateArrayVariable array -> array.var instanceof final FateVariable var ? "var:" + var.name : ANYWHERE;
+      case final FateStor stor -> stor.scriptIndex == null && stor.storIndex.constantValue().isPresent() ? "stor:" + stor.storIndex.constantValue().getAsInt() : "stor:?";
+      case final FateReg reg -> reg.index.constantValue().isPresent() ? "reg:" + reg.index.constantValue().getAsInt() : "reg:?";
+      case final FateGameVar ignored -> "gamevar";
+      case final FateGameVarArray ignored -> "gamevar";
+      case final FateImmediate ignored -> null;
+      case final FateFunctionRef ignored -> null;
+      case final FateLabelRef ignored -> null;
+      default -> ANYWHERE;
+    };
+  }
+
+  private static boolean aliases(final Set<String> reads, final String write) {
+    if(ANYWHERE.equals(write)) {
+      return true;
+    }
+
+    for(final String read : reads) {
+      if(read.equals(write) || ANYWHERE.equals(read)) {
+        return true;
+      }
+
+      final int separator = write.indexOf(':');
+      if(separator != -1 && read.startsWith(write.substring(0, separator + 1)) && (read.endsWith("?") || write.endsWith("?"))) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /** Replaces every use of a variable, including uses as an index */
+  private static void replaceVariable(final List<FateOp> ops, final FateVariable from, final FateVariable to) {
+    for(final FateOp op : ops) {
+      op.params.replaceAll(param -> replaceVariable(param, from, to));
+    }
+  }
+
+  private static FateValue replaceVariable(final FateValue value, final FateVariable from, final FateVariable to) {
+    return switch(value) {
+      case final FateVariable var -> var.name.equals(from.name) ? to : var;
+      case final FateArrayVariable array -> new FateArrayVariable(replaceVariable(array.var, from, to), replaceVariable(array.index, from, to));
+      case final FateStor stor -> new FateStor(stor.scriptIndex != null ? replaceVariable(stor.scriptIndex, from, to) : null, replaceVariable(stor.storIndex, from, to));
+      case final FateGameVar var -> new FateGameVar(replaceVariable(var.index, from, to));
+      case final FateGameVarArray var -> new FateGameVarArray(replaceVariable(var.index1, from, to), replaceVariable(var.index2, from, to));
+      case final FateReg reg -> new FateReg(replaceVariable(reg.index, from, to));
+      default -> value;
+    };
+  }
+
+  private static final class Chain {
+    private final FateVariable temp;
+    /** Indices of the ops that make up the chain, in order */
+    private final List<Integer> ops;
+    /** Locations the chain reads from, see {@link #getLocation} */
+    private final Set<String> reads = new HashSet<>();
+    private boolean speculationSafe = true;
+
+    private Chain(final FateVariable temp, final List<Integer> ops) {
+      this.temp = temp;
+      this.ops = ops;
+    }
+
+    private int getStart() {
+      return this.ops.getFirst();
+    }
+
+    private int getEnd() {
+      return this.ops.getLast();
+    }
+  }
+}
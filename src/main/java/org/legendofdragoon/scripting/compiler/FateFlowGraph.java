@@ -0,0 +1,66 @@
+package org.legendofdragoon.scripting.compiler;
+
+import org.legendofdragoon.scripting.OpType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Control flow between the ops of a single function body */
+public class FateFlowGraph {
+  public final List<FateOp> ops;
+  private final Map<FateLabel, Integer> labels = new HashMap<>();
+  private final int[][] successors;
+
+  public FateFlowGraph(final List<FateOp> ops) {
+    this.ops = ops;
+
+    for(int i = 0; i < ops.size(); i++) {
+      if(ops.get(i) instanceof final FateLabel label) {
+        this.labels.put(label, i);
+      }
+    }
+
+    this.successors = new int[ops.size()][];
+
+    for(int i = 0; i < ops.size(); i++) {
+      final FateOp op = ops.get(i);
+      final List<Integer> successors = new ArrayList<>();
+
+      if(!isTerminator(op) && i + 1 < ops.size()) {
+        successors.add(i + 1);
+      }
+
+      for(final FateValue param : op.params) {
+        if(param instanceof final FateLabelRef ref && this.labels.containsKey(ref.label)) {
+          successors.add(this.labels.get(ref.label));
+        }
+      }
+
+      this.successors[i] = successors.stream().mapToInt(Integer::intValue).distinct().toArray();
+    }
+  }
+
+  public int size() {
+    return this.ops.size();
+  }
+
+  public int[] getSuccessors(final int index) {
+    return this.successors[index];
+  }
+
+  /** Gets the index of a label in this function, or -1 if it's somewhere else */
+  public int getLabelIndex(final FateLabel label) {
+    return this.labels.getOrDefault(label, -1);
+  }
+
+  /** Ops that never continue on to the following op. Jump tables are data, so they're never executed. */
+  public static boolean isTerminator(final FateOp op) {
+    return op instanceof FateJumpTable || isTerminator(op.opType);
+  }
+
+  public static boolean isTerminator(final OpType opType) {
+    return opType == OpType.JMP || opType == OpType.JMP_TABLE || opType == OpType.RETURN || opType == OpType.DEALLOCATE || opType == OpType.DEALLOCATE82;
+  }
+}
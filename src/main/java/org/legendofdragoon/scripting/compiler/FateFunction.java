@@ -42,6 +42,10 @@ public class FateFunction extends FateOp {
     return var;
   }
 
+  public List<FateVariable> getVariables() {
+    return this.variables;
+  }
+
   public void updateVariableNames() {
     for(final FateVariable var : this.variables) {
       var.name = this.name + '_' + var.name;
@@ -65,6 +69,20 @@ public class FateFunction extends FateOp {
     return this.returnCount;
   }
 
+  @Override
+  public int getSize() {
+    final Set<String> seenVarNames = new HashSet<>();
+    int size = 0;
+
+    for(final FateVariable var : this.variables) {
+      if(var.storSlot == -1 && seenVarNames.add(var.name)) {
+        size += var.getSize();
+      }
+    }
+
+    return size;
+  }
+
   @Override
   public String toString() {
     final Set<String> seenVarNames = new HashSet<>();
@@ -73,7 +91,7 @@ public class FateFunction extends FateOp {
 
     for(final FateVariable var : this.variables) {
       // Variables in different scopes can have the same name. We only want to define each variable name once.
-      if(!seenVarNames.contains(var.name)) {
+      if(var.storSlot == -1 && !seenVarNames.contains(var.name)) {
         builder.append(var.name).append(':').append('\n');
         builder.repeat("data " + var.value + '\n', var.length);
       }
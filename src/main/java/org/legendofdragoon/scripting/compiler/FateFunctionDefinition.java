@@ -6,10 +6,20 @@ public class FateFunctionDefinition {
   public final String name;
   public final List<String> params;
   public final int returns;
+  public final FateParser.FunctionContext ctx;
 
-  public FateFunctionDefinition(final String name, final List<String> params, final int returns) {
+  public FateFunctionDefinition(final String name, final List<String> params, final int returns, final FateParser.FunctionContext ctx) {
     this.name = name;
     this.params = params;
     this.returns = returns;
+    this.ctx = ctx;
+  }
+
+  public boolean hasAttribute(final String attribute) {
+    return this.getAttribute(attribute) != null;
+  }
+
+  public FateParser.AttributeContext getAttribute(final String attribute) {
+    return this.ctx.attribute().stream().filter(attr -> attr.name.getText().equals(attribute)).findFirst().orElse(null);
   }
 }
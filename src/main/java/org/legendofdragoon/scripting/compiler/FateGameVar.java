@@ -1,5 +1,7 @@
 package org.legendofdragoon.scripting.compiler;
 
+import java.util.function.Consumer;
+
 public class FateGameVar extends FateValue {
   public final FateValue index;
 
@@ -7,6 +9,16 @@ public class FateGameVar extends FateValue {
     this.index = index;
   }
 
+  @Override
+  public int getWidth() {
+    return this.index instanceof FateImmediate ? 1 : 2;
+  }
+
+  @Override
+  public void forEachVariable(final Consumer<FateVariable> consumer) {
+    this.index.forEachVariable(consumer);
+  }
+
   @Override
   public String toString() {
     return "var[" + this.index + ']';
@@ -1,5 +1,7 @@
 package org.legendofdragoon.scripting.compiler;
 
+import java.util.function.Consumer;
+
 public class FateGameVarArray extends FateValue {
   public final FateValue index1;
   public final FateValue index2;
@@ -9,6 +11,17 @@ public class FateGameVarArray extends FateValue {
     this.index2 = index2;
   }
 
+  @Override
+  public int getWidth() {
+    return this.index1 instanceof FateImmediate && this.index2 instanceof FateImmediate ? 1 : 2;
+  }
+
+  @Override
+  public void forEachVariable(final Consumer<FateVariable> consumer) {
+    this.index1.forEachVariable(consumer);
+    this.index2.forEachVariable(consumer);
+  }
+
   @Override
   public String toString() {
     return "var[" + this.index1 + "][" + this.index2 + ']';
@@ -3,9 +3,9 @@ package org.legendofdragoon.scripting.compiler;
 import org.legendofdragoon.scripting.OpType;
 
 public class FateGlobal extends FateOp {
-  private final String type;
-  private final String name;
-  private final String[] values;
+  public final String type;
+  public final String name;
+  public final String[] values;
 
   public FateGlobal(final String type, final String name, final String... values) {
     super(OpType.NOOP);
@@ -14,6 +14,17 @@ public class FateGlobal extends FateOp {
     this.values = values;
   }
 
+  @Override
+  public int getSize() {
+    int size = 0;
+
+    for(final String value : this.values) {
+      size += "data".equals(this.type) ? FateVariable.getDataWidth(value) : 1;
+    }
+
+    return size;
+  }
+
   @Override
   public String toString() {
     final StringBuilder builder = new StringBuilder(this.name).append(":\n");
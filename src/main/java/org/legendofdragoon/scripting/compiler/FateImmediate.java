@@ -1,5 +1,9 @@
 package org.legendofdragoon.scripting.compiler;
 
+import java.util.OptionalInt;
+
+import static org.legendofdragoon.scripting.Tokenizer.NUMBER_PATTERN;
+
 public class FateImmediate extends FateValue {
   public final String value;
 
@@ -7,6 +11,43 @@ public class FateImmediate extends FateValue {
     this.value = value;
   }
 
+  public FateImmediate(final int value) {
+    this(Integer.toString(value));
+  }
+
+  @Override
+  public int getWidth() {
+    final OptionalInt value = this.constantValue();
+
+    // Values that don't fit in 24 bits are stored in the following word
+    if(value.isPresent() && (value.getAsInt() & 0xff00_0000) != 0) {
+      return 2;
+    }
+
+    return 1;
+  }
+
+  @Override
+  public OptionalInt constantValue() {
+    if(!NUMBER_PATTERN.matcher(this.value).matches()) {
+      return OptionalInt.empty();
+    }
+
+    try {
+      if(this.value.startsWith("0x")) {
+        return OptionalInt.of(Integer.parseUnsignedInt(this.value.substring(2), 16));
+      }
+
+      if(this.value.startsWith("-0x")) {
+        return OptionalInt.of(-Integer.parseUnsignedInt(this.value.substring(3), 16));
+      }
+
+      return OptionalInt.of(Integer.parseInt(this.value));
+    } catch(final NumberFormatException e) {
+      return OptionalInt.empty();
+    }
+  }
+
   @Override
   public String toString() {
     return this.value;
@@ -10,6 +10,11 @@ public class FateInclude extends FateOp {
     this.file = file;
   }
 
+  @Override
+  public int getSize() {
+    return 0;
+  }
+
   @Override
   public String toString() {
     return "#include " + this.file;
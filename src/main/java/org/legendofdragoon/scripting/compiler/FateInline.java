@@ -0,0 +1,15 @@
+package org.legendofdragoon.scripting.compiler;
+
+import java.util.List;
+
+public class FateInline {
+  public final FateFunctionDefinition def;
+  public final FateLabel endLabel;
+  public final List<FateVariable> returns;
+
+  public FateInline(final FateFunctionDefinition def, final FateLabel endLabel, final List<FateVariable> returns) {
+    this.def = def;
+    this.endLabel = endLabel;
+    this.returns = returns;
+  }
+}
@@ -0,0 +1,206 @@
+package org.legendofdragoon.scripting.compiler;
+
+import org.legendofdragoon.scripting.OpType;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.Set;
+
+/**
+ * Cleans up the control flow emitted by the compiler. Jumps to jumps are threaded through to their final target,
+ * branches over a jump are inverted, and jumps to the next op, constant branches and unreachable code are removed.
+ */
+public class FateJumpOptimizer {
+  public void optimize(final FateContext fate) {
+    final List<FateOp> ops = fate.getOps();
+
+    boolean changed = true;
+    while(changed) {
+      changed = this.foldConstantBranches(ops);
+      changed |= this.threadJumps(ops);
+      changed |= this.invertBranches(ops);
+      changed |= this.removeJumpsToNext(ops);
+      changed |= this.removeUnreachable(ops);
+      changed |= this.removeUnusedLabels(ops);
+    }
+  }
+
+  private boolean foldConstantBranches(final List<FateOp> ops) {
+    boolean changed = false;
+
+    for(int i = 0; i < ops.size(); i++) {
+      final FateOp op = ops.get(i);
+
+      if(op.opType == OpType.JMP_CMP) {
+        final OptionalInt left = op.params.get(1).constantValue();
+        final OptionalInt right = op.params.get(2).constantValue();
+
+        if(left.isPresent() && right.isPresent()) {
+          final OptionalInt result = FateConstants.compare(op.params.getFirst().toString(), left.getAsInt(), right.getAsInt());
+
+          if(result.isPresent()) {
+            if(result.getAsInt() != 0) {
+              ops.set(i, new FateOp(OpType.JMP, op.params.getLast()));
+            } else {
+              ops.remove(i);
+              i--;
+            }
+
+            changed = true;
+          }
+        }
+      }
+    }
+
+    return changed;
+  }
+
+  private boolean threadJumps(final List<FateOp> ops) {
+    final Map<FateLabel, Integer> labels = this.getLabels(ops);
+    boolean changed = false;
+
+    for(final FateOp op : ops) {
+      final FateLabel target = this.getJumpTarget(op);
+
+      if(target != null) {
+        FateLabel finalTarget = target;
+        final Set<FateLabel> visited = new HashSet<>();
+
+        // Follow chains of unconditional jumps, stopping if they loop
+        while(visited.add(finalTarget) && labels.containsKey(finalTarget)) {
+          final FateOp next = this.getNextOp(ops, labels.get(finalTarget));
+
+          if(next == null || next.opType != OpType.JMP || this.getJumpTarget(next) == null) {
+            break;
+          }
+
+          finalTarget = this.getJumpTarget(next);
+        }
+
+        if(finalTarget != target) {
+          op.params.set(op.params.size() - 1, new FateLabelRef(finalTarget));
+          changed = true;
+        }
+      }
+    }
+
+    return changed;
+  }
+
+  /** Turns {@code jmp_cmp op, a, b, :skip; jmp :target; skip:} into {@code jmp_cmp !op, a, b, :target} */
+  private boolean invertBranches(final List<FateOp> ops) {
+    boolean changed = false;
+
+    for(int i = 0; i < ops.size() - 1; i++) {
+      final FateOp op = ops.get(i);
+      final FateOp next = ops.get(i + 1);
+
+      if(op.opType == OpType.JMP_CMP && next.opType == OpType.JMP && this.getJumpTarget(op) != null && this.getJumpTarget(next) != null && this.jumpsToNext(ops, i + 1, this.getJumpTarget(op))) {
+        final String inverted = FateConstants.invertOperator(op.params.getFirst().toString());
+
+        if(inverted != null) {
+          ops.set(i, new FateOp(OpType.JMP_CMP, new FateImmediate(inverted), op.params.get(1), op.params.get(2), next.params.getFirst()));
+          ops.remove(i + 1);
+          changed = true;
+        }
+      }
+    }
+
+    return changed;
+  }
+
+  private boolean removeJumpsToNext(final List<FateOp> ops) {
+    boolean changed = false;
+
+    for(int i = 0; i < ops.size(); i++) {
+      final FateOp op = ops.get(i);
+
+      if((op.opType == OpType.JMP || op.opType == OpType.JMP_CMP || op.opType == OpType.JMP_CMP_0) && this.getJumpTarget(op) != null && this.jumpsToNext(ops, i, this.getJumpTarget(op))) {
+        ops.remove(i);
+        i--;
+        changed = true;
+      }
+    }
+
+    return changed;
+  }
+
+  /** Removes ops that follow an op that never continues, up until the next label */
+  private boolean removeUnreachable(final List<FateOp> ops) {
+    boolean changed = false;
+
+    for(int i = 0; i < ops.size() - 1; i++) {
+      if(!this.isStructural(ops.get(i)) && FateFlowGraph.isTerminator(ops.get(i).opType)) {
+        while(i + 1 < ops.size() && !this.isStructural(ops.get(i + 1))) {
+          ops.remove(i + 1);
+          changed = true;
+        }
+      }
+    }
+
+    return changed;
+  }
+
+  private boolean removeUnusedLabels(final List<FateOp> ops) {
+    final Set<FateLabel> referenced = new HashSet<>();
+
+    for(final FateOp op : ops) {
+      for(final FateValue param : op.params) {
+        if(param instanceof final FateLabelRef ref) {
+          referenced.add(ref.label);
+        }
+      }
+    }
+
+    return ops.removeIf(op -> op instanceof final FateLabel label && !referenced.contains(label));
+  }
+
+  /** Whether nothing but labels sit between the op at the given index and the target label */
+  private boolean jumpsToNext(final List<FateOp> ops, final int index, final FateLabel target) {
+    for(int i = index + 1; i < ops.size() && ops.get(i) instanceof final FateLabel label; i++) {
+      if(label == target) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private FateLabel getJumpTarget(final FateOp op) {
+    if((op.opType == OpType.JMP || op.opType == OpType.JMP_CMP || op.opType == OpType.JMP_CMP_0 || op.opType == OpType.WHILE) && op.params.getLast() instanceof final FateLabelRef ref) {
+      return ref.label;
+    }
+
+    return null;
+  }
+
+  /** Gets the first op after the given index that isn't a label */
+  private FateOp getNextOp(final List<FateOp> ops, final int index) {
+    for(int i = index + 1; i < ops.size(); i++) {
+      if(!(ops.get(i) instanceof FateLabel)) {
+        return ops.get(i);
+      }
+    }
+
+    return null;
+  }
+
+  private Map<FateLabel, Integer> getLabels(final List<FateOp> ops) {
+    final Map<FateLabel, Integer> labels = new HashMap<>();
+
+    for(int i = 0; i < ops.size(); i++) {
+      if(ops.get(i) instanceof final FateLabel label) {
+        labels.put(label, i);
+      }
+    }
+
+    return labels;
+  }
+
+  private boolean isStructural(final FateOp op) {
+    return op instanceof FateLabel || op instanceof FateFunction || op instanceof FateGlobal || op instanceof FateInclude || op instanceof FateJumpTable;
+  }
+}
@@ -0,0 +1,30 @@
+package org.legendofdragoon.scripting.compiler;
+
+import org.legendofdragoon.scripting.OpType;
+
+/** A table of relative pointers for JMP_TABLE. The targets are stored as params so that they count as references. */
+public class FateJumpTable extends FateOp {
+  public FateJumpTable(final FateLabelRef... targets) {
+    super(OpType.NOOP, targets);
+  }
+
+  @Override
+  public int getSize() {
+    return this.params.size();
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder();
+
+    for(final FateValue target : this.params) {
+      if(!builder.isEmpty()) {
+        builder.append('\n');
+      }
+
+      builder.append("rel :").append(((FateLabelRef)target).label.label);
+    }
+
+    return builder.toString();
+  }
+}
@@ -10,6 +10,11 @@ public class FateLabel extends FateOp {
     this.label = label;
   }
 
+  @Override
+  public int getSize() {
+    return 0;
+  }
+
   @Override
   public String toString() {
     return this.label + ':';
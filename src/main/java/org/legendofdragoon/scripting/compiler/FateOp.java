@@ -1,10 +1,12 @@
 package org.legendofdragoon.scripting.compiler;
 
+import org.legendofdragoon.scripting.Direction;
 import org.legendofdragoon.scripting.OpType;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class FateOp {
@@ -22,6 +24,57 @@ public class FateOp {
     }
   }
 
+  /** Gets the direction of a param, or null if it's encoded in the op header. Engine calls may write to any of their params. */
+  public Direction getDirection(final int paramIndex) {
+    final int paramOffset = this.opType.headerParamName != null ? 1 : 0;
+
+    if(paramIndex < paramOffset) {
+      return null;
+    }
+
+    if(paramIndex - paramOffset < this.opType.params.length) {
+      return this.opType.params[paramIndex - paramOffset].direction;
+    }
+
+    return Direction.BOTH;
+  }
+
+  /** Calls the consumer for every variable this op reads, including variables used as indices and arrays that are only partially written */
+  public void forEachRead(final Consumer<FateVariable> consumer) {
+    for(int i = 0; i < this.params.size(); i++) {
+      final Direction direction = this.getDirection(i);
+      final FateValue param = this.params.get(i);
+
+      if(direction != null && (direction != Direction.OUT || !(param instanceof FateVariable))) {
+        param.forEachVariable(consumer);
+      }
+    }
+  }
+
+  /** Calls the consumer for every variable this op overwrites completely */
+  public void forEachWrite(final Consumer<FateVariable> consumer) {
+    for(int i = 0; i < this.params.size(); i++) {
+      final Direction direction = this.getDirection(i);
+
+      if(direction != null && direction.modifiesParam() && this.params.get(i) instanceof final FateVariable var) {
+        consumer.accept(var);
+      }
+    }
+  }
+
+  /** The number of words this op takes up in the compiled script */
+  public int getSize() {
+    int size = 1;
+
+    for(int i = 0; i < this.params.size(); i++) {
+      if(this.getDirection(i) != null) {
+        size += this.params.get(i).getWidth();
+      }
+    }
+
+    return size;
+  }
+
   @Override
   public String toString() {
     return this.opType.name + ' ' + this.params.stream().map(Objects::toString).collect(Collectors.joining(", "));
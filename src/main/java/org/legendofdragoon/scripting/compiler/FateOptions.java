@@ -0,0 +1,16 @@
+package org.legendofdragoon.scripting.compiler;
+
+public class FateOptions {
+  /** Enables optimizations that may make the output harder to follow, like automatically inlining small functions */
+  public boolean optimize;
+  /** The maximum number of statements a function can have to be inlined automatically */
+  public int inlineThreshold = 4;
+  /** If set, every function passes params and return values through stor slots starting here. See {@link FateStorConvention}. */
+  public int storBase = -1;
+  /** The number of stor slots functions use for params and return values when {@link #storBase} is set */
+  public int storCount = 4;
+  /** If set, the most heavily used locals of each function are moved into free stor slots starting here. See {@link FateStorAllocator}. */
+  public int registerBase = -1;
+  /** The number of stor slots locals can be moved into when {@link #registerBase} is set */
+  public int registerCount = 8;
+}
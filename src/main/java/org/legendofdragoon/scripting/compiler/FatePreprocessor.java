@@ -5,13 +5,18 @@ import org.legendofdragoon.scripting.OpType;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class FatePreprocessor extends FateParserBaseVisitor<Void> {
+  private static final Set<String> ATTRIBUTES = Set.of("inline", "noinline", "stor");
+
   private final List<String> errors;
   private final Collection<String> includes;
   private final Map<String, FateFunctionDefinition> functions;
+  private final Set<String> writtenVariables = new HashSet<>();
   private int returnCount;
 
   public FatePreprocessor(final List<String> errors, final Collection<String> includes, final Map<String, FateFunctionDefinition> functions) {
@@ -20,6 +25,11 @@ public class FatePreprocessor extends FateParserBaseVisitor<Void> {
     this.functions = functions;
   }
 
+  /** Names of every variable that may be written to anywhere in the script */
+  public Set<String> getWrittenVariables() {
+    return this.writtenVariables;
+  }
+
   @Override
   public Void visitInclude(final FateParser.IncludeContext ctx) {
     this.includes.add(ctx.INCLUDE_FILE().getText());
@@ -38,16 +48,27 @@ public class FatePreprocessor extends FateParserBaseVisitor<Void> {
       this.errors.add(ctx.getStart().getLine() + ": function \"" + name + "\" is not a legal name");
     }
 
+    for(final FateParser.AttributeContext attribute : ctx.attribute()) {
+      final String attributeName = attribute.name.getText();
+
+      if(!ATTRIBUTES.contains(attributeName)) {
+        this.errors.add(attribute.getStart().getLine() + ": unknown attribute @" + attributeName);
+      } else if("stor".equals(attributeName) && (attribute.NUMBER().isEmpty() || attribute.NUMBER().size() > 2)) {
+        this.errors.add(attribute.getStart().getLine() + ": @stor expects a base slot and optionally a slot count");
+      }
+    }
+
     final List<String> params = new ArrayList<>();
 
     for(final TerminalNode identifier : ctx.identifier_list().IDENTIFIER()) {
       params.add(identifier.getText());
+      this.writtenVariables.add(identifier.getText());
     }
 
     this.returnCount = 0;
     super.visitFunction(ctx);
 
-    this.functions.put(name, new FateFunctionDefinition(name, params, this.returnCount));
+    this.functions.put(name, new FateFunctionDefinition(name, params, this.returnCount, ctx));
     return null;
   }
 
@@ -56,4 +77,68 @@ public class FatePreprocessor extends FateParserBaseVisitor<Void> {
     this.returnCount = ctx.expression() != null ? 1 : ctx.expression_list() != null ? ctx.expression_list().expression().size() : 0;
     return super.visitChildren(ctx);
   }
+
+  @Override
+  public Void visitDeclaration(final FateParser.DeclarationContext ctx) {
+    if(ctx.IDENTIFIER() != null) {
+      this.writtenVariables.add(ctx.IDENTIFIER().getText());
+    } else if(ctx.identifier_list() != null) {
+      for(final TerminalNode identifier : ctx.identifier_list().IDENTIFIER()) {
+        this.writtenVariables.add(identifier.getText());
+      }
+    }
+
+    return super.visitDeclaration(ctx);
+  }
+
+  @Override
+  public Void visitAssignment(final FateParser.AssignmentContext ctx) {
+    if(ctx.assignable() != null) {
+      this.markWritten(ctx.assignable());
+    } else if(ctx.assignable_list() != null) {
+      for(final FateParser.AssignableContext assignable : ctx.assignable_list().assignable()) {
+        this.markWritten(assignable);
+      }
+    }
+
+    return super.visitAssignment(ctx);
+  }
+
+  @Override
+  public Void visitAugmented_assignment(final FateParser.Augmented_assignmentContext ctx) {
+    this.markWritten(ctx.assignable());
+    return super.visitAugmented_assignment(ctx);
+  }
+
+  @Override
+  public Void visitPostfix(final FateParser.PostfixContext ctx) {
+    this.markWritten(ctx.assignable());
+    return super.visitPostfix(ctx);
+  }
+
+  @Override
+  public Void visitCall(final FateParser.CallContext ctx) {
+    // ASM ops and engine calls may write to any variable passed to them, function params are passed by value
+    if((ctx.SCOPE() != null || OpType.byName(ctx.IDENTIFIER(0).getText()) != null) && ctx.expression_or_string_list() != null) {
+      for(final FateParser.Expression_or_stringContext param : ctx.expression_or_string_list().expression_or_string()) {
+        FateParser.ExpressionContext expression = param.expression();
+
+        while(expression != null && expression.LPAREN() != null) {
+          expression = expression.expression(0);
+        }
+
+        if(expression != null && expression.value() != null) {
+          this.markWritten(expression.value().assignable());
+        }
+      }
+    }
+
+    return super.visitCall(ctx);
+  }
+
+  private void markWritten(final FateParser.AssignableContext ctx) {
+    if(ctx != null && ctx.IDENTIFIER() != null) {
+      this.writtenVariables.add(ctx.IDENTIFIER().getText());
+    }
+  }
 }
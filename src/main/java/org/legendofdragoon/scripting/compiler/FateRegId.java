@@ -7,6 +7,11 @@ public class FateRegId extends FateValue {
     this.id = id;
   }
 
+  @Override
+  public int getWidth() {
+    return 1 + (this.id.length() + 3) / 4;
+  }
+
   @Override
   public String toString() {
     return "id[" + this.id + ']';
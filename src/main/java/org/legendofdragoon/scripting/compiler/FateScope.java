@@ -5,8 +5,16 @@ import java.util.Map;
 
 public class FateScope {
   private final Map<String, FateVariable> variables = new HashMap<>();
+  /** Prepended to the names of variables declared in this scope so that they don't share storage with others */
+  private final String variablePrefix;
 
   public FateScope(final FateScope current) {
+    this(current, current != null ? current.variablePrefix : "");
+  }
+
+  public FateScope(final FateScope current, final String variablePrefix) {
+    this.variablePrefix = variablePrefix;
+
     if(current != null) {
       this.variables.putAll(current.variables);
     }
@@ -17,7 +25,7 @@ public class FateScope {
   }
 
   public FateVariable addVariable(final String name, final int length) {
-    return this.variables.computeIfAbsent(name, key -> new FateVariable(key, length));
+    return this.variables.computeIfAbsent(name, key -> new FateVariable(this.variablePrefix + key, length));
   }
 
   public FateVariable getVariable(final String name) {
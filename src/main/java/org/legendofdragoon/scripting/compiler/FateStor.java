@@ -1,5 +1,7 @@
 package org.legendofdragoon.scripting.compiler;
 
+import java.util.function.Consumer;
+
 public class FateStor extends FateValue {
   public final FateValue scriptIndex;
   public final FateValue storIndex;
@@ -9,6 +11,24 @@ public class FateStor extends FateValue {
     this.storIndex = storIndex;
   }
 
+  @Override
+  public int getWidth() {
+    if(this.scriptIndex == null && this.storIndex instanceof FateImmediate) {
+      return 1;
+    }
+
+    return 2;
+  }
+
+  @Override
+  public void forEachVariable(final Consumer<FateVariable> consumer) {
+    if(this.scriptIndex != null) {
+      this.scriptIndex.forEachVariable(consumer);
+    }
+
+    this.storIndex.forEachVariable(consumer);
+  }
+
   @Override
   public String toString() {
     if(this.scriptIndex == null) {
@@ -0,0 +1,326 @@
+package org.legendofdragoon.scripting.compiler;
+
+import org.legendofdragoon.scripting.OpType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Moves the most heavily used locals of each function out of inline data words and into stor slots, which the engine
+ * can access directly. Slots are only taken from the range given in the options, and never from a slot that the
+ * function, or any function that it calls or is called by, uses explicitly. Functions that call something unknown
+ * might end up anywhere, so they (and everything that calls them) keep all of their locals in inline data. Indexing
+ * stor with a variable might touch any slot, so nothing related to a function that does that is moved either.
+ */
+public class FateStorAllocator {
+  /** How much more a use inside a loop counts for than one outside of it */
+  private static final int LOOP_WEIGHT = 8;
+
+  private final Map<FateFunction, List<FateOp>> bodies;
+  private final Map<String, FateFunction> functionsByName = new HashMap<>();
+  private final Map<FateFunction, Set<FateFunction>> callees = new HashMap<>();
+  private final Map<FateFunction, BitSet> explicitSlots = new HashMap<>();
+  private final Set<FateFunction> opaque = new HashSet<>();
+  private final Set<FateFunction> dynamicStor = new HashSet<>();
+
+  public FateStorAllocator(final FateContext fate) {
+    this.bodies = fate.getFunctionBodiesByFunction();
+
+    for(final FateFunction function : this.bodies.keySet()) {
+      this.functionsByName.put(function.name, function);
+    }
+  }
+
+  /** @return the number of variables that were moved */
+  public int allocate(final int base, final int count) {
+    for(final Map.Entry<FateFunction, List<FateOp>> entry : this.bodies.entrySet()) {
+      this.scanFunction(entry.getKey(), entry.getValue());
+    }
+
+    // Unknown calls may go through function references stored anywhere
+    for(final FateFunction function : this.opaque) {
+      this.callees.get(function).addAll(this.bodies.keySet());
+    }
+
+    final Map<FateFunction, Set<FateFunction>> reachable = new HashMap<>();
+    for(final FateFunction function : this.bodies.keySet()) {
+      reachable.put(function, this.getReachable(function));
+    }
+
+    // Calling something that might use any slot means every slot might be used
+    for(final FateFunction function : this.bodies.keySet()) {
+      if(reachable.get(function).stream().anyMatch(this.opaque::contains)) {
+        this.opaque.add(function);
+      }
+    }
+
+    final Map<FateFunction, BitSet> assigned = new HashMap<>();
+    int moved = 0;
+
+    for(final FateFunction function : this.bodies.keySet()) {
+      if(this.opaque.contains(function) || this.dynamicStor.contains(function)) {
+        continue;
+      }
+
+      final BitSet used = (BitSet)this.explicitSlots.get(function).clone();
+      boolean blocked = false;
+
+      // Anything live in a caller or callee while this function runs can't share a slot with our locals
+      for(final Map.Entry<FateFunction, Set<FateFunction>> other : reachable.entrySet()) {
+        final FateFunction otherFunction = other.getKey();
+
+        if(otherFunction != function && (reachable.get(function).contains(otherFunction) || other.getValue().contains(function))) {
+          used.or(this.explicitSlots.get(otherFunction));
+          used.or(assigned.getOrDefault(otherFunction, new BitSet()));
+          blocked |= this.dynamicStor.contains(otherFunction);
+        }
+      }
+
+      if(blocked) {
+        continue;
+      }
+
+      final BitSet slots = new BitSet();
+      for(final List<FateVariable> vars : this.getCandidates(function, this.bodies.get(function))) {
+        int slot = base;
+        while(slot < base + count && used.get(slot)) {
+          slot++;
+        }
+
+        if(slot >= base + count) {
+          break;
+        }
+
+        used.set(slot);
+        slots.set(slot);
+
+        for(final FateVariable var : vars) {
+          var.storSlot = slot;
+        }
+
+        moved++;
+      }
+
+      assigned.put(function, slots);
+    }
+
+    return moved;
+  }
+
+  /** Finds calls and explicit stor accesses */
+  private void scanFunction(final FateFunction function, final List<FateOp> ops) {
+    final Set<FateFunction> calls = new HashSet<>();
+    final BitSet slots = new BitSet();
+
+    for(final FateOp op : ops) {
+      if(op.opType == OpType.GOSUB_TABLE || op.opType == OpType.GOSUB && !(op.params.getFirst() instanceof final FateFunctionRef ref && this.functionsByName.containsKey(ref.name))) {
+        this.opaque.add(function);
+      }
+
+      for(final FateValue param : op.params) {
+        // Function references passed around may end up being called from here
+        if(param instanceof final FateFunctionRef ref && this.functionsByName.containsKey(ref.name)) {
+          calls.add(this.functionsByName.get(ref.name));
+        }
+
+        forEachValue(param, value -> {
+          if(value instanceof final FateVariable var && var.storSlot != -1) {
+            slots.set(var.storSlot);
+          } else if(value instanceof final FateStor stor && stor.scriptIndex == null) {
+            if(stor.storIndex.constantValue().isPresent()) {
+              slots.set(stor.storIndex.constantValue().getAsInt());
+            } else {
+              this.dynamicStor.add(function);
+            }
+          }
+        });
+      }
+    }
+
+    this.callees.put(function, calls);
+    this.explicitSlots.put(function, slots);
+  }
+
+  private Set<FateFunction> getReachable(final FateFunction function) {
+    final Set<FateFunction> reachable = new HashSet<>();
+    final Deque<FateFunction> queue = new ArrayDeque<>(this.callees.get(function));
+
+    while(!queue.isEmpty()) {
+      final FateFunction callee = queue.pop();
+
+      if(reachable.add(callee)) {
+        queue.addAll(this.callees.get(callee));
+      }
+    }
+
+    return reachable;
+  }
+
+  /** Gets the variables that can be moved into stor, grouped by name and sorted by how heavily they're used */
+  private List<List<FateVariable>> getCandidates(final FateFunction function, final List<FateOp> ops) {
+    final Map<String, List<FateVariable>> byName = new LinkedHashMap<>();
+
+    for(final FateVariable var : function.getVariables()) {
+      byName.computeIfAbsent(var.name, key -> new ArrayList<>()).add(var);
+    }
+
+    final Set<String> excluded = new HashSet<>();
+    for(final Map.Entry<String, List<FateVariable>> entry : byName.entrySet()) {
+      for(final FateVariable var : entry.getValue()) {
+        // Arrays, rels and data with initial values have to stay inline
+        if(var.length != 1 || var.isRel || var.storSlot != -1 || !"0".equals(var.value)) {
+          excluded.add(entry.getKey());
+        }
+      }
+    }
+
+    final FateFlowGraph graph = new FateFlowGraph(ops);
+    final int[] loopDepths = this.getLoopDepths(graph);
+    final Map<String, Long> weights = new HashMap<>();
+
+    for(int i = 0; i < ops.size(); i++) {
+      final long weight = (long)Math.pow(LOOP_WEIGHT, Math.min(loopDepths[i], 6));
+
+      for(final FateValue param : ops.get(i).params) {
+        if(param instanceof final FateVariable var) {
+          weights.merge(var.name, weight, Long::sum);
+        } else {
+          // Variables used as indices have to be inline
+          param.forEachVariable(var -> excluded.add(var.name));
+        }
+      }
+    }
+
+    excluded.addAll(this.getReadsBeforeWrites(graph));
+
+    return byName.entrySet().stream()
+      .filter(entry -> !excluded.contains(entry.getKey()) && weights.containsKey(entry.getKey()))
+      .sorted(Comparator.comparingLong(entry -> -weights.get(entry.getKey())))
+      .map(Map.Entry::getValue)
+      .toList();
+  }
+
+  /** Every op between a backwards jump and its target is in a loop */
+  private int[] getLoopDepths(final FateFlowGraph graph) {
+    final int[] depths = new int[graph.size()];
+
+    for(int i = 0; i < graph.size(); i++) {
+      for(final int successor : graph.getSuccessors(i)) {
+        if(successor <= i) {
+          for(int n = successor; n <= i; n++) {
+            depths[n]++;
+          }
+        }
+      }
+    }
+
+    return depths;
+  }
+
+  /**
+   * Inline data keeps its value between calls, so a function that reads a variable before writing it may be relying
+   * on the value from last time. Those variables can't be moved.
+   */
+  private Set<String> getReadsBeforeWrites(final FateFlowGraph graph) {
+    final Map<String, Integer> indices = new HashMap<>();
+    for(final FateOp op : graph.ops) {
+      for(final FateValue param : op.params) {
+        param.forEachVariable(var -> indices.putIfAbsent(var.name, indices.size()));
+      }
+    }
+
+    final List<List<Integer>> predecessors = new ArrayList<>();
+    for(int i = 0; i < graph.size(); i++) {
+      predecessors.add(new ArrayList<>());
+    }
+
+    for(int i = 0; i < graph.size(); i++) {
+      for(final int successor : graph.getSuccessors(i)) {
+        predecessors.get(successor).add(i);
+      }
+    }
+
+    // Forward analysis of which variables have definitely been written, starting with everything and narrowing down
+    final BitSet[] writtenOut = new BitSet[graph.size()];
+    for(int i = 0; i < graph.size(); i++) {
+      writtenOut[i] = new BitSet();
+      writtenOut[i].set(0, indices.size());
+    }
+
+    final BitSet[] writtenIn = new BitSet[graph.size()];
+    boolean changed = true;
+    while(changed) {
+      changed = false;
+
+      for(int i = 0; i < graph.size(); i++) {
+        final BitSet in = new BitSet();
+
+        if(i != 0) {
+          in.set(0, indices.size());
+
+          for(final int predecessor : predecessors.get(i)) {
+            in.and(writtenOut[predecessor]);
+          }
+        }
+
+        final BitSet out = (BitSet)in.clone();
+        graph.ops.get(i).forEachWrite(var -> out.set(indices.get(var.name)));
+        writtenIn[i] = in;
+
+        if(!out.equals(writtenOut[i])) {
+          writtenOut[i] = out;
+          changed = true;
+        }
+      }
+    }
+
+    final Set<String> readsBeforeWrites = new HashSet<>();
+    for(int i = 0; i < graph.size(); i++) {
+      final BitSet in = writtenIn[i];
+
+      graph.ops.get(i).forEachRead(var -> {
+        if(!in.get(indices.get(var.name))) {
+          readsBeforeWrites.add(var.name);
+        }
+      });
+    }
+
+    return readsBeforeWrites;
+  }
+
+  /** Calls the consumer for a value and every value nested inside of it */
+  private static void forEachValue(final FateValue value, final Consumer<FateValue> consumer) {
+    consumer.accept(value);
+
+    switch(value) {
+      case final FateStor stor -> {
+        if(stor.scriptIndex != null) {
+          forEachValue(stor.scriptIndex, consumer);
+        }
+
+        forEachValue(stor.storIndex, consumer);
+      }
+      case final FateArrayVariable array -> {
+        forEachValue(array.var, consumer);
+        forEachValue(array.index, consumer);
+      }
+      case final FateGameVar var -> forEachValue(var.index, consumer);
+      case final FateGameVarArray var -> {
+        forEachValue(var.index1, consumer);
+        forEachValue(var.index2, consumer);
+      }
+      case final FateReg reg -> forEachValue(reg.index, consumer);
+      default -> { }
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package org.legendofdragoon.scripting.compiler;
+
+/** Passes a function's first few params and return values through a block of stor slots rather than the stack */
+public class FateStorConvention {
+  public final int base;
+  public final int count;
+
+  public FateStorConvention(final int base, final int count) {
+    this.base = base;
+    this.count = count;
+  }
+
+  public boolean usesSlot(final int index) {
+    return index < this.count;
+  }
+
+  public FateStor getSlot(final int index) {
+    return new FateStor(null, new FateImmediate(this.base + index));
+  }
+
+  /** Whether reading this value reads the given stor slot */
+  public static boolean readsSlot(final FateValue value, final int slot) {
+    if(value instanceof final FateVariable var) {
+      return var.storSlot == slot;
+    }
+
+    return value instanceof final FateStor stor && stor.scriptIndex == null && stor.storIndex.constantValue().orElse(-1) == slot;
+  }
+}
@@ -0,0 +1,126 @@
+package org.legendofdragoon.scripting.compiler;
+
+import org.legendofdragoon.scripting.OpType;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Packs compiler temporaries into as few variables as possible. Liveness analysis is run over each function, and
+ * temporaries that are never live at the same time share a single variable (and therefore a single data word).
+ */
+public class FateTempAllocator {
+  public void allocate(final FateContext fate) {
+    for(final List<FateOp> body : fate.getFunctionBodies()) {
+      this.allocateFunction(body);
+    }
+
+    // Temporaries that were merged may have left behind copies from a variable to itself
+    fate.getOps().removeIf(op -> op.opType == OpType.MOV && op.params.get(0) instanceof final FateVariable src && op.params.get(1) instanceof final FateVariable dest && src.name.equals(dest.name));
+  }
+
+  private void allocateFunction(final List<FateOp> ops) {
+    final List<FateVariable> temps = new ArrayList<>();
+    final Map<FateVariable, Integer> tempIndices = new HashMap<>();
+
+    for(final FateOp op : ops) {
+      op.forEachRead(var -> this.addTemp(var, temps, tempIndices));
+      op.forEachWrite(var -> this.addTemp(var, temps, tempIndices));
+    }
+
+    if(temps.size() < 2) {
+      return;
+    }
+
+    final FateFlowGraph graph = new FateFlowGraph(ops);
+    final BitSet[] uses = new BitSet[graph.size()];
+    final BitSet[] defs = new BitSet[graph.size()];
+    final BitSet[] liveIn = new BitSet[graph.size()];
+    final BitSet[] liveOut = new BitSet[graph.size()];
+
+    for(int i = 0; i < graph.size(); i++) {
+      final BitSet use = new BitSet();
+      final BitSet def = new BitSet();
+      ops.get(i).forEachRead(var -> { if(tempIndices.containsKey(var)) use.set(tempIndices.get(var)); });
+      ops.get(i).forEachWrite(var -> { if(tempIndices.containsKey(var)) def.set(tempIndices.get(var)); });
+      uses[i] = use;
+      defs[i] = def;
+      liveIn[i] = new BitSet();
+      liveOut[i] = new BitSet();
+    }
+
+    // Iterate backwards until the live sets stop changing
+    boolean changed = true;
+    while(changed) {
+      changed = false;
+
+      for(int i = graph.size() - 1; i >= 0; i--) {
+        final BitSet out = new BitSet();
+
+        for(final int successor : graph.getSuccessors(i)) {
+          out.or(liveIn[successor]);
+        }
+
+        final BitSet in = (BitSet)out.clone();
+        in.andNot(defs[i]);
+        in.or(uses[i]);
+
+        if(!in.equals(liveIn[i]) || !out.equals(liveOut[i])) {
+          liveIn[i] = in;
+          liveOut[i] = out;
+          changed = true;
+        }
+      }
+    }
+
+    // Anything written while another temporary is live can't share its variable
+    final BitSet[] interference = new BitSet[temps.size()];
+    for(int i = 0; i < temps.size(); i++) {
+      interference[i] = new BitSet();
+    }
+
+    for(int i = 0; i < graph.size(); i++) {
+      final BitSet live = liveOut[i];
+
+      for(int def = defs[i].nextSetBit(0); def >= 0; def = defs[i].nextSetBit(def + 1)) {
+        for(int other = live.nextSetBit(0); other >= 0; other = live.nextSetBit(other + 1)) {
+          if(def != other) {
+            interference[def].set(other);
+            interference[other].set(def);
+          }
+        }
+      }
+    }
+
+    // Greedily assign each temporary the first slot that none of its neighbours are using
+    final int[] slots = new int[temps.size()];
+    final List<String> slotNames = new ArrayList<>();
+
+    for(int i = 0; i < temps.size(); i++) {
+      final BitSet used = new BitSet();
+
+      for(int other = interference[i].nextSetBit(0); other >= 0 && other < i; other = interference[i].nextSetBit(other + 1)) {
+        used.set(slots[other]);
+      }
+
+      slots[i] = used.nextClearBit(0);
+
+      if(slots[i] == slotNames.size()) {
+        slotNames.add(temps.get(i).name);
+      }
+
+      temps.get(i).name = slotNames.get(slots[i]);
+    }
+  }
+
+  private void addTemp(final FateVariable var, final List<FateVariable> temps, final Map<FateVariable, Integer> tempIndices) {
+    // Temporaries with initial values (i.e. strings) have to keep their own storage
+    if(var.isTemp && var.length == 1 && "0".equals(var.value) && !tempIndices.containsKey(var)) {
+      tempIndices.put(var, temps.size());
+      temps.add(var);
+    }
+  }
+}
@@ -3,6 +3,8 @@ package org.legendofdragoon.scripting.compiler;
 import org.apache.commons.collections.iterators.SingletonIterator;
 
 import java.util.Iterator;
+import java.util.OptionalInt;
+import java.util.function.Consumer;
 
 public class FateValue implements Iterable<FateValue> {
   @Override
@@ -13,4 +15,19 @@ public class FateValue implements Iterable<FateValue> {
   public int count() {
     return 1;
   }
+
+  /** The number of words this value takes up when used as an op param */
+  public int getWidth() {
+    return 1;
+  }
+
+  /** Calls the consumer for every variable referenced by this value, including any used as indices */
+  public void forEachVariable(final Consumer<FateVariable> consumer) {
+
+  }
+
+  /** The value this evaluates to at compile time, if it's known */
+  public OptionalInt constantValue() {
+    return OptionalInt.empty();
+  }
 }
@@ -3,6 +3,7 @@ package org.legendofdragoon.scripting.compiler;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class FateValueList extends FateValue {
   public final List<FateValue> values = new ArrayList<>();
@@ -17,6 +18,13 @@ public class FateValueList extends FateValue {
     return this.values.size();
   }
 
+  @Override
+  public void forEachVariable(final Consumer<FateVariable> consumer) {
+    for(final FateValue value : this.values) {
+      value.forEachVariable(consumer);
+    }
+  }
+
   @Override
   public String toString() {
     return this.values.toString();
@@ -1,18 +1,54 @@
 package org.legendofdragoon.scripting.compiler;
 
+import org.legendofdragoon.scripting.tokens.LodString;
+
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+
+import static org.legendofdragoon.scripting.Tokenizer.STRING_PATTERN;
+
 public class FateVariable extends FateValue {
   public String name;
   public final int length;
   public String value = "0";
   public boolean isRel;
+  /** Compiler-generated temporaries can share storage with each other */
+  public boolean isTemp;
+  /** If set, this variable lives in this stor slot rather than in an inline data word */
+  public int storSlot = -1;
 
   public FateVariable(final String name, final int length) {
     this.name = name;
     this.length = length;
   }
 
+  /** The number of words this variable takes up in the compiled script */
+  public int getSize() {
+    return this.length * getDataWidth(this.value);
+  }
+
+  /** The number of words a data entry takes up */
+  public static int getDataWidth(final String value) {
+    final Matcher matcher = STRING_PATTERN.matcher(value);
+
+    if(matcher.matches()) {
+      return (LodString.fromString(0, matcher.group(1)).chars.length + 1) / 2;
+    }
+
+    return 1;
+  }
+
+  @Override
+  public void forEachVariable(final Consumer<FateVariable> consumer) {
+    consumer.accept(this);
+  }
+
   @Override
   public String toString() {
+    if(this.storSlot != -1) {
+      return "stor[" + this.storSlot + ']';
+    }
+
     return "inl[:" + this.name + ']';
   }
 }
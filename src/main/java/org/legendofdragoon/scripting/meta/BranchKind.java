@@ -0,0 +1,26 @@
+package org.legendofdragoon.scripting.meta;
+
+import java.util.Locale;
+
+/** What an engine call does with a param that points at code, decoded from the branch column of the meta */
+public enum BranchKind {
+  NONE,
+  JUMP,
+  GOSUB,
+  SUBROUTINE,
+  FORK_JUMP,
+  /** Anything we don't recognise, the call may still branch there */
+  UNKNOWN,
+  ;
+
+  public static BranchKind fromName(final String name) {
+    return switch(name.toLowerCase(Locale.ROOT)) {
+      case "none" -> NONE;
+      case "jump" -> JUMP;
+      case "gosub" -> GOSUB;
+      case "subroutine" -> SUBROUTINE;
+      case "fork_jump" -> FORK_JUMP;
+      default -> UNKNOWN;
+    };
+  }
+}
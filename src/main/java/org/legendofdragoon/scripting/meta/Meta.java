@@ -12,17 +12,68 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class Meta {
   public final ScriptMethod[] methods;
   public final Map<String, String[]> enums;
 
+  /** Lookups by name, built once so resolving names never has to scan the arrays above */
+  private final Map<String, Integer> methodIndices = new HashMap<>();
+  private final Map<String, Integer> methodIndicesIgnoreCase = new HashMap<>();
+  private final Map<String, Map<String, Integer>> enumOrdinalsIgnoreCase = new HashMap<>();
+  private final Set<String> enumValues = new HashSet<>();
+
   public Meta(final ScriptMethod[] methods, final Map<String, String[]> enums) {
     this.methods = methods;
     this.enums = enums;
+
+    // First match wins, the same as searching the arrays in order
+    for(int i = 0; i < methods.length; i++) {
+      if(methods[i] != null) {
+        this.methodIndices.putIfAbsent(methods[i].name, i);
+        this.methodIndicesIgnoreCase.putIfAbsent(methods[i].name.toLowerCase(Locale.ROOT), i);
+      }
+    }
+
+    for(final var entry : enums.entrySet()) {
+      final Map<String, Integer> ordinals = new HashMap<>();
+
+      for(int i = 0; i < entry.getValue().length; i++) {
+        ordinals.putIfAbsent(entry.getValue()[i].toLowerCase(Locale.ROOT), i);
+        this.enumValues.add(entry.getValue()[i]);
+      }
+
+      this.enumOrdinalsIgnoreCase.put(entry.getKey(), ordinals);
+    }
+  }
+
+  /** @return The index of the method with exactly this name, or -1 if there isn't one */
+  public int getMethodIndex(final String name) {
+    return this.methodIndices.getOrDefault(name, -1);
+  }
+
+  /** @return The index of the method with this name in any case, or -1 if there isn't one */
+  public int getMethodIndexIgnoreCase(final String name) {
+    return this.methodIndicesIgnoreCase.getOrDefault(name.toLowerCase(Locale.ROOT), -1);
+  }
+
+  /** @return The ordinal of this value of an enum class in any case, or -1 if the class or value doesn't exist */
+  public int getEnumOrdinalIgnoreCase(final String enumClass, final String value) {
+    final Map<String, Integer> ordinals = this.enumOrdinalsIgnoreCase.get(enumClass);
+    return ordinals != null ? ordinals.getOrDefault(value.toLowerCase(Locale.ROOT), -1) : -1;
+  }
+
+  /** @return Whether any enum class has exactly this value */
+  public boolean isEnumValue(final String value) {
+    return this.enumValues.contains(value);
   }
 
   private void loadMeta(final List<String[]> descriptionsCsv, final List<String[]> paramsCsv, final List<String[]> enumsCsv, final List<ScriptMethod> methods, final List<String> enumClasses) {
@@ -68,11 +119,14 @@ public class Meta {
     public final String name;
     public final String description;
     public final ScriptParam[] params;
+    /** Indices of the params that point at code, in order */
+    public final int[] branchParams;
 
     public ScriptMethod(final String name, final String description, final ScriptParam[] params) {
       this.name = name;
       this.description = description;
       this.params = params;
+      this.branchParams = IntStream.range(0, params.length).filter(i -> params[i].branchKind != BranchKind.NONE).toArray();
     }
 
     @Override
@@ -87,6 +141,9 @@ public class Meta {
     public final String name;
     public final String description;
     public final String branch;
+    public final BranchKind branchKind;
+    public final boolean isString;
+    public final boolean isInput;
 
     public ScriptParam(final String direction, final String type, final String name, final String description, final String branch) {
       this.direction = direction;
@@ -94,6 +151,9 @@ public class Meta {
       this.name = name;
       this.description = description;
       this.branch = branch;
+      this.branchKind = BranchKind.fromName(branch);
+      this.isString = "string".equalsIgnoreCase(type);
+      this.isInput = "in".equalsIgnoreCase(direction);
     }
 
     @Override
@@ -3,7 +3,9 @@ package org.legendofdragoon.scripting.resolution;
 import java.util.Arrays;
 
 public class RegisterSet {
-  public final Register[] stor = new Register[63];
+  public static final int STOR_COUNT = 63;
+
+  public final Register[] stor = new Register[STOR_COUNT];
 
   public RegisterSet() {
     Arrays.setAll(this.stor, i -> new Register());
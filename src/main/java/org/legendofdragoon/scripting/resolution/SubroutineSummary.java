@@ -0,0 +1,162 @@
+package org.legendofdragoon.scripting.resolution;
+
+import java.util.Arrays;
+import java.util.OptionalInt;
+
+/**
+ * What a subroutine does to its own script's stor by the time it returns. Slots it never writes keep whatever value the
+ * caller knew about, and slots it always leaves with the same constant become known, so the caller doesn't have to
+ * forget every register after a GOSUB.
+ */
+public class SubroutineSummary {
+  private static final byte UNTOUCHED = 0;
+  private static final byte CONSTANT = 1;
+  private static final byte WRITTEN = 2;
+
+  private boolean returns;
+  private boolean clobbersAll;
+  private final byte[] effects = new byte[RegisterSet.STOR_COUNT];
+  private final int[] values = new int[RegisterSet.STOR_COUNT];
+
+  private SubroutineSummary(final boolean returns, final boolean clobbersAll) {
+    this.returns = returns;
+    this.clobbersAll = clobbersAll;
+  }
+
+  /** The state at the start of a subroutine, before it's done anything */
+  public static SubroutineSummary entry() {
+    return new SubroutineSummary(true, false);
+  }
+
+  /** A subroutine that never makes it back to its caller */
+  public static SubroutineSummary neverReturns() {
+    return new SubroutineSummary(false, false);
+  }
+
+  /** A subroutine that may have written to any slot */
+  public static SubroutineSummary unknown() {
+    return new SubroutineSummary(true, true);
+  }
+
+  public SubroutineSummary copy() {
+    final SubroutineSummary copy = new SubroutineSummary(this.returns, this.clobbersAll);
+    System.arraycopy(this.effects, 0, copy.effects, 0, this.effects.length);
+    System.arraycopy(this.values, 0, copy.values, 0, this.values.length);
+    return copy;
+  }
+
+  public boolean returns() {
+    return this.returns;
+  }
+
+  public boolean clobbersAll() {
+    return this.clobbersAll;
+  }
+
+  public void write(final int slot) {
+    if(slot < 0 || slot >= RegisterSet.STOR_COUNT) {
+      this.clobbersAll = true;
+      return;
+    }
+
+    this.effects[slot] = WRITTEN;
+    this.values[slot] = 0;
+  }
+
+  public void writeConstant(final int slot, final int value) {
+    if(slot < 0 || slot >= RegisterSet.STOR_COUNT) {
+      this.clobbersAll = true;
+      return;
+    }
+
+    this.effects[slot] = CONSTANT;
+    this.values[slot] = value;
+  }
+
+  public void clobberAll() {
+    this.clobbersAll = true;
+  }
+
+  /** The value a slot is known to hold because this subroutine set it, if any */
+  public OptionalInt getConstant(final int slot) {
+    if(this.clobbersAll || slot < 0 || slot >= RegisterSet.STOR_COUNT || this.effects[slot] != CONSTANT) {
+      return OptionalInt.empty();
+    }
+
+    return OptionalInt.of(this.values[slot]);
+  }
+
+  /** Applies the effects of calling a subroutine after everything this summary has already done */
+  public void then(final SubroutineSummary callee) {
+    if(!callee.returns) {
+      this.returns = false;
+      return;
+    }
+
+    this.clobbersAll |= callee.clobbersAll;
+
+    for(int i = 0; i < this.effects.length; i++) {
+      if(callee.effects[i] != UNTOUCHED) {
+        this.effects[i] = callee.effects[i];
+        this.values[i] = callee.values[i];
+      }
+    }
+  }
+
+  /** Merges two paths, keeping only what's true on both of them */
+  public SubroutineSummary join(final SubroutineSummary other) {
+    if(!this.returns) {
+      return other.copy();
+    }
+
+    if(!other.returns) {
+      return this.copy();
+    }
+
+    final SubroutineSummary joined = new SubroutineSummary(true, this.clobbersAll || other.clobbersAll);
+
+    for(int i = 0; i < this.effects.length; i++) {
+      if(this.effects[i] == other.effects[i] && (this.effects[i] != CONSTANT || this.values[i] == other.values[i])) {
+        joined.effects[i] = this.effects[i];
+        joined.values[i] = this.values[i];
+      } else {
+        joined.effects[i] = WRITTEN;
+      }
+    }
+
+    return joined;
+  }
+
+  /** Updates the registers of a caller after the subroutine returns */
+  public void apply(final RegisterSet registers) {
+    if(!this.returns || this.clobbersAll) {
+      registers.clear();
+      return;
+    }
+
+    for(int i = 0; i < this.effects.length; i++) {
+      switch(this.effects[i]) {
+        case CONSTANT -> registers.stor[i].known(this.values[i]);
+        case WRITTEN -> registers.stor[i].unknown();
+      }
+    }
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if(this == obj) {
+      return true;
+    }
+
+    if(!(obj instanceof final SubroutineSummary other)) {
+      return false;
+    }
+
+    return this.returns == other.returns && this.clobbersAll == other.clobbersAll && Arrays.equals(this.effects, other.effects) && Arrays.equals(this.values, other.values);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(this.effects) * 31 + Boolean.hashCode(this.returns) * 2 + Boolean.hashCode(this.clobbersAll);
+  }
+}
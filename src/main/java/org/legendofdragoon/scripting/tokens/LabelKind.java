@@ -0,0 +1,23 @@
+package org.legendofdragoon.scripting.tokens;
+
+/** Labels the disassembler makes up, their names are only built if a new label is actually added */
+public enum LabelKind {
+  /** Numbered in the order they're added, the translator renumbers them by address */
+  NUMBERED,
+  /** An entry in a jump or subroutine table, by table address and index */
+  JUMP_TABLE_ENTRY,
+  /** An entry in any other table, by table address and index */
+  POINTER_TABLE_ENTRY,
+  /** Code found by the speculative sweep, by address */
+  SPECULATIVE,
+  ;
+
+  String name(final int number, final int address, final int index) {
+    return switch(this) {
+      case NUMBERED -> "LABEL_" + number;
+      case JUMP_TABLE_ENTRY -> "JMP_" + Integer.toHexString(address) + '_' + index;
+      case POINTER_TABLE_ENTRY -> "PTR_" + Integer.toHexString(address) + '_' + index;
+      case SPECULATIVE -> "SPECULATIVE_" + Integer.toHexString(address);
+    };
+  }
+}
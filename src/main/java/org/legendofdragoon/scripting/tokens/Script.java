@@ -3,12 +3,15 @@ package org.legendofdragoon.scripting.tokens;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.legendofdragoon.scripting.resolution.ScriptRegisters;
+import org.legendofdragoon.scripting.resolution.SubroutineSummary;
 import org.legendofdragoon.scripting.StringInfo;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -33,8 +36,14 @@ public class Script {
   public final Set<StringInfo> strings = new HashSet<>();
   public final Map<Integer, List<String>> labels = new HashMap<>();
   public final Map<String, Integer> labelUsageCount = new HashMap<>();
+  /** Labels added as {@link LabelKind#NUMBERED} */
+  public final Set<String> numberedLabels = new HashSet<>();
   /** Deferred list of string tables to build after looking for table overruns */
   public final List<Runnable> buildStrings = new ArrayList<>();
+  /** What each fully-disassembled subroutine does to stor, keyed by subroutine address */
+  public final Map<Integer, SubroutineSummary> subSummaries = new HashMap<>();
+  /** Branches found by the speculative sweep rather than by following pointers, and how confident the sweep was in them */
+  public final Map<Integer, Integer> speculativeBranches = new HashMap<>();
   private int labelCount;
 
   private final Deque<ScriptRegisters> registerStack = new LinkedList<>();
@@ -51,18 +60,116 @@ public class Script {
     LOGGER.warn("WARNING @ 0x%x: %s", addr, warning);
   }
 
-  /** Uses an existing label if one already points to this address */
-  public String addLabel(final int destAddress, final String name) {
-    if(this.labels.containsKey(destAddress)) {
-      final String existing = this.labels.get(destAddress).get(0);
-      this.labelUsageCount.putIfAbsent(existing, 0);
-      this.labelUsageCount.compute(existing, (label, value) -> value + 1);
-      return existing;
+  /** A private copy for exploring part of the script without touching this one, see {@link #merge} */
+  public Script copy() {
+    final Script copy = new Script(this.name, this.entries.length);
+    System.arraycopy(this.entries, 0, copy.entries, 0, this.entries.length);
+    copy.entrypoints.addAll(this.entrypoints);
+    copy.allEntrypoints.addAll(this.allEntrypoints);
+    copy.branches.addAll(this.branches);
+    copy.subs.addAll(this.subs);
+    copy.subTables.addAll(this.subTables);
+    copy.forkJumps.addAll(this.forkJumps);
+    copy.jumpTableDests.addAll(this.jumpTableDests);
+    copy.warnings.putAll(this.warnings);
+    copy.strings.addAll(this.strings);
+    this.labels.forEach((address, labels) -> copy.labels.put(address, new ArrayList<>(labels)));
+    copy.labelUsageCount.putAll(this.labelUsageCount);
+    copy.numberedLabels.addAll(this.numberedLabels);
+    copy.buildStrings.addAll(this.buildStrings);
+    copy.subSummaries.putAll(this.subSummaries);
+    copy.speculativeBranches.putAll(this.speculativeBranches);
+    copy.labelCount = this.labelCount;
+    return copy;
+  }
+
+  /**
+   * Adds everything a copy found since it was made from {@code base}. Numbered labels are renamed as if they had been
+   * added to this script, so the result is the same as exploring this script directly as long as the copy didn't touch
+   * anything this script has found since {@code base}.
+   */
+  public void merge(final Script base, final Script copy) {
+    final Map<String, String> renamed = new HashMap<>();
+
+    for(final String label : copy.numberedLabels) {
+      if(!base.numberedLabels.contains(label)) {
+        renamed.put(label, LabelKind.NUMBERED.name(Integer.parseInt(label.substring(6)) - base.labelCount + this.labelCount, 0, 0));
+      }
+    }
+
+    this.numberedLabels.addAll(renamed.values());
+
+    // Params can't be relabelled in place, so swap them out in both their op and the entries they fill
+    final Map<Param, Param> renamedParams = new IdentityHashMap<>();
+    for(int i = 0; i < copy.entries.length; i++) {
+      if(copy.entries[i] != base.entries[i] && copy.entries[i] instanceof final Op op) {
+        for(int paramIndex = 0; paramIndex < op.params.length; paramIndex++) {
+          final Param param = op.params[paramIndex];
+
+          if(param != null && renamed.containsKey(param.label)) {
+            op.params[paramIndex] = new Param(param.address, param.type, param.rawValues, param.resolvedValue, renamed.get(param.label));
+            renamedParams.put(param, op.params[paramIndex]);
+          }
+        }
+      } else if(copy.entries[i] != base.entries[i] && copy.entries[i] instanceof final PointerTable table) {
+        table.labels = Arrays.stream(table.labels).map(label -> renamed.getOrDefault(label, label)).toArray(String[]::new);
+      }
+    }
+
+    for(int i = 0; i < copy.entries.length; i++) {
+      if(copy.entries[i] != base.entries[i]) {
+        this.entries[i] = copy.entries[i] instanceof final Param param ? renamedParams.getOrDefault(param, param) : copy.entries[i];
+      }
+    }
+
+    copy.labels.forEach((address, labels) -> {
+      final List<String> existing = base.labels.getOrDefault(address, List.of());
+
+      for(final String label : labels) {
+        if(!existing.contains(label)) {
+          this.labels.computeIfAbsent(address, k -> new ArrayList<>()).add(renamed.getOrDefault(label, label));
+        }
+      }
+    });
+
+    copy.labelUsageCount.forEach((label, count) -> this.labelUsageCount.merge(renamed.getOrDefault(label, label), count - base.labelUsageCount.getOrDefault(label, 0), Integer::sum));
+    this.labelCount += copy.labelCount - base.labelCount;
+
+    this.branches.addAll(copy.branches);
+    this.subs.addAll(copy.subs);
+    this.subTables.addAll(copy.subTables);
+    this.forkJumps.addAll(copy.forkJumps);
+    this.jumpTableDests.addAll(copy.jumpTableDests);
+    this.warnings.putAll(copy.warnings);
+    this.subSummaries.putAll(copy.subSummaries);
+
+    // Deferred string builders add to the copy, so pass their results along once they've run
+    this.buildStrings.addAll(copy.buildStrings.subList(base.buildStrings.size(), copy.buildStrings.size()));
+    this.buildStrings.add(() -> this.strings.addAll(copy.strings));
+  }
+
+  /**
+   * Uses an existing label if one already points to this address, otherwise adds a new one named by its kind
+   *
+   * @param address The address the name is based on, for kinds that have one
+   * @param index The index the name is based on, for kinds that have one
+   */
+  public String addLabel(final int destAddress, final LabelKind kind, final int address, final int index) {
+    final List<String> existing = this.labels.get(destAddress);
+
+    if(existing != null && !existing.isEmpty()) {
+      this.labelUsageCount.merge(existing.getFirst(), 1, Integer::sum);
+      return existing.getFirst();
+    }
+
+    final String name = kind.name(this.labelCount, address, index);
+
+    if(kind == LabelKind.NUMBERED) {
+      this.numberedLabels.add(name);
     }
 
     this.labels.computeIfAbsent(destAddress, k -> new ArrayList<>()).add(name);
-    this.labelUsageCount.putIfAbsent(name, 0);
-    this.labelUsageCount.compute(name, (label, value) -> value + 1);
+    this.labelUsageCount.merge(name, 1, Integer::sum);
     this.labelCount++;
     return name;
   }
@@ -0,0 +1,114 @@
+package org.legendofdragoon.scripting;
+
+import org.junit.jupiter.api.Test;
+import org.legendofdragoon.scripting.compiler.FateCompiler;
+import org.legendofdragoon.scripting.compiler.FateOptions;
+import org.legendofdragoon.scripting.meta.Meta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class ScriptCostAnalyzerTest {
+  private static final Meta META = meta();
+
+  /** The tokenizer looks up header params (like jmp_cmp's operator) as methods, so there need to be enough of them */
+  private static Meta meta() {
+    final Meta.ScriptMethod[] methods = new Meta.ScriptMethod[16];
+
+    for(int i = 0; i < methods.length; i++) {
+      methods[i] = new Meta.ScriptMethod("Test::method" + i, "", new Meta.ScriptParam[0]);
+    }
+
+    return new Meta(methods, Map.of());
+  }
+
+  private static List<Long> analyze(final String source) {
+    final FateOptions options = new FateOptions();
+    options.optimize = true;
+    final FateCompiler compiler = new FateCompiler(META, options);
+    final List<String> errors = new ArrayList<>();
+    final String output = compiler.compile(List.of(), source, errors);
+    assertEquals(List.of(), errors);
+
+    return new ScriptCostAnalyzer(new Tokenizer(META, compiler).tokenize("test", List.of(), output)).analyze().stream().map(cost -> cost.maxFrameOps).toList();
+  }
+
+  @Test
+  void boundsCountedLoops() {
+    final String source = """
+      entrypoint flat;
+      entrypoint nested;
+      entrypoint breaks;
+      entrypoint dynamic;
+      def flat() {
+        repeat(10) {
+          stor[1]++;
+          stor[2] += 3;
+        }
+        for(var i = 0; i < 4; i++) {
+          stor[3] += i;
+        }
+        return;
+      }
+      def nested() {
+        repeat(3) {
+          repeat(5) {
+            stor[4]++;
+          }
+          stor[5]++;
+        }
+        return;
+      }
+      def breaks() {
+        repeat(8) {
+          if(stor[6] > 3) {
+            break;
+          }
+          stor[6]++;
+        }
+        return;
+      }
+      def dynamic() {
+        repeat(stor[9]) {
+          stor[10]++;
+        }
+        return;
+      }
+      """;
+
+    assertEquals(List.of(46L, 41L, 26L, EntrypointCost.UNBOUNDED), analyze(source));
+  }
+
+  @Test
+  void countsWaitsThatMightNotYield() {
+    final String source = """
+      entrypoint known;
+      entrypoint unknown;
+      def known() {
+        var x = 0;
+        while(x < 10) {
+          x++;
+          wait(1);
+        }
+        return;
+      }
+      def unknown() {
+        var x = 0;
+        while(x < 10) {
+          x++;
+          wait(stor[8]);
+        }
+        return;
+      }
+      """;
+
+    final List<Long> costs = analyze(source);
+    // The known wait always yields, the unknown one could be waiting for 0 frames every time round
+    assertEquals(EntrypointCost.UNBOUNDED, costs.get(1));
+    assertNotEquals(EntrypointCost.UNBOUNDED, costs.getFirst());
+  }
+}
@@ -0,0 +1,100 @@
+package org.legendofdragoon.scripting.compiler;
+
+import org.junit.jupiter.api.Test;
+import org.legendofdragoon.scripting.Assembler;
+import org.legendofdragoon.scripting.Tokenizer;
+import org.legendofdragoon.scripting.meta.Meta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FateInlineTest {
+  private static final Meta META = new Meta(new Meta.ScriptMethod[] { new Meta.ScriptMethod("Test::print", "", new Meta.ScriptParam[] { new Meta.ScriptParam("in", "int", "value", "", "none") }) }, Map.of());
+
+  private static String compile(final String source, final List<String> errors) {
+    final FateOptions options = new FateOptions();
+    options.optimize = true;
+    return new FateCompiler(META, options).compile(List.of(), source, errors);
+  }
+
+  @Test
+  void inlinesHelperWithEarlyReturnFromIf() {
+    final String source = """
+      entrypoint main;
+      def clamp(x) {
+        if(x > 10) {
+          return 10;
+        }
+        return x;
+      }
+      def main() {
+        stor[10] = clamp(stor[5]);
+        return;
+      }
+      """;
+
+    final List<String> errors = new ArrayList<>();
+    final String output = compile(source, errors);
+
+    assertEquals(List.of(), errors);
+    assertTrue(output.lines().noneMatch(line -> line.startsWith("clamp:")), "clamp should have been inlined");
+    // The early return has to jump over the rest of the body, the trailing one falls through
+    assertEquals(1, output.lines().filter(line -> line.startsWith("jmp ")).count(), output);
+    new Assembler().assemble(new Tokenizer(META, new FateCompiler(META)).tokenize("test", List.of(), output));
+  }
+
+  @Test
+  void countsSwitchAndLoopBodiesTowardsInlineSize() {
+    for(final String body : List.of(
+      "switch(x) { case 1 { stor[1] = 1; stor[2] = 2; } case 2 { stor[3] = 3; stor[4] = 4; } default { stor[5] = 5; } }",
+      "for(var i = 0; i < x; i++) { stor[1] = i; stor[2] = i; stor[3] = i; stor[4] = i; }",
+      "repeat(x) { stor[1] = 1; stor[2] = 2; stor[3] = 3; stor[4] = 4; }"
+    )) {
+      final String source = """
+        entrypoint main;
+        def big(x) {
+          %s
+          return;
+        }
+        def main() {
+          big(stor[5]);
+          big(stor[6]);
+          return;
+        }
+        """.formatted(body);
+
+      final List<String> errors = new ArrayList<>();
+      final String output = compile(source, errors);
+
+      assertEquals(List.of(), errors);
+      assertTrue(output.lines().anyMatch(line -> line.startsWith("big:")), body + " shouldn't have been inlined\n" + output);
+    }
+  }
+
+  @Test
+  void reportsIfElseOnlyHelperWithoutCrashing() {
+    final String source = """
+      entrypoint main;
+      def clamp(x) {
+        if(x > 10) {
+          return 10;
+        } else {
+          return x;
+        }
+      }
+      def main() {
+        stor[10] = clamp(stor[5]);
+        return;
+      }
+      """;
+
+    final List<String> errors = new ArrayList<>();
+    compile(source, errors);
+
+    assertEquals(List.of("2: function \"clamp\" missing return"), errors);
+  }
+}
@@ -0,0 +1,61 @@
+package org.legendofdragoon.scripting.compiler;
+
+import org.junit.jupiter.api.Test;
+import org.legendofdragoon.scripting.meta.Meta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FateKnownValuesTest {
+  private static final Meta META = new Meta(new Meta.ScriptMethod[] { new Meta.ScriptMethod("Test::print", "", new Meta.ScriptParam[] { new Meta.ScriptParam("in", "int", "value", "", "none") }) }, Map.of());
+
+  private static String compile(final String source) {
+    final FateOptions options = new FateOptions();
+    options.optimize = true;
+    final List<String> errors = new ArrayList<>();
+    final String output = new FateCompiler(META, options).compile(List.of(), source, errors);
+    assertEquals(List.of(), errors);
+    return output;
+  }
+
+  @Test
+  void foldsConditionWithoutSuspending() {
+    final String output = compile("""
+      entrypoint main;
+      def main() {
+        var x = 0;
+        if(x == 1) {
+          stor[11] = 5;
+        }
+        return;
+      }
+      """);
+
+    assertTrue(output.lines().noneMatch(line -> line.startsWith("jmp_cmp ")), output);
+  }
+
+  @Test
+  void evaluatesConditionAfterSuspending() {
+    // Another script or a fork can change x while this one is suspended
+    for(final String suspend : List.of("yield();", "wait(1);", "rewind();")) {
+      final String output = compile("""
+        entrypoint main;
+        def main() {
+          var x = 0;
+          %s
+          if(x == 1) {
+            stor[11] = 5;
+          }
+          return;
+        }
+        """.formatted(suspend));
+
+      assertTrue(output.lines().anyMatch(line -> line.startsWith("jmp_cmp ")), output);
+      assertTrue(output.contains("mov 5, stor[11]"), output);
+    }
+  }
+}
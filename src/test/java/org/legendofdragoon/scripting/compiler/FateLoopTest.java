@@ -0,0 +1,77 @@
+package org.legendofdragoon.scripting.compiler;
+
+import org.junit.jupiter.api.Test;
+import org.legendofdragoon.scripting.meta.Meta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FateLoopTest {
+  private static final Meta META = new Meta(new Meta.ScriptMethod[] { new Meta.ScriptMethod("Test::print", "", new Meta.ScriptParam[] { new Meta.ScriptParam("in", "int", "value", "", "none") }) }, Map.of());
+
+  private static String compile(final String source, final List<String> errors) {
+    final FateOptions options = new FateOptions();
+    options.optimize = true;
+    return new FateCompiler(META, options).compile(List.of(), source, errors);
+  }
+
+  @Test
+  void reportsUndeclaredForVariable() {
+    final List<String> errors = new ArrayList<>();
+    compile("""
+      entrypoint main;
+      def main() {
+        for(i = 0; i < 4; i++) {
+          stor[3] += 1;
+        }
+        return;
+      }
+      """, errors);
+
+    assertTrue(errors.stream().anyMatch(error -> error.contains("variable \"i\" is not defined")), errors.toString());
+  }
+
+  @Test
+  void breakExitsSwitch() {
+    final List<String> errors = new ArrayList<>();
+    final String output = compile("""
+      entrypoint main;
+      def main() {
+        switch(stor[1]) {
+          case 1 {
+            stor[2] = 7;
+            break;
+          }
+        }
+        stor[4] = 2;
+        return;
+      }
+      """, errors);
+
+    assertEquals(List.of(), errors);
+    assertTrue(output.contains("mov 7, stor[2]"), output);
+    assertTrue(output.contains("mov 2, stor[4]"), output);
+  }
+
+  @Test
+  void rejectsContinueInSwitchOutsideLoop() {
+    final List<String> errors = new ArrayList<>();
+    compile("""
+      entrypoint main;
+      def main() {
+        switch(stor[1]) {
+          case 1 {
+            continue;
+          }
+        }
+        return;
+      }
+      """, errors);
+
+    assertTrue(errors.stream().anyMatch(error -> error.contains("continue is only valid inside of loop")), errors.toString());
+  }
+}